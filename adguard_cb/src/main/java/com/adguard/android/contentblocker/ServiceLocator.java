@@ -17,7 +17,10 @@
 package com.adguard.android.contentblocker;
 
 import android.content.Context;
+import android.os.SystemClock;
+import android.os.Trace;
 
+import com.adguard.android.contentblocker.commons.concurrent.ExecutorsPool;
 import com.adguard.android.contentblocker.db.DbHelper;
 import com.adguard.android.contentblocker.service.FilterService;
 import com.adguard.android.contentblocker.service.FilterServiceImpl;
@@ -36,15 +39,43 @@ import java.util.WeakHashMap;
 
 /**
  * Service locator class.
+ * Services are created on first use, and startup work (jobs scheduling, the rebuild of outdated filters)
+ * is done in background, so that getting the locator from the main thread, a receiver or a content provider is cheap.
  */
 public class ServiceLocator {
     private static final Logger LOG = LoggerFactory.getLogger(ServiceLocator.class);
     private static WeakHashMap<Context, ServiceLocator> locators = new WeakHashMap<>();
 
-    private FilterService filterService;
-    private PreferencesService preferencesService;
-    private NotificationService notificationService;
-    private JobService jobService;
+    private final Context context;
+
+    private final Holder<PreferencesService> preferencesService = new Holder<PreferencesService>("ServiceLocator.preferencesService") {
+        @Override
+        protected PreferencesService create() {
+            return new PreferencesServiceImpl(context);
+        }
+    };
+
+    private final Holder<NotificationService> notificationService = new Holder<NotificationService>("ServiceLocator.notificationService") {
+        @Override
+        protected NotificationService create() {
+            return new NotificationServiceImpl(context);
+        }
+    };
+
+    private final Holder<FilterService> filterService = new Holder<FilterService>("ServiceLocator.filterService") {
+        @Override
+        protected FilterService create() {
+            // DbHelper opens the database on the first query, not here
+            return new FilterServiceImpl(context, new DbHelper(context), getPreferencesService(), getNotificationService());
+        }
+    };
+
+    private final Holder<JobService> jobService = new Holder<JobService>("ServiceLocator.jobService") {
+        @Override
+        protected JobService create() {
+            return new JobServiceImpl(ServiceLocator.this, context);
+        }
+    };
 
     /**
      * Creates an instance of the ServiceLocator
@@ -53,15 +84,8 @@ public class ServiceLocator {
      */
     private ServiceLocator(Context context) {
         LOG.info("Initializing ServiceLocator for {}", context);
-        preferencesService = new PreferencesServiceImpl(context);
-        notificationService = new NotificationServiceImpl(context);
-        filterService = new FilterServiceImpl(context, new DbHelper(context), preferencesService, notificationService);
-        jobService = new JobServiceImpl(this, context);
-
-        LOG.info("ServiceLocator setup...");
-        checkFirstLaunch();
-        jobService.cancelOldJobs();
-        jobService.scheduleJobs(Id.FILTERS, Id.RATE_NOTIFICATION);
+        this.context = context;
+        ExecutorsPool.getSingleThreadScheduledExecutorService().execute(this::startUp);
     }
 
     /**
@@ -85,38 +109,107 @@ public class ServiceLocator {
         return instance;
     }
 
+    /**
+     * Runs the callback in background once the startup work is done
+     *
+     * @param callback Callback
+     */
+    public void runAfterStartUp(Runnable callback) {
+        ExecutorsPool.getSingleThreadScheduledExecutorService().execute(callback);
+    }
+
     /**
      * @return Filter service reference
      */
     public FilterService getFilterService() {
-        return filterService;
+        return filterService.get();
     }
 
     /**
      * @return Preferences service reference
      */
     public PreferencesService getPreferencesService() {
-        return preferencesService;
+        return preferencesService.get();
     }
 
     /**
      * @return notifications service reference
      */
     public NotificationService getNotificationService() {
-        return notificationService;
+        return notificationService.get();
     }
 
     /**
      * @return job service reference
      */
     public JobService getJobService() {
-        return jobService;
+        return jobService.get();
+    }
+
+    /**
+     * Startup work. WorkManager reads its own database, so it is never called from the caller thread.
+     */
+    private void startUp() {
+        Trace.beginSection("ServiceLocator.startUp");
+        long startTime = SystemClock.elapsedRealtime();
+        try {
+            LOG.info("ServiceLocator setup...");
+            checkFirstLaunch();
+            JobService jobService = getJobService();
+            jobService.cancelOldJobs();
+            jobService.scheduleJobs(Id.FILTERS, Id.RATE_NOTIFICATION);
+            getFilterService().checkFiltersCompiled();
+        } catch (Exception e) {
+            LOG.warn("Error while setting up ServiceLocator", e);
+        } finally {
+            Trace.endSection();
+        }
+        LOG.info("ServiceLocator setup finished in {} ms", SystemClock.elapsedRealtime() - startTime);
     }
 
     private void checkFirstLaunch() {
+        PreferencesService preferencesService = getPreferencesService();
         if (preferencesService.getInstallationTime() == 0L) {
             // It's first launch. We need to set installation time to current
             preferencesService.setInstallationTime(System.currentTimeMillis());
         }
     }
+
+    /**
+     * Lazily created service.
+     * Each service has its own lock, so creating one service does not block getting the others.
+     *
+     * @param <T> Service type
+     */
+    private abstract static class Holder<T> {
+        private final String traceSection;
+        private volatile T instance;
+
+        Holder(String traceSection) {
+            this.traceSection = traceSection;
+        }
+
+        T get() {
+            T result = instance;
+            if (result == null) {
+                synchronized (this) {
+                    result = instance;
+                    if (result == null) {
+                        Trace.beginSection(traceSection);
+                        long startTime = SystemClock.elapsedRealtime();
+                        try {
+                            result = create();
+                            instance = result;
+                        } finally {
+                            Trace.endSection();
+                        }
+                        LOG.info("{} created in {} ms", traceSection, SystemClock.elapsedRealtime() - startTime);
+                    }
+                }
+            }
+            return result;
+        }
+
+        protected abstract T create();
+    }
 }
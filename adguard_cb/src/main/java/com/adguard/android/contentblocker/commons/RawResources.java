@@ -40,83 +40,22 @@ public class RawResources {
 
     private final static Logger LOG = LoggerFactory.getLogger(RawResources.class);
 
-    private static String createTablesScript;
-    private static String insertFiltersScript;
-    private static String insertFiltersLocalizationScript;
-    private static String enableDefaultFiltersScript;
+    private static String selectFiltersScript;
 
     /**
-     * @param context Current context
-     * @return create tables script
-     */
-    public static String getCreateTablesScript(Context context) {
-        if (createTablesScript == null) {
-            createTablesScript = getResourceAsString(context, R.raw.create_tables);
-        }
-
-        return createTablesScript;
-    }
-
-    /**
-     * @param context Current context
-     * @return insert filters script string
-     */
-    public static String getInsertFiltersScript(Context context) {
-        if (insertFiltersScript == null) {
-            insertFiltersScript = getResourceAsString(context, R.raw.insert_filters);
-        }
-
-        return insertFiltersScript;
-    }
-
-    /**
-     * @param context Current context
-     * @return insert filters localization script string
-     */
-    public static String getInsertFiltersLocalizationScript(Context context) {
-        if (insertFiltersLocalizationScript == null) {
-            insertFiltersLocalizationScript = getResourceAsString(context, R.raw.insert_filters_localization);
-        }
-
-        return insertFiltersLocalizationScript;
-    }
-
-    /**
-     * Gets update script used to update schema to a new version
+     * Gets the languages default filters are enabled for
      *
-     * @param context    App context
-     * @param oldVersion Old schema version
-     * @param newVersion New schema version
-     * @return Update script
-     */
-    public static String getUpdateScript(Context context, int oldVersion, int newVersion) {
-        String updateScriptName = "update_" + oldVersion + "_" + newVersion;
-        int id = context.getResources().getIdentifier(updateScriptName, "raw", context.getPackageName());
-
-        if (id <= 0) {
-            return null;
-        }
-
-        return getResourceAsString(context, id);
-    }
-
-    /**
      * @param context Current context
-     * @return enable default filters script string
+     * @return Comma separated input and default locale languages
      */
-    public static String getEnableDefaultFiltersScript(Context context) {
-        if (enableDefaultFiltersScript == null) {
-
-            List<String> languages = getInputLanguages(context);
-            String defaultLanguage = cleanUpLanguageCode(Locale.getDefault().getLanguage());
-            if (!languages.contains(defaultLanguage)) {
-                languages.add(defaultLanguage);
-            }
-
-            enableDefaultFiltersScript = getResourceAsString(context, R.raw.enable_default_filters).replace("{0}", StringUtils.join(languages, ","));
+    public static String getDefaultFilterLanguages(Context context) {
+        List<String> languages = getInputLanguages(context);
+        String defaultLanguage = cleanUpLanguageCode(Locale.getDefault().getLanguage());
+        if (!languages.contains(defaultLanguage)) {
+            languages.add(defaultLanguage);
         }
 
-        return enableDefaultFiltersScript;
+        return StringUtils.join(languages, ",");
     }
 
     /**
@@ -133,7 +72,11 @@ public class RawResources {
         // Full locale: zh-tw, ru-ru, sr-latn, etc
         String fullLocale = (language + (StringUtils.isEmpty(country) ? StringUtils.EMPTY : ("-" + country))).toLowerCase();
 
-        return getResourceAsString(context, R.raw.select_filters)
+        if (selectFiltersScript == null) {
+            selectFiltersScript = getResourceAsString(context, R.raw.select_filters);
+        }
+
+        return selectFiltersScript
                 .replace("{0}", fullLocale)
                 .replace("{1}", simpleLocale);
     }
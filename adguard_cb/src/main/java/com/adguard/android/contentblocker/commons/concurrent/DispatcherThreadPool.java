@@ -19,15 +19,25 @@ package com.adguard.android.contentblocker.commons.concurrent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Thread pool that can dispatch tasks to different queues depending on the
  * queue name. Tasks from one queue will be handled one by one.
+ * <p>
+ * Every queue is a serial executor on top of the shared backend executor.
+ * Queues do not share any lock: tasks are added to a lock-free queue and
+ * the queue is scheduled to the backend only when it is not scheduled yet.
+ * A scheduled queue runs one task and then reschedules itself, so a long queue
+ * does not hold a backend thread away from the other queues.
  */
 public class DispatcherThreadPool {
 
@@ -47,30 +57,27 @@ public class DispatcherThreadPool {
         }
     }
 
-    private final Object syncRoot = new Object();
-    private final Map<String, DispatcherTaskRunner> currentTasksMap = new HashMap<>();
-    private final Map<String, Queue<DispatcherTask>> taskQueuesMap = new HashMap<>();
-    private final ExecutorService executorService;
+    private final ConcurrentMap<String, SerialQueue> queues = new ConcurrentHashMap<>();
+    private final Executor executor;
 
     /**
      * Creates an instance of the dispatcher thread pool
-     * with cached thread pool as it's backend.
+     * with the bounded dispatcher executor as it's backend.
      */
     public DispatcherThreadPool() {
-        this(ExecutorsPool.getCachedExecutorService());
+        this(ExecutorsPool.getDispatcherExecutorService());
     }
 
     /**
      * Creates an instance of the dispatcher thread pool
-     * with the specified ExecutorService backing it up.
+     * with the specified Executor backing it up.
      *
-     * @param executorService Executor service used as inner thread pool.
+     * @param executor Executor used as inner thread pool.
      */
-    public DispatcherThreadPool(ExecutorService executorService) {
-        this.executorService = executorService;
+    public DispatcherThreadPool(Executor executor) {
+        this.executor = executor;
     }
 
-
     /**
      * Submits task to the default queue.
      *
@@ -87,16 +94,7 @@ public class DispatcherThreadPool {
      * @param dispatcherTask Task to execute
      */
     public void submit(String queueName, DispatcherTask dispatcherTask) {
-        synchronized (syncRoot) {
-            DispatcherTaskRunner currentTaskRunner = currentTasksMap.get(queueName);
-            if (currentTaskRunner == null) {
-                currentTaskRunner = new DispatcherTaskRunner(queueName, dispatcherTask);
-                currentTasksMap.put(queueName, currentTaskRunner);
-                executorService.execute(currentTaskRunner);
-            } else {
-                enqueueNextTask(queueName, dispatcherTask);
-            }
-        }
+        getQueue(queueName).submit(dispatcherTask);
     }
 
     /**
@@ -107,13 +105,15 @@ public class DispatcherThreadPool {
     }
 
     /**
-     * Clears specified task queue
+     * Clears specified task queue.
+     * The task that is already running is not affected.
      *
      * @param queueName Queue name
      */
     public void clearQueue(String queueName) {
-        synchronized (syncRoot) {
-            taskQueuesMap.remove(queueName);
+        SerialQueue queue = queues.get(queueName);
+        if (queue != null) {
+            queue.clear();
         }
     }
 
@@ -130,100 +130,217 @@ public class DispatcherThreadPool {
      * Gets specified queue length
      *
      * @param queueName Queue name
-     * @return Length of the queue
+     * @return Number of the tasks waiting in the queue
      */
     public int getQueueLength(String queueName) {
-        synchronized (syncRoot) {
-            Queue<DispatcherTask> queue = taskQueuesMap.get(queueName);
-            return queue == null ? 0 : queue.size();
-        }
+        SerialQueue queue = queues.get(queueName);
+        return queue == null ? 0 : queue.pending.get();
     }
 
     /**
-     * Called when task has finished it's work
+     * Gets the metrics of the default queue
      *
-     * @param queueName Queue name
+     * @return Queue metrics
      */
-    private void onTaskFinished(String queueName) {
-        synchronized (syncRoot) {
-            currentTasksMap.remove(queueName);
-            DispatcherTask nextTask = dequeueNextTask(queueName);
-
-            if (nextTask != null) {
-                submit(nextTask);
-            }
-        }
+    public QueueStats getQueueStats() {
+        return getQueueStats(DEFAULT_QUEUE_NAME);
     }
 
     /**
-     * Polls task from the queue
+     * Gets the metrics of the specified queue
      *
      * @param queueName Queue name
-     * @return Dispatcher task or null if queue is empty
+     * @return Queue metrics
      */
-    private DispatcherTask dequeueNextTask(String queueName) {
-        synchronized (syncRoot) {
-            Queue<DispatcherTask> queue = taskQueuesMap.get(queueName);
+    public QueueStats getQueueStats(String queueName) {
+        SerialQueue queue = queues.get(queueName);
+        return queue == null ? new QueueStats(queueName, 0, 0, 0, 0, 0) : queue.getStats();
+    }
 
+    private SerialQueue getQueue(String queueName) {
+        SerialQueue queue = queues.get(queueName);
+        if (queue == null) {
+            SerialQueue newQueue = new SerialQueue(queueName);
+            queue = queues.putIfAbsent(queueName, newQueue);
             if (queue == null) {
-                return null;
+                queue = newQueue;
             }
-
-            DispatcherTask dispatcherTask = queue.poll();
-            if (queue.isEmpty()) {
-                taskQueuesMap.remove(queueName);
-            }
-            return dispatcherTask;
         }
+        return queue;
     }
 
     /**
-     * Adds next task to be executed
-     *
-     * @param queueName      Queue name
-     * @param dispatcherTask Dispatcher task
+     * Snapshot of the queue metrics
      */
-    private void enqueueNextTask(String queueName, DispatcherTask dispatcherTask) {
-        synchronized (syncRoot) {
-            Queue<DispatcherTask> queue = taskQueuesMap.get(queueName);
+    public static class QueueStats {
 
-            if (queue == null) {
-                queue = new LinkedList<>();
-                taskQueuesMap.put(queueName, queue);
-            }
+        private final String queueName;
+        private final int queueLength;
+        private final long completedCount;
+        private final long totalWaitTimeMs;
+        private final long maxWaitTimeMs;
+        private final long totalRunTimeMs;
+
+        QueueStats(String queueName, int queueLength, long completedCount, long totalWaitTimeMs, long maxWaitTimeMs, long totalRunTimeMs) {
+            this.queueName = queueName;
+            this.queueLength = queueLength;
+            this.completedCount = completedCount;
+            this.totalWaitTimeMs = totalWaitTimeMs;
+            this.maxWaitTimeMs = maxWaitTimeMs;
+            this.totalRunTimeMs = totalRunTimeMs;
+        }
 
-            queue.add(dispatcherTask);
+        public String getQueueName() {
+            return queueName;
+        }
+
+        /**
+         * @return Number of the tasks waiting in the queue
+         */
+        public int getQueueLength() {
+            return queueLength;
+        }
+
+        /**
+         * @return Number of the finished tasks
+         */
+        public long getCompletedCount() {
+            return completedCount;
+        }
+
+        /**
+         * @return Average time between submitting a task and starting it
+         */
+        public long getAverageWaitTimeMs() {
+            return completedCount == 0 ? 0 : totalWaitTimeMs / completedCount;
+        }
+
+        /**
+         * @return Longest time between submitting a task and starting it
+         */
+        public long getMaxWaitTimeMs() {
+            return maxWaitTimeMs;
+        }
+
+        /**
+         * @return Average time of the task execution
+         */
+        public long getAverageRunTimeMs() {
+            return completedCount == 0 ? 0 : totalRunTimeMs / completedCount;
+        }
+
+        /**
+         * @return Total time of the tasks execution
+         */
+        public long getTotalRunTimeMs() {
+            return totalRunTimeMs;
+        }
+
+        @Override
+        public String toString() {
+            return queueName + ": length=" + queueLength + ", completed=" + completedCount
+                    + ", avgWait=" + getAverageWaitTimeMs() + "ms, maxWait=" + maxWaitTimeMs
+                    + "ms, avgRun=" + getAverageRunTimeMs() + "ms";
         }
     }
 
     /**
-     * Wraps dispatcher task so it could be executed.
+     * Task with the time it has been submitted at
      */
-    private class DispatcherTaskRunner implements Runnable {
+    private static class QueuedTask {
 
         private final DispatcherTask dispatcherTask;
+        private final long submitTime;
+
+        QueuedTask(DispatcherTask dispatcherTask) {
+            this.dispatcherTask = dispatcherTask;
+            this.submitTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Runs the tasks of one queue one by one in the submission order.
+     * Any thread can submit tasks, they are run by one backend thread at a time.
+     */
+    private class SerialQueue implements Runnable {
+
         private final String queueName;
+        private final Queue<QueuedTask> tasks = new ConcurrentLinkedQueue<>();
+        /** True while the queue is submitted to the backend or runs a task */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong completedCount = new AtomicLong();
+        private final AtomicLong totalWaitTime = new AtomicLong();
+        private final AtomicLong maxWaitTime = new AtomicLong();
+        private final AtomicLong totalRunTime = new AtomicLong();
 
-        /**
-         * Creates an instance of the dispatcher task
-         *
-         * @param queueName      Dispatcher queue name
-         * @param dispatcherTask Dispatcher task
-         */
-        public DispatcherTaskRunner(String queueName,
-                                    DispatcherTask dispatcherTask) {
+        SerialQueue(String queueName) {
             this.queueName = queueName;
-            this.dispatcherTask = dispatcherTask;
+        }
+
+        void submit(DispatcherTask dispatcherTask) {
+            tasks.add(new QueuedTask(dispatcherTask));
+            pending.incrementAndGet();
+            schedule();
+        }
+
+        void clear() {
+            while (tasks.poll() != null) {
+                pending.decrementAndGet();
+            }
+        }
+
+        QueueStats getStats() {
+            return new QueueStats(queueName, pending.get(), completedCount.get(),
+                    TimeUnit.NANOSECONDS.toMillis(totalWaitTime.get()),
+                    TimeUnit.NANOSECONDS.toMillis(maxWaitTime.get()),
+                    TimeUnit.NANOSECONDS.toMillis(totalRunTime.get()));
         }
 
         @Override
         public void run() {
+            QueuedTask task = tasks.poll();
+            if (task != null) {
+                pending.decrementAndGet();
+                execute(task);
+            }
+
+            scheduled.set(false);
+            // A task could have been added after the queue was polled, but before it was unscheduled
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException ex) {
+                    scheduled.set(false);
+                    throw ex;
+                }
+            }
+        }
+
+        private void execute(QueuedTask task) {
+            long startTime = System.nanoTime();
+            long waitTime = startTime - task.submitTime;
             try {
-                dispatcherTask.execute();
+                task.dispatcherTask.execute();
             } catch (Exception ex) {
                 LOG.error("Error occurred while processing dispatcher task", ex);
             } finally {
-                onTaskFinished(queueName);
+                long runTime = System.nanoTime() - startTime;
+                completedCount.incrementAndGet();
+                totalWaitTime.addAndGet(waitTime);
+                totalRunTime.addAndGet(runTime);
+                long maxWait = maxWaitTime.get();
+                while (waitTime > maxWait && !maxWaitTime.compareAndSet(maxWait, waitTime)) {
+                    maxWait = maxWaitTime.get();
+                }
+                LOG.debug("Task of queue {} waited {} ms and ran {} ms", queueName,
+                        TimeUnit.NANOSECONDS.toMillis(waitTime), TimeUnit.NANOSECONDS.toMillis(runTime));
             }
         }
     }
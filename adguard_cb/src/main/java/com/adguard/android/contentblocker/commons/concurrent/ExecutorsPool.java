@@ -18,7 +18,10 @@ package com.adguard.android.contentblocker.commons.concurrent;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Pool for commonly used executor services.
@@ -26,8 +29,17 @@ import java.util.concurrent.ScheduledExecutorService;
  */
 public class ExecutorsPool {
 
+    private static final int DOWNLOAD_POOL_SIZE = 4;
+    private static final long DOWNLOAD_KEEP_ALIVE_SECONDS = 30;
+    private static final int DISPATCHER_POOL_SIZE = 3;
+    private static final long DISPATCHER_KEEP_ALIVE_SECONDS = 30;
+    private static final long COMPILE_KEEP_ALIVE_SECONDS = 30;
+
     private static ExecutorService cachedExecutorService;
     private static ScheduledExecutorService singleThreadScheduledExecutorService;
+    private static ExecutorService downloadExecutorService;
+    private static ExecutorService dispatcherExecutorService;
+    private static ExecutorService compileExecutorService;
 
     /**
      * @return Standard cached executor service.
@@ -52,4 +64,49 @@ public class ExecutorsPool {
         }
         return singleThreadScheduledExecutorService;
     }
+
+    /**
+     * @return Executor service for network downloads.
+     *         Pool size is limited by {@link #DOWNLOAD_POOL_SIZE}, extra tasks are queued.
+     *         Idle threads are stopped after {@link #DOWNLOAD_KEEP_ALIVE_SECONDS} seconds.
+     */
+    public static synchronized ExecutorService getDownloadExecutorService() {
+        if (downloadExecutorService == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(DOWNLOAD_POOL_SIZE, DOWNLOAD_POOL_SIZE,
+                    DOWNLOAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            downloadExecutorService = executor;
+        }
+        return downloadExecutorService;
+    }
+
+    /**
+     * @return Executor service backing the {@link DispatcherThreadPool} queues.
+     *         Pool size is limited by {@link #DISPATCHER_POOL_SIZE}, extra tasks are queued.
+     *         Idle threads are stopped after {@link #DISPATCHER_KEEP_ALIVE_SECONDS} seconds.
+     */
+    public static synchronized ExecutorService getDispatcherExecutorService() {
+        if (dispatcherExecutorService == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(DISPATCHER_POOL_SIZE, DISPATCHER_POOL_SIZE,
+                    DISPATCHER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            dispatcherExecutorService = executor;
+        }
+        return dispatcherExecutorService;
+    }
+
+    /**
+     * @return Single-thread executor service for the filter compiles.
+     *         It is separate from the dispatcher pool, as dispatcher tasks wait for the compiles to complete.
+     *         The idle thread is stopped after {@link #COMPILE_KEEP_ALIVE_SECONDS} seconds.
+     */
+    public static synchronized ExecutorService getCompileExecutorService() {
+        if (compileExecutorService == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                    COMPILE_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            compileExecutorService = executor;
+        }
+        return compileExecutorService;
+    }
 }
@@ -16,21 +16,28 @@
  */
 package com.adguard.android.contentblocker.db;
 
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 
 import com.adguard.android.contentblocker.commons.RawResources;
+import com.adguard.android.contentblocker.commons.StringHelperUtils;
 import com.adguard.android.contentblocker.service.PreferencesService;
+import com.adguard.lite.sdk.commons.web.HttpValidatorCache;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -40,9 +47,17 @@ public class DbHelper extends SQLiteOpenHelper {
 
     private static final Logger LOG = LoggerFactory.getLogger(DbHelper.class);
 
-    private static final int DB_VERSION = 25;
+    private static final int DB_VERSION = 28;
     private static final String DB_NAME = "adguard.db";
 
+    private static final String CREATE_TABLES_SCRIPT = "create_tables";
+    private static final String INSERT_FILTERS_SCRIPT = "insert_filters";
+    private static final String INSERT_FILTERS_LOCALIZATION_SCRIPT = "insert_filters_localization";
+    private static final String ENABLE_DEFAULT_FILTERS_SCRIPT = "enable_default_filters";
+
+    private static final String SCRIPT_HASHES_TABLE = "script_hashes";
+    private static final String SCRIPT_NAME = "script_name";
+    private static final String SCRIPT_HASH = "script_hash";
 
     private final Context context;
     private final PreferenceUpgrade preferenceUpgrade;
@@ -56,13 +71,14 @@ public class DbHelper extends SQLiteOpenHelper {
     @Override
     public void onCreate(SQLiteDatabase db) {
         LOG.info("DbHelper.onCreate()");
+        long startTime = SystemClock.elapsedRealtime();
         try {
             db.beginTransaction();
 
-            createTables(db);
-            fillFilters(db);
+            executeScript(db, loadScript(CREATE_TABLES_SCRIPT));
+            executeScript(db, loadScript(INSERT_FILTERS_SCRIPT));
             fillFiltersLocalization(db);
-            enableDefaultFilters(db);
+            executeScript(db, loadScript(ENABLE_DEFAULT_FILTERS_SCRIPT), RawResources.getDefaultFilterLanguages(context));
 
             db.setTransactionSuccessful();
         } finally {
@@ -70,79 +86,113 @@ public class DbHelper extends SQLiteOpenHelper {
                 db.endTransaction();
             }
         }
+        LOG.info("Database created in {} ms", SystemClock.elapsedRealtime() - startTime);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         LOG.info("Performing database upgrade {}=>{}.", oldVersion, newVersion);
+        long startTime = SystemClock.elapsedRealtime();
 
+        // The helper runs the upgrade in a single transaction
         for (int i = 0; i < (newVersion - oldVersion); i++) {
             int prevDbVersion = oldVersion + i;
             int newDbVersion = oldVersion + i + 1;
-            String updateScript = RawResources.getUpdateScript(context, prevDbVersion, newDbVersion);
+            SqlScript updateScript = loadScript("update_" + prevDbVersion + "_" + newDbVersion, false);
 
             if (updateScript != null) {
                 LOG.info("Found an update script {}=>{}. Applying it.", prevDbVersion, newDbVersion);
-                executeSql(db, updateScript);
+                executeScript(db, updateScript);
             } else {
-                LOG.info("Update script not found for {}=>{}, recreating DB.", prevDbVersion, newDbVersion);
+                LOG.info("Update script not found for {}=>{}, skipping.", prevDbVersion, newDbVersion);
             }
         }
 
         // Refresh filters localizations
         fillFiltersLocalization(db);
 
-        preferenceUpgrade.onUpgrade(oldVersion, newVersion);
-
-        LOG.info("Performing database upgrade...success");
-    }
-
-    private void enableDefaultFilters(SQLiteDatabase db) {
-        LOG.info("Enabling default filters...");
+        preferenceUpgrade.onUpgrade(db, oldVersion, newVersion);
 
-        executeSql(db, RawResources.getEnableDefaultFiltersScript(context));
+        LOG.info("Performing database upgrade...success in {} ms", SystemClock.elapsedRealtime() - startTime);
     }
 
-    private void fillFilters(SQLiteDatabase db) {
-        LOG.info("Filling database filters table...");
-        String script = RawResources.getInsertFiltersScript(context);
-
-        executeSql(db, script);
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // Called once the upgrade transaction is committed
+        preferenceUpgrade.onOpen();
     }
 
+    /**
+     * Refills the filters localizations unless the script is the same as was executed last time
+     */
     private void fillFiltersLocalization(SQLiteDatabase db) {
+        SqlScript script = loadScript(INSERT_FILTERS_LOCALIZATION_SCRIPT);
+        if (script.getHash().equals(selectScriptHash(db, script.getName()))) {
+            LOG.info("Filters localization script has not been changed, skipping it");
+            return;
+        }
+
         LOG.info("Filling database filters localization table...");
-        String script = RawResources.getInsertFiltersLocalizationScript(context);
+        executeScript(db, script);
 
-        executeSql(db, script);
+        ContentValues values = new ContentValues();
+        values.put(SCRIPT_NAME, script.getName());
+        values.put(SCRIPT_HASH, script.getHash());
+        db.insertWithOnConflict(SCRIPT_HASHES_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+        // The script has overwritten the localizations downloaded from the server,
+        // so the cached validators must not report them as up to date anymore
+        new HttpValidatorCache(context).clear();
     }
 
-    private void executeSql(SQLiteDatabase db, String script) {
-        for (String sql : StringUtils.split(script, ";")) {
-            if (!StringUtils.isWhitespace(sql)) {
-                LOG.info("Execute sql: {}", sql);
-                db.execSQL(sql);
+    private String selectScriptHash(SQLiteDatabase db, String scriptName) {
+        Cursor cursor = null;
+        try {
+            cursor = db.query(SCRIPT_HASHES_TABLE, new String[]{SCRIPT_HASH}, SCRIPT_NAME + "=?", new String[]{scriptName}, null, null, null);
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
             }
         }
     }
 
-    private void createTables(SQLiteDatabase db) {
-        LOG.info("Creating database tables...");
+    private SqlScript loadScript(String name) {
+        return loadScript(name, true);
+    }
+
+    private SqlScript loadScript(String name, boolean required) {
+        try {
+            SqlScript script = SqlScript.load(context, name);
+            if (script == null && required) {
+                throw new IllegalStateException("SQL script " + name + " not found");
+            }
+            return script;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot read SQL script " + name, ex);
+        }
+    }
 
-        executeSql(db, RawResources.getCreateTablesScript(context));
+    private void executeScript(SQLiteDatabase db, SqlScript script, String... templateArgs) {
+        long startTime = SystemClock.elapsedRealtime();
+        int count = script.execute(db, templateArgs);
+        LOG.info("Executed {} statements of {} in {} ms", count, script.getName(), SystemClock.elapsedRealtime() - startTime);
     }
 
     private static class PreferenceUpgrade {
         private final Context context;
+        /** True if the user rules have been moved to the database by the upgrade that is not committed yet */
+        private boolean userRulesMoved;
 
         PreferenceUpgrade(Context context) {
             this.context = context;
         }
 
-        void onUpgrade(int oldVersion, int newVersion) {
+        void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
             if (oldVersion < newVersion) {
                 for (int version = oldVersion + 1; version <= newVersion; version++) {
                     upgradeUserFilter(version);
+                    moveUserRulesToDb(db, version);
                 }
             }
         }
@@ -170,5 +220,51 @@ public class DbHelper extends SQLiteOpenHelper {
 
             }
         }
+
+        /**
+         * Moves the user rules and the whitelist from the preferences to their tables,
+         * so that a single rule could be changed without rewriting the whole list
+         */
+        private void moveUserRulesToDb(SQLiteDatabase db, int version) {
+            if (version == 26) {
+                LOG.info("v26 upgrade: moving user rules and whitelist to the database");
+
+                SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+                int userRuleCount = moveRulesToDb(db, sharedPreferences, UserRuleDao.USER_RULES_TABLE,
+                        PreferencesService.KEY_USER_RULES_STRING, PreferencesService.KEY_DISABLED_USER_RULES);
+                int whitelistCount = moveRulesToDb(db, sharedPreferences, UserRuleDao.WHITELIST_TABLE,
+                        PreferencesService.KEY_WHITELIST_STRING, PreferencesService.KEY_DISABLED_WHITELIST);
+
+                // Preferences are kept until the upgrade is committed, the rules are moved again if it is rolled back
+                userRulesMoved = true;
+
+                LOG.info("{} user rules and {} whitelist rules moved", userRuleCount, whitelistCount);
+            }
+        }
+
+        /**
+         * Removes the preferences the upgrade has moved to the database, once the upgrade is committed
+         */
+        void onOpen() {
+            if (!userRulesMoved) {
+                return;
+            }
+
+            SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(context).edit();
+            editor.remove(PreferencesService.KEY_USER_RULES_STRING);
+            editor.remove(PreferencesService.KEY_DISABLED_USER_RULES);
+            editor.remove(PreferencesService.KEY_WHITELIST_STRING);
+            editor.remove(PreferencesService.KEY_DISABLED_WHITELIST);
+            editor.apply();
+            userRulesMoved = false;
+            LOG.info("User rules and whitelist removed from the preferences");
+        }
+
+        private int moveRulesToDb(SQLiteDatabase db, SharedPreferences sharedPreferences, String tableName, String rulesKey, String disabledRulesKey) {
+            List<String> rules = StringHelperUtils.splitAndTrim(sharedPreferences.getString(rulesKey, null), "\n");
+            Set<String> disabledRules = sharedPreferences.getStringSet(disabledRulesKey, new HashSet<String>());
+            UserRuleDaoImpl.insertRules(db, tableName, rules, disabledRules);
+            return rules.size();
+        }
     }
 }
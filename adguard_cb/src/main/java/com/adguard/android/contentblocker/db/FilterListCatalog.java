@@ -0,0 +1,99 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.db;
+
+import com.adguard.lite.sdk.model.FilterList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the filter lists localized for a single locale.
+ * Filter list objects in the snapshot are shared by all the readers and must not be modified,
+ * changes produce a new snapshot instead.
+ */
+final class FilterListCatalog {
+
+    private final String locale;
+    private final List<FilterList> filterLists;
+    private final Map<Integer, FilterList> filterListsById;
+    private final int enabledCount;
+
+    /**
+     * Creates a snapshot
+     *
+     * @param locale      Locale the filter lists are localized for
+     * @param filterLists Filter lists in display order
+     */
+    FilterListCatalog(String locale, List<FilterList> filterLists) {
+        this.locale = locale;
+        this.filterLists = Collections.unmodifiableList(new ArrayList<>(filterLists));
+        this.filterListsById = new HashMap<>(filterLists.size() * 2);
+        int enabledCount = 0;
+        for (FilterList filterList : filterLists) {
+            filterListsById.put(filterList.getFilterId(), filterList);
+            if (filterList.isEnabled()) {
+                enabledCount++;
+            }
+        }
+        this.enabledCount = enabledCount;
+    }
+
+    String getLocale() {
+        return locale;
+    }
+
+    /**
+     * @return Unmodifiable list of the filter lists in display order
+     */
+    List<FilterList> getFilterLists() {
+        return filterLists;
+    }
+
+    /**
+     * @param filterId Filter list ID
+     * @return Filter list or null if there is no such filter list
+     */
+    FilterList getFilterList(int filterId) {
+        return filterListsById.get(filterId);
+    }
+
+    int getEnabledCount() {
+        return enabledCount;
+    }
+
+    /**
+     * Creates a new snapshot with the filter list replaced
+     *
+     * @param filterList New filter list value
+     * @return New snapshot or this one if there is no filter list with such id
+     */
+    FilterListCatalog withFilterList(FilterList filterList) {
+        if (!filterListsById.containsKey(filterList.getFilterId())) {
+            return this;
+        }
+
+        List<FilterList> newFilterLists = new ArrayList<>(filterLists.size());
+        for (FilterList current : filterLists) {
+            newFilterLists.add(current.getFilterId() == filterList.getFilterId() ? filterList : current);
+        }
+        return new FilterListCatalog(locale, newFilterLists);
+    }
+}
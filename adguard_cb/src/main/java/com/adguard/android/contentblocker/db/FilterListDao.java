@@ -30,9 +30,10 @@ import java.util.List;
 public interface FilterListDao {
 
     /**
-     * Selects all filter lists
+     * Selects all filter lists.
+     * Filter lists are served from an in-memory snapshot, DB is only queried once per locale.
      *
-     * @return All filter lists
+     * @return Unmodifiable list of all filter lists. Its items are shared and must not be modified.
      */
     List<FilterList> selectFilterLists();
 
@@ -72,8 +73,34 @@ public interface FilterListDao {
     void updateFilter(FilterList filter);
 
     /**
-     * Updates filters localizations in DB
+     * Updates filters localizations in DB.
+     * Missing localizations are inserted, unchanged ones are skipped.
      * @param dto {@link FiltersI18nJsonDto}
+     * @return Number of inserted or updated localizations
      */
-    void updateLocalizations(@Nullable FiltersI18nJsonDto dto);
+    int updateLocalizations(@Nullable FiltersI18nJsonDto dto);
+
+    /**
+     * Registers the listener notified when filter lists are changed
+     * @param listener Listener
+     */
+    void addOnFilterListsChangedListener(OnFilterListsChangedListener listener);
+
+    /**
+     * Unregisters the listener
+     * @param listener Listener
+     */
+    void removeOnFilterListsChangedListener(OnFilterListsChangedListener listener);
+
+    /**
+     * Listener of the filter lists changes.
+     * It is called on the thread that changed the filter lists.
+     */
+    interface OnFilterListsChangedListener {
+
+        /**
+         * @param filterLists New unmodifiable list of all filter lists
+         */
+        void onFilterListsChanged(List<FilterList> filterLists);
+    }
 }
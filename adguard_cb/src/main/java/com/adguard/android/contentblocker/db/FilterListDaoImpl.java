@@ -20,6 +20,7 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import androidx.annotation.Nullable;
 
@@ -27,11 +28,15 @@ import com.adguard.android.contentblocker.commons.RawResources;
 import com.adguard.lite.sdk.model.FilterList;
 import com.adguard.lite.sdk.model.FiltersI18nJsonDto;
 
+import org.apache.commons.lang3.StringUtils;
+
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Filter list dao implementation (using db)
@@ -49,6 +54,13 @@ public class FilterListDaoImpl implements FilterListDao {
     private static final String FILTER_LIST_DISPLAY_ORDER = "display_order";
     private static final String FILTER_LANGUAGE_CODE = "language_code";
 
+    private static final String UPDATE_LOCALIZATION_SQL = "UPDATE " + FILTER_LOCALIZATIONS_TABLE
+            + " SET " + FILTER_LIST_NAME + "=?, " + FILTER_LIST_DESCRIPTION + "=COALESCE(?, " + FILTER_LIST_DESCRIPTION + ")"
+            + " WHERE " + FILTER_LIST_ID + "=? AND " + FILTER_LANGUAGE_CODE + "=?";
+    private static final String INSERT_LOCALIZATION_SQL = "INSERT INTO " + FILTER_LOCALIZATIONS_TABLE
+            + " (" + FILTER_LIST_NAME + ", " + FILTER_LIST_DESCRIPTION + ", " + FILTER_LIST_ID + ", " + FILTER_LANGUAGE_CODE + ")"
+            + " VALUES (?, ?, ?, ?)";
+
     private static final String[] COLUMNS = {
             FILTER_LIST_ID,
             FILTER_LIST_NAME,
@@ -62,9 +74,9 @@ public class FilterListDaoImpl implements FilterListDao {
 
     private final Context context;
     private final DbHelper dbHelper;
+    private final List<OnFilterListsChangedListener> listeners = new CopyOnWriteArrayList<>();
 
-    private int cachedFilterCount = 0;
-    private int cachedEnabledFilterCount = 0;
+    private volatile FilterListCatalog catalog;
 
     public FilterListDaoImpl(Context context, DbHelper dbHelper) {
         this.context = context;
@@ -73,76 +85,22 @@ public class FilterListDaoImpl implements FilterListDao {
 
     @Override
     public List<FilterList> selectFilterLists() {
-        List<FilterList> items = new ArrayList<>();
-
-        Cursor cursor = null;
-        try {
-            SQLiteDatabase db = dbHelper.getReadableDatabase();
-
-            Locale locale = Locale.getDefault();
-            cursor = db.rawQuery(RawResources.getSelectFiltersScript(context, locale.getLanguage(), locale.getCountry()), null);
-            while (cursor.moveToNext()) {
-                items.add(parseFilterList(cursor));
-            }
-        } finally {
-            closeCursor(cursor);
-        }
-
-        return items;
+        return getCatalog().getFilterLists();
     }
 
     @Override
     public FilterList selectFilterList(final int filterListId) {
-        FilterList result = null;
-
-        Cursor cursor = null;
-        try {
-            SQLiteDatabase db = dbHelper.getReadableDatabase();
-            cursor = db.query(FILTER_LISTS_TABLE,
-                    COLUMNS,
-                    FILTER_LIST_ID + "=?",
-                    new String[]{String.valueOf(filterListId)},
-                    null,
-                    null,
-                    null);
-
-            if (cursor != null) {
-                cursor.moveToFirst();
-                if (cursor.getCount() > 0)
-                    result = parseFilterList(cursor);
-            }
-
-        } finally {
-            closeCursor(cursor);
-        }
-
-        return result;
+        return getCatalog().getFilterList(filterListId);
     }
 
     @Override
     public int getFilterListCount() {
-        if (cachedFilterCount > 0) {
-            return cachedFilterCount;
-        } else {
-            cachedFilterCount = selectFilterLists().size();
-            return cachedFilterCount;
-        }
+        return getCatalog().getFilterLists().size();
     }
 
     @Override
     public int getEnabledFilterListCount() {
-        if (cachedEnabledFilterCount > 0) {
-            return cachedEnabledFilterCount;
-        } else {
-            cachedEnabledFilterCount = 0;
-            List<FilterList> filterLists = selectFilterLists();
-            for (FilterList filterList : filterLists) {
-                if (filterList.isEnabled()) {
-                    cachedEnabledFilterCount++;
-                }
-            }
-            return cachedEnabledFilterCount;
-        }
+        return getCatalog().getEnabledCount();
     }
 
     @Override
@@ -151,35 +109,80 @@ public class FilterListDaoImpl implements FilterListDao {
 
         ContentValues values = new ContentValues();
         values.put(FILTER_LIST_ENABLED, enabled ? 1 : 0);
-        try {
-            db.beginTransaction();
-            db.update(FILTER_LISTS_TABLE, values, FILTER_LIST_ID + "=?", new String[]{Integer.toString(filter.getFilterId())});
-            db.setTransactionSuccessful();
-        } finally {
-            db.endTransaction();
+        FilterListCatalog newCatalog;
+        synchronized (this) {
+            try {
+                db.beginTransaction();
+                db.update(FILTER_LISTS_TABLE, values, FILTER_LIST_ID + "=?", new String[]{Integer.toString(filter.getFilterId())});
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            FilterList filterList = copyFromCatalog(filter.getFilterId());
+            if (filterList == null) {
+                return;
+            }
+            filterList.setEnabled(enabled);
+            newCatalog = catalog.withFilterList(filterList);
+            catalog = newCatalog;
         }
 
-        cachedEnabledFilterCount = 0;
+        notifyListeners(newCatalog);
     }
 
     @Override
-    public void updateLocalizations(@Nullable FiltersI18nJsonDto dto) {
+    public int updateLocalizations(@Nullable FiltersI18nJsonDto dto) {
         if (dto == null || dto.getFilters() == null) {
-            return;
+            return 0;
         }
 
+        int updatedCount = 0;
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        try {
-            db.beginTransaction();
-            for (Map.Entry<Integer, Map<String, FiltersI18nJsonDto.NameDesc>> entry : dto.getFilters().entrySet()) {
-                for (Map.Entry<String, FiltersI18nJsonDto.NameDesc> nameDescEntry : entry.getValue().entrySet()) {
-                    updateLocalization(db, entry.getKey(), nameDescEntry.getKey(), nameDescEntry.getValue());
+        SQLiteStatement updateStatement = null;
+        SQLiteStatement insertStatement = null;
+        FilterListCatalog newCatalog = null;
+        synchronized (this) {
+            try {
+                db.beginTransaction();
+                Map<String, Localization> localizations = selectLocalizations(db);
+                updateStatement = db.compileStatement(UPDATE_LOCALIZATION_SQL);
+                insertStatement = db.compileStatement(INSERT_LOCALIZATION_SQL);
+
+                for (Map.Entry<Integer, Map<String, FiltersI18nJsonDto.NameDesc>> entry : dto.getFilters().entrySet()) {
+                    for (Map.Entry<String, FiltersI18nJsonDto.NameDesc> nameDescEntry : entry.getValue().entrySet()) {
+                        int filterId = entry.getKey();
+                        String langCode = nameDescEntry.getKey();
+                        FiltersI18nJsonDto.NameDesc nameDesc = nameDescEntry.getValue();
+                        Localization localization = localizations.get(createLocalizationKey(filterId, langCode));
+                        if (localization == null) {
+                            bindLocalization(insertStatement, nameDesc.getName(), nameDesc.getDescription(), filterId, langCode);
+                            insertStatement.executeInsert();
+                            updatedCount++;
+                        } else if (!localization.isSame(nameDesc)) {
+                            bindLocalization(updateStatement, nameDesc.getName(), nameDesc.getDescription(), filterId, langCode);
+                            updateStatement.executeUpdateDelete();
+                            updatedCount++;
+                        }
+                    }
                 }
+                db.setTransactionSuccessful();
+            } finally {
+                closeStatement(updateStatement);
+                closeStatement(insertStatement);
+                db.endTransaction();
+            }
+
+            if (updatedCount > 0 && catalog != null) {
+                newCatalog = loadCatalog(Locale.getDefault().toString());
+                catalog = newCatalog;
             }
-            db.setTransactionSuccessful();
-        } finally {
-            db.endTransaction();
         }
+
+        if (newCatalog != null) {
+            notifyListeners(newCatalog);
+        }
+        return updatedCount;
     }
 
     @Override
@@ -191,32 +194,143 @@ public class FilterListDaoImpl implements FilterListDao {
         values.put(FILTER_LIST_TIME_UPDATED, filter.getTimeUpdated().getTime());
         values.put(FILTER_LIST_TIME_LAST_DOWNLOADED, filter.getLastTimeDownloaded().getTime());
 
+        FilterListCatalog newCatalog;
+        synchronized (this) {
+            try {
+                db.beginTransaction();
+                db.update(FILTER_LISTS_TABLE, values, FILTER_LIST_ID + "=?", new String[]{Integer.toString(filter.getFilterId())});
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            // Only the updated columns are taken from the argument, other fields could be changed meanwhile
+            FilterList filterList = copyFromCatalog(filter.getFilterId());
+            if (filterList == null) {
+                return;
+            }
+            filterList.setVersion(filter.getVersion().getLongVersionString());
+            filterList.setTimeUpdated(filter.getTimeUpdated());
+            filterList.setLastTimeDownloaded(filter.getLastTimeDownloaded());
+            newCatalog = catalog.withFilterList(filterList);
+            catalog = newCatalog;
+        }
+
+        notifyListeners(newCatalog);
+    }
+
+    @Override
+    public void addOnFilterListsChangedListener(OnFilterListsChangedListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeOnFilterListsChangedListener(OnFilterListsChangedListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the filter lists snapshot, loading it from DB if there is none for the current locale
+     *
+     * @return Filter lists snapshot
+     */
+    private FilterListCatalog getCatalog() {
+        String locale = Locale.getDefault().toString();
+        FilterListCatalog current = catalog;
+        if (current != null && current.getLocale().equals(locale)) {
+            return current;
+        }
+
+        synchronized (this) {
+            current = catalog;
+            if (current == null || !current.getLocale().equals(locale)) {
+                current = loadCatalog(locale);
+                catalog = current;
+            }
+        }
+        return current;
+    }
+
+    private FilterListCatalog loadCatalog(String locale) {
+        List<FilterList> items = new ArrayList<>();
+
+        Cursor cursor = null;
         try {
-            db.beginTransaction();
-            db.update(FILTER_LISTS_TABLE, values, FILTER_LIST_ID + "=?", new String[]{Integer.toString(filter.getFilterId())});
-            db.setTransactionSuccessful();
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+            Locale defaultLocale = Locale.getDefault();
+            cursor = db.rawQuery(RawResources.getSelectFiltersScript(context, defaultLocale.getLanguage(), defaultLocale.getCountry()), null);
+            while (cursor.moveToNext()) {
+                items.add(parseFilterList(cursor));
+            }
         } finally {
-            db.endTransaction();
+            closeCursor(cursor);
         }
+
+        return new FilterListCatalog(locale, items);
     }
 
     /**
-     * Updates single filter localization in DB
-     * @param db       {@link SQLiteDatabase}
-     * @param filterId Filter ID
-     * @param langCode Language code
-     * @param nameDesc nameDesc {@link FiltersI18nJsonDto.NameDesc}
+     * Copies the filter list from the current snapshot so that it could be changed.
+     * Must be called holding the lock.
+     *
+     * @param filterId Filter list ID
+     * @return Filter list copy or null if there is no loaded snapshot or filter list with such id
      */
-    private void updateLocalization(SQLiteDatabase db, int filterId, String langCode, FiltersI18nJsonDto.NameDesc nameDesc) {
-        ContentValues values = new ContentValues();
-        values.put(FILTER_LANGUAGE_CODE, langCode);
-        values.put(FILTER_LIST_ID, filterId);
-        values.put(FILTER_LIST_NAME, nameDesc.getName());
-        String description = nameDesc.getDescription();
+    private FilterList copyFromCatalog(int filterId) {
+        FilterList filterList = catalog == null ? null : catalog.getFilterList(filterId);
+        return filterList == null ? null : new FilterList(filterList);
+    }
+
+    private void notifyListeners(FilterListCatalog newCatalog) {
+        for (OnFilterListsChangedListener listener : listeners) {
+            listener.onFilterListsChanged(newCatalog.getFilterLists());
+        }
+    }
+
+    /**
+     * Selects all the filter localizations in DB
+     *
+     * @param db {@link SQLiteDatabase}
+     * @return Localizations mapped by {@link #createLocalizationKey(int, String)}
+     */
+    private Map<String, Localization> selectLocalizations(SQLiteDatabase db) {
+        Map<String, Localization> localizations = new HashMap<>();
+
+        Cursor cursor = null;
+        try {
+            cursor = db.query(FILTER_LOCALIZATIONS_TABLE,
+                    new String[]{FILTER_LIST_ID, FILTER_LANGUAGE_CODE, FILTER_LIST_NAME, FILTER_LIST_DESCRIPTION},
+                    null, null, null, null, null);
+            while (cursor.moveToNext()) {
+                String key = createLocalizationKey(cursor.getInt(0), cursor.getString(1));
+                localizations.put(key, new Localization(cursor.getString(2), cursor.getString(3)));
+            }
+        } finally {
+            closeCursor(cursor);
+        }
+
+        return localizations;
+    }
+
+    /**
+     * Binds the localization to the update or insert statement.
+     * A missing description is bound as null, so the update statement keeps the one in DB.
+     */
+    private static void bindLocalization(SQLiteStatement statement, String name, String description, int filterId, String langCode) {
+        statement.clearBindings();
+        statement.bindString(1, StringUtils.defaultString(name));
         if (description != null) {
-            values.put(FILTER_LIST_DESCRIPTION, description);
+            statement.bindString(2, description);
+        } else {
+            statement.bindNull(2);
         }
-        db.update(FILTER_LOCALIZATIONS_TABLE, values, FILTER_LIST_ID + "=? AND " + FILTER_LANGUAGE_CODE + "=?", new String[]{Integer.toString(filterId), langCode});
+        statement.bindLong(3, filterId);
+        statement.bindString(4, langCode);
+    }
+
+    private static String createLocalizationKey(int filterId, String langCode) {
+        return filterId + ":" + langCode;
     }
 
     private FilterList parseFilterList(Cursor cursor) {
@@ -239,4 +353,33 @@ public class FilterListDaoImpl implements FilterListDao {
             cursor.close();
         }
     }
+
+    private static void closeStatement(SQLiteStatement statement) {
+        if (statement != null) {
+            statement.close();
+        }
+    }
+
+    /**
+     * Localized name and description kept in DB
+     */
+    private static class Localization {
+        private final String name;
+        private final String description;
+
+        Localization(String name, String description) {
+            this.name = name;
+            this.description = description;
+        }
+
+        /**
+         * @param nameDesc Downloaded localization
+         * @return true if updating with the downloaded localization would not change the row
+         */
+        boolean isSame(FiltersI18nJsonDto.NameDesc nameDesc) {
+            // A missing description does not replace the one in DB
+            return StringUtils.equals(name, nameDesc.getName()) &&
+                    (nameDesc.getDescription() == null || StringUtils.equals(description, nameDesc.getDescription()));
+        }
+    }
 }
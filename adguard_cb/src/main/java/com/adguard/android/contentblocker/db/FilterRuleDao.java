@@ -16,6 +16,8 @@
  */
 package com.adguard.android.contentblocker.db;
 
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 
 /**
@@ -23,6 +25,24 @@ import java.util.List;
  */
 public interface FilterRuleDao {
 
+    /** Basic and whitelist network rules */
+    int RULE_TYPE_NETWORK = 1;
+
+    /** Element hiding (CSS) rules */
+    int RULE_TYPE_COSMETIC = 1 << 1;
+
+    /** Script (JS) rules */
+    int RULE_TYPE_SCRIPT = 1 << 2;
+
+    /** Content (HTML filtering) rules */
+    int RULE_TYPE_CONTENT = 1 << 3;
+
+    /** Comments */
+    int RULE_TYPE_COMMENT = 1 << 4;
+
+    /** Mask of all the rule types */
+    int RULE_TYPE_ALL = RULE_TYPE_NETWORK | RULE_TYPE_COSMETIC | RULE_TYPE_SCRIPT | RULE_TYPE_CONTENT | RULE_TYPE_COMMENT;
+
     /**
      * Selects rules by filter ids list
      *
@@ -31,6 +51,44 @@ public interface FilterRuleDao {
      */
     List<String> selectRuleTexts(List<Integer> filterIds, boolean useCosmetics);
 
+    /**
+     * Writes the rules of the specified filters to the channel.
+     * Same rules as {@link #selectRuleTexts(List, boolean)} select are written, one rule per line,
+     * but they are copied from the storage as is, without creating strings.
+     *
+     * @param filterIds    Filter ID list
+     * @param useCosmetics If false, CSS, JS and content rules are skipped
+     * @param channel      Channel to write rules to
+     * @return Number of rules written
+     */
+    int writeRuleTexts(List<Integer> filterIds, boolean useCosmetics, WritableByteChannel channel) throws IOException;
+
+    /**
+     * Writes the rules of the specified types of the specified filters to the channel.
+     *
+     * @param filterIds Filter ID list
+     * @param typeMask  Mask of RULE_TYPE_* constants
+     * @param channel   Channel to write rules to
+     * @return Number of rules written
+     * @see #writeRuleTexts(List, boolean, WritableByteChannel)
+     */
+    int writeRuleTexts(List<Integer> filterIds, int typeMask, WritableByteChannel channel) throws IOException;
+
+    /**
+     * Writes the rules of the specified types of the specified filters to the channel,
+     * counting the rules written for each filter. The rules are written filter by filter in the order of the ids.
+     * If a rules store turns out to be corrupted while it is copied, the store is removed, and if the channel is seekable,
+     * it is truncated to its initial position and the rules are written again.
+     *
+     * @param filterIds  Filter ID list
+     * @param typeMask   Mask of RULE_TYPE_* constants
+     * @param channel    Channel to write rules to
+     * @param ruleCounts Array to put the number of rules written for each filter to, the same size as the ids
+     * @return Number of rules written
+     * @see #writeRuleTexts(List, int, WritableByteChannel)
+     */
+    int writeRuleTexts(List<Integer> filterIds, int typeMask, WritableByteChannel channel, int[] ruleCounts) throws IOException;
+
     /**
      * Inserts batch of rules to the specified filter.
      *
@@ -39,6 +97,16 @@ public interface FilterRuleDao {
      */
     void setFilterRules(int filterId, List<String> rules);
 
+    /**
+     * Creates writer of the new rules of the specified filter.
+     * Rules can be streamed to the writer as they are downloaded.
+     *
+     * @param filterId Filter to write rules to
+     * @return Rules writer. Current filter rules are replaced on {@link FilterRulesWriter#commit()}.
+     * @throws IOException if the writer cannot be created
+     */
+    FilterRulesWriter createFilterRulesWriter(int filterId) throws IOException;
+
     /**
      * Checks if we have filter rules for this filter locally
      *
@@ -46,4 +114,40 @@ public interface FilterRuleDao {
      * @return True if we do not need to download rules, False otherwise
      */
     boolean hasFilterRules(int filterId);
+
+    /**
+     * Gets a fingerprint of the locally stored rules of the specified filter.
+     * The fingerprint changes every time the filter rules are rewritten.
+     *
+     * @param filterId Filter id
+     * @return Fingerprint of the filter rules
+     */
+    String getFilterRulesFingerprint(int filterId);
+
+    /**
+     * Registers the listener notified when the local rules of a filter are lost
+     * @param listener Listener
+     */
+    void addOnFilterRulesLostListener(OnFilterRulesLostListener listener);
+
+    /**
+     * Unregisters the listener
+     * @param listener Listener
+     */
+    void removeOnFilterRulesLostListener(OnFilterRulesLostListener listener);
+
+    /**
+     * Listener of the lost filter rules.
+     * It is called on the thread that found the rules store corrupted.
+     */
+    interface OnFilterRulesLostListener {
+
+        /**
+         * Called when the rules store of the filter is corrupted and has been removed.
+         * The filter falls back to the stale bundled rules, if any, until it is downloaded again.
+         *
+         * @param filterId Filter id
+         */
+        void onFilterRulesLost(int filterId);
+    }
 }
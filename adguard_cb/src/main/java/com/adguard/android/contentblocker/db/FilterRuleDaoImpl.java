@@ -21,7 +21,8 @@ import android.content.res.Resources;
 
 import androidx.annotation.Nullable;
 
-import org.apache.commons.collections4.list.SetUniqueList;
+import com.adguard.lite.sdk.commons.io.IoUtils;
+
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -29,28 +30,37 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
-import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * Filter rules dao implementation using android internal storage
+ * Filter rules dao implementation using android internal storage.
+ * <p>
+ * Rules of every filter are kept in a binary {@link FilterRuleStore}.
+ * Plain text files (default filters from the raw resources and files written by older versions)
+ * are converted to this format on first use. If the store cannot be read, the plain text is used instead.
+ * The downloaded rules are lost then, so the {@link OnFilterRulesLostListener}s are notified to download them again.
  */
 public class FilterRuleDaoImpl implements FilterRuleDao {
 
     private final Logger log = LoggerFactory.getLogger(FilterRuleDaoImpl.class);
     private final Context context;
+    private final List<OnFilterRulesLostListener> listeners = new CopyOnWriteArrayList<>();
 
-    private static final String MASK_CSS_RULE = "##";
-    private static final String MASK_CSS_EXCEPTION_RULE = "#@#";
-    private static final String MASK_CSS_INJECT_RULE = "#$#";
-    private static final String MASK_CSS_INJECT_EXCEPTION_RULE = "#@$#";
-    private static final String MASK_SCRIPT_RULE = "#%#";
-    private static final String MASK_CONTENT_RULE = "$$";
+    private static final String FILTER_FILE_PREFIX = "filter_";
+    private static final String STORE_FILE_EXTENSION = ".bin";
 
     /**
      * Creates an instance of the filter rules internal storage
@@ -63,81 +73,338 @@ public class FilterRuleDaoImpl implements FilterRuleDao {
 
     @Override
     public List<String> selectRuleTexts(List<Integer> filterIds, boolean useCosmetics) {
-        List<String> rules = SetUniqueList.setUniqueList(new ArrayList<>());
+        int typeMask = getTypeMask(useCosmetics);
+        List<String> rules = new ArrayList<>();
 
-        for (int filterId : filterIds) {
-            List<String> list = getRules(filterId, useCosmetics);
-            if (list != null) {
-                rules.addAll(list);
+        try {
+            try {
+                readRuleTexts(filterIds, typeMask, rules);
+            } catch (FilterRuleStore.CorruptedStoreException ex) {
+                // Corrupted store is removed, the rules are read again without it
+                rules.clear();
+                readRuleTexts(filterIds, typeMask, rules);
             }
+        } catch (IOException ex) {
+            log.error("Cannot select rules of filters {}:\r\n", filterIds, ex);
         }
 
         return rules;
     }
 
     @Override
-    public void setFilterRules(int filterId, List<String> rules) {
+    public int writeRuleTexts(List<Integer> filterIds, boolean useCosmetics, WritableByteChannel channel) throws IOException {
+        return writeRuleTexts(filterIds, getTypeMask(useCosmetics), channel);
+    }
+
+    @Override
+    public int writeRuleTexts(List<Integer> filterIds, int typeMask, WritableByteChannel channel) throws IOException {
+        return writeRuleTexts(filterIds, typeMask, channel, new int[filterIds.size()]);
+    }
+
+    @Override
+    public int writeRuleTexts(List<Integer> filterIds, int typeMask, WritableByteChannel channel, int[] ruleCounts) throws IOException {
+        long start = channel instanceof SeekableByteChannel ? ((SeekableByteChannel) channel).position() : -1;
         try {
-            String fileName = getOrCreateFilterFile(filterId);
-            context.deleteFile(fileName);
-            OutputStream outputStream = context.getApplicationContext().openFileOutput(fileName, Context.MODE_PRIVATE);
+            return transferRuleTexts(filterIds, typeMask, channel, ruleCounts);
+        } catch (FilterRuleStore.CorruptedStoreException ex) {
+            if (start < 0) {
+                throw ex;
+            }
+            // Corrupted store is removed, the rules written so far are discarded and written again without it
+            ((SeekableByteChannel) channel).truncate(start).position(start);
+            return transferRuleTexts(filterIds, typeMask, channel, ruleCounts);
+        }
+    }
+
+    /**
+     * Writes the rules of the specified filters to the channel in a single pass.
+     * Rules of a corrupted store are written partially, the store is removed then.
+     *
+     * @return Number of rules written
+     * @throws FilterRuleStore.CorruptedStoreException if a rules store turns out to be corrupted
+     */
+    private int transferRuleTexts(List<Integer> filterIds, int typeMask, WritableByteChannel channel, int[] ruleCounts) throws IOException {
+        RuleDeduplicator writtenRules = new RuleDeduplicator();
 
-            IOUtils.writeLines(rules, null, outputStream, "UTF-8");
+        int written = 0;
+        for (int i = 0; i < filterIds.size(); i++) {
+            int filterId = filterIds.get(i);
+            int source = writtenRules.addSource();
+            FilterRuleStore.Reader reader = openStore(filterId);
+            if (reader != null) {
+                try {
+                    ruleCounts[i] = reader.transferRules(typeMask, writtenRules, source, channel);
+                } catch (FilterRuleStore.CorruptedStoreException ex) {
+                    onStoreCorrupted(filterId, ex);
+                    throw ex;
+                } finally {
+                    IoUtils.closeQuietly(reader);
+                }
+            } else {
+                List<String> rules = getTextRules(filterId, typeMask);
+                ruleCounts[i] = rules == null ? 0 : writeTextRules(new TextSource(rules, writtenRules, source), channel);
+            }
+            written += ruleCounts[i];
+        }
+
+        for (int source = 0; source < filterIds.size(); source++) {
+            int duplicates = writtenRules.getCrossDuplicates(source);
+            if (duplicates > 0) {
+                log.info("Filter {} has {} rules duplicating the rules of other filters", filterIds.get(source), duplicates);
+            }
+        }
+
+        return written;
+    }
+
+    @Override
+    public void setFilterRules(int filterId, List<String> rules) {
+        FilterRulesWriter writer = null;
+        try {
+            writer = createFilterRulesWriter(filterId);
+            for (String rule : rules) {
+                writer.handleLine(rule);
+            }
+            writer.commit();
         } catch (Exception ex) {
             log.error("Cannot insert new rules to filter {}:\r\n{}", filterId, ex);
             throw new RuntimeException("Cannot insert new rules to filter " + filterId, ex);
+        } finally {
+            IoUtils.closeQuietly(writer);
         }
     }
 
     @Override
-    public boolean hasFilterRules(int filterId) {
-        String filterName = "filter_" + filterId;
+    public FilterRulesWriter createFilterRulesWriter(int filterId) throws IOException {
+        return new StoreRulesWriter(filterId);
+    }
 
+    @Override
+    public boolean hasFilterRules(int filterId) {
         String[] strings = context.getApplicationContext().fileList();
-        return ArrayUtils.contains(strings, filterName);
+        return ArrayUtils.contains(strings, getStoreFileName(filterId))
+                || ArrayUtils.contains(strings, getTextFileName(filterId));
+    }
+
+    @Override
+    public String getFilterRulesFingerprint(int filterId) {
+        FilterRuleStore.Reader reader = null;
+        try {
+            // Only the header is needed, the store is verified when its rules are read
+            reader = new FilterRuleStore.Reader(getOrCreateStore(filterId));
+            return reader.getRuleCount() + "-" + Long.toHexString(reader.getChecksum());
+        } catch (IOException ex) {
+            log.warn("Cannot get fingerprint of filter {}", filterId, ex);
+            return StringUtils.EMPTY;
+        } finally {
+            IoUtils.closeQuietly(reader);
+        }
+    }
+
+    @Override
+    public void addOnFilterRulesLostListener(OnFilterRulesLostListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeOnFilterRulesLostListener(OnFilterRulesLostListener listener) {
+        listeners.remove(listener);
+    }
+
+    private File getStoreFile(int filterId) {
+        return context.getFileStreamPath(getStoreFileName(filterId));
+    }
+
+    private static String getStoreFileName(int filterId) {
+        return FILTER_FILE_PREFIX + filterId + STORE_FILE_EXTENSION;
+    }
+
+    private static String getTextFileName(int filterId) {
+        return FILTER_FILE_PREFIX + filterId;
     }
 
     /**
-     * Gets or creates filter file
+     * Gets the filter rules store. Converts plain text rules if there is no store yet.
      *
      * @param filterId Filter identifier
-     * @return Filter file name
+     * @return Store file
+     */
+    private File getOrCreateStore(int filterId) throws IOException {
+        File storeFile = getStoreFile(filterId);
+        if (!storeFile.exists()) {
+            convertToStore(filterId, storeFile);
+        }
+        return storeFile;
+    }
+
+    /**
+     * Converts plain text filter rules to the binary store.
+     * Rules are taken from the local text file or from the default filter in raw resources.
+     *
+     * @param filterId  Filter identifier
+     * @param storeFile Store file
+     */
+    private void convertToStore(int filterId, File storeFile) throws IOException {
+        String fileName = getTextFileName(filterId);
+        log.info("Converting filter rules {} to the binary store", fileName);
+
+        InputStream inputStream = null;
+        BufferedReader reader = null;
+        FilterRuleStore.Writer writer = null;
+        try {
+            inputStream = openTextRules(fileName);
+            reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            writer = new FilterRuleStore.Writer(storeFile);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.addRule(line);
+            }
+            writer.commit();
+        } finally {
+            IoUtils.closeQuietly(writer);
+            IoUtils.closeQuietly(reader);
+            IoUtils.closeQuietly(inputStream);
+        }
+
+        context.deleteFile(fileName);
+        log.info("Filter rules {} have been converted", fileName);
+    }
+
+    /**
+     * Opens plain text filter rules
+     *
+     * @param fileName Text file name
+     * @return Stream of the local file if it exists or of the default filter rules
+     * @throws FileNotFoundException if there are no rules for this filter
      */
-    private String getOrCreateFilterFile(int filterId) throws IOException {
-        String[] files = context.fileList();
-        String fileName = "filter_" + filterId;
+    private InputStream openTextRules(String fileName) throws FileNotFoundException {
+        if (ArrayUtils.contains(context.fileList(), fileName)) {
+            return context.openFileInput(fileName);
+        }
 
-        if (!ArrayUtils.contains(files, fileName)) {
-            initDefaultFilterRules(fileName);
+        Resources resources = context.getResources();
+        int id = resources.getIdentifier(fileName, "raw", context.getPackageName());
+        if (id <= 0) {
+            throw new FileNotFoundException("No rules found for " + fileName);
         }
+        return resources.openRawResource(id);
+    }
 
-        return fileName;
+    /**
+     * Opens the rules store of the specified filter.
+     * If the store is corrupted, it is removed and the listeners are notified that the filter rules are lost.
+     *
+     * @param filterId Filter ID
+     * @return Store reader or null if the store cannot be read
+     */
+    @Nullable
+    private FilterRuleStore.Reader openStore(int filterId) {
+        try {
+            return new FilterRuleStore.Reader(getOrCreateStore(filterId));
+        } catch (FileNotFoundException ex) {
+            log.error("Cannot select rules for filter {}", filterId, ex);
+        } catch (Exception ex) {
+            onStoreCorrupted(filterId, ex);
+        }
+        return null;
     }
 
     /**
-     * Adds rules from the specified filter to the list
+     * Removes the corrupted rules store and notifies the listeners that the filter rules are lost.
+     * The next read of the filter falls back to the text rules.
      *
      * @param filterId Filter ID
+     * @param ex       Error the store has been found corrupted with
+     */
+    private void onStoreCorrupted(int filterId, Exception ex) {
+        log.warn("Cannot read rules store of filter {}, falling back to the text rules", filterId, ex);
+        //noinspection ResultOfMethodCallIgnored
+        getStoreFile(filterId).delete();
+        for (OnFilterRulesLostListener listener : listeners) {
+            listener.onFilterRulesLost(filterId);
+        }
+    }
+
+    /**
+     * Reads the rules of the specified filters in a single pass
      *
+     * @param rules Collection to add rules to
+     * @throws FilterRuleStore.CorruptedStoreException if a rules store turns out to be corrupted, it is removed then
+     */
+    private void readRuleTexts(List<Integer> filterIds, int typeMask, Collection<String> rules) throws IOException {
+        RuleDeduplicator readRules = new RuleDeduplicator();
+        for (int filterId : filterIds) {
+            int source = readRules.addSource();
+            FilterRuleStore.Reader reader = openStore(filterId);
+            if (reader != null) {
+                try {
+                    reader.readUniqueRules(typeMask, readRules, source, rules);
+                } catch (FilterRuleStore.CorruptedStoreException ex) {
+                    onStoreCorrupted(filterId, ex);
+                    throw ex;
+                } finally {
+                    IoUtils.closeQuietly(reader);
+                }
+            } else {
+                List<String> textRules = getTextRules(filterId, typeMask);
+                if (textRules != null) {
+                    TextSource textSource = new TextSource(textRules, readRules, source);
+                    for (int i = 0; i < textSource.count; i++) {
+                        if (textSource.add(i)) {
+                            rules.add(textSource.getRule(i));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the rules that are not written yet to the channel
+     *
+     * @param source  Plain text rules registered in the set of the written rules
+     * @param channel Channel to write rules to
+     * @return Number of rules written
+     */
+    private static int writeTextRules(TextSource source, WritableByteChannel channel) throws IOException {
+        int written = 0;
+        for (int i = 0; i < source.count; i++) {
+            if (source.add(i)) {
+                ByteBuffer rule = source.buffer.duplicate();
+                rule.limit(source.offsets[i + 1]);
+                rule.position(source.offsets[i]);
+                while (rule.hasRemaining()) {
+                    channel.write(rule);
+                }
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Gets rules of the specified filter from its plain text file
+     *
+     * @param filterId Filter ID
+     * @param typeMask Mask of the rule types to select
      * @return List of rules
      */
     @Nullable
-    private List<String> getRules(int filterId, boolean useCosmetics) {
+    private List<String> getTextRules(int filterId, int typeMask) {
         InputStream inputStream = null;
         InputStreamReader inputStreamReader = null;
         BufferedReader reader = null;
 
         List<String> rules = new ArrayList<>();
         try {
-            String fileName = getOrCreateFilterFile(filterId);
-
-            inputStream = context.getApplicationContext().openFileInput(fileName);
+            inputStream = openTextRules(getTextFileName(filterId));
             inputStreamReader = new InputStreamReader(inputStream);
             reader = new BufferedReader(inputStreamReader);
 
             String line = reader.readLine();
             while (line != null) {
-                if (useCosmetics || !isCosmeticRule(line)) {
+                if (isRuleOfType(line, typeMask)) {
                     rules.add(line);
                 }
                 line = reader.readLine();
@@ -154,47 +421,99 @@ public class FilterRuleDaoImpl implements FilterRuleDao {
     }
 
     /**
-     * Returns true if rule is CSS, JS or Content
+     * Returns true if rule is of one of the specified types.
+     * Empty lines are of any type only.
      *
      * @param ruleText Rule text
-     * @return true if rule is CSS, JS or Content
+     * @param typeMask Mask of the rule types
+     * @return true if rule is of one of the specified types
      */
-    private static boolean isCosmeticRule(String ruleText) {
-        return StringUtils.isEmpty(ruleText) ||
-                ruleText.contains(MASK_CSS_RULE) ||
-                ruleText.contains(MASK_CSS_EXCEPTION_RULE) ||
-                ruleText.contains(MASK_CSS_INJECT_RULE) ||
-                ruleText.contains(MASK_CSS_INJECT_EXCEPTION_RULE) ||
-                ruleText.contains(MASK_SCRIPT_RULE) ||
-                ruleText.contains(MASK_CONTENT_RULE);
+    private static boolean isRuleOfType(String ruleText, int typeMask) {
+        if (typeMask == FilterRuleStore.TYPE_ALL) {
+            return true;
+        }
+        return StringUtils.isNotEmpty(ruleText) && (FilterRuleStore.classify(ruleText) & typeMask) != 0;
+    }
+
+    private static int getTypeMask(boolean useCosmetics) {
+        return useCosmetics ? FilterRuleStore.TYPE_ALL : FilterRuleStore.TYPE_NON_COSMETIC;
     }
 
     /**
-     * Initializes file with default filter rules
-     *
-     * @param fileName File name
+     * Plain text rules encoded to a single buffer, so that they are deduplicated together with the stored rules
      */
-    private void initDefaultFilterRules(String fileName) throws IOException {
-        log.info("Initializing filter rules file {}", fileName);
-
-        InputStream inputStream = null;
-        FileOutputStream outputStream = null;
-        try {
-            Resources resources = context.getResources();
+    private static final class TextSource {
 
-            int id = resources.getIdentifier(fileName, "raw", context.getPackageName());
-            if (id > 0) {
-                context.deleteFile(fileName);
-                outputStream = context.getApplicationContext().openFileOutput(fileName, Context.MODE_PRIVATE);
+        private final ByteBuffer buffer;
+        /** Offset of every rule, the last item is the end of the buffer */
+        private final int[] offsets;
+        private final int count;
+        private final RuleDeduplicator deduplicator;
+        private final int source;
 
-                log.info("Found default filter rules. Writing to the file.");
-                inputStream = resources.openRawResource(id);
-                IOUtils.copy(inputStream, outputStream);
+        TextSource(List<String> rules, RuleDeduplicator deduplicator, int source) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            int[] ruleOffsets = new int[rules.size() + 1];
+            int ruleCount = 0;
+            for (String rule : rules) {
+                if (StringUtils.isEmpty(rule)) {
+                    continue;
+                }
+                ruleOffsets[ruleCount++] = outputStream.size();
+                byte[] bytes = rule.getBytes(StandardCharsets.UTF_8);
+                outputStream.write(bytes, 0, bytes.length);
+                outputStream.write('\n');
             }
-            log.info("Default filter has been initialized");
-        } finally {
-            IOUtils.closeQuietly(inputStream);
-            IOUtils.closeQuietly(outputStream);
+            ruleOffsets[ruleCount] = outputStream.size();
+
+            this.buffer = ByteBuffer.wrap(outputStream.toByteArray());
+            this.offsets = ruleOffsets;
+            this.count = ruleCount;
+            this.deduplicator = deduplicator;
+            this.source = source;
+        }
+
+        /**
+         * @return True if the rule is not a duplicate
+         */
+        boolean add(int index) {
+            // Rule does not include the trailing line break
+            return deduplicator.add(source, buffer, offsets[index], offsets[index + 1] - offsets[index] - 1);
+        }
+
+        String getRule(int index) {
+            return new String(buffer.array(), offsets[index], offsets[index + 1] - offsets[index] - 1, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Writes the new filter rules to the binary store
+     */
+    private class StoreRulesWriter implements FilterRulesWriter {
+
+        private final int filterId;
+        private final FilterRuleStore.Writer writer;
+
+        StoreRulesWriter(int filterId) throws IOException {
+            this.filterId = filterId;
+            this.writer = new FilterRuleStore.Writer(getStoreFile(filterId));
+        }
+
+        @Override
+        public void handleLine(String line) throws IOException {
+            writer.addRule(line);
+        }
+
+        @Override
+        public void commit() throws IOException {
+            writer.commit();
+            // Plain text rules written by older versions are not needed anymore
+            context.deleteFile(getTextFileName(filterId));
+        }
+
+        @Override
+        public void close() {
+            writer.close();
         }
     }
 }
@@ -0,0 +1,589 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.db;
+
+import com.adguard.lite.sdk.commons.io.IoUtils;
+import com.adguard.lite.sdk.rules.RuleLexer;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary storage of the rules of a single filter.
+ * <p>
+ * Rules are classified once when they are written, so readers can pick
+ * only the rule types they need without parsing the rules text again.
+ * <p>
+ * Rules text is kept compressed: it is split into blocks of about {@link #BLOCK_SIZE} bytes
+ * that end on a rule boundary, every block is deflated separately.
+ * Readers inflate the blocks one by one to a reused buffer and handle the rules of a block as soon as it is inflated,
+ * so the whole text of a filter is never held in memory.
+ * The CRC32 of the text is computed from the same inflated blocks and verified after the last one,
+ * so a store is inflated once per read. Since the rules are handled before the checksum is verified,
+ * readers drop what they have got from a store that turns out to be corrupted.
+ * Rule offsets are not stored, they are restored from the line breaks of the inflated text.
+ * <pre>
+ * File layout (numbers are big-endian):
+ *
+ * Header ({@link #HEADER_SIZE} bytes)
+ *   int   magic ("AGRS")
+ *   int   format version
+ *   int   rules count
+ *   int   text length (uncompressed)
+ *   long  CRC32 of the text
+ *   int   blocks count
+ *   int   types section length (compressed)
+ *
+ * Text blocks
+ *   deflated UTF-8 rule texts, every rule is terminated with '\n'
+ *
+ * Types section
+ *   deflated byte[rules count], type of every rule (one of TYPE_* constants)
+ *
+ * Block table
+ *   int compressed length and int uncompressed length of every block
+ * </pre>
+ */
+class FilterRuleStore {
+
+    static final int TYPE_NETWORK = FilterRuleDao.RULE_TYPE_NETWORK;
+    static final int TYPE_COSMETIC = FilterRuleDao.RULE_TYPE_COSMETIC;
+    static final int TYPE_SCRIPT = FilterRuleDao.RULE_TYPE_SCRIPT;
+    static final int TYPE_CONTENT = FilterRuleDao.RULE_TYPE_CONTENT;
+    static final int TYPE_COMMENT = FilterRuleDao.RULE_TYPE_COMMENT;
+
+    /** Mask of all the rule types */
+    static final int TYPE_ALL = FilterRuleDao.RULE_TYPE_ALL;
+
+    /** Mask of the rule types that are not CSS, JS or content rules */
+    static final int TYPE_NON_COSMETIC = TYPE_NETWORK | TYPE_COMMENT;
+
+    private static final int MAGIC = 0x41475253;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Classifies the rule
+     *
+     * @param ruleText Rule text
+     * @return Rule type
+     */
+    static int classify(String ruleText) {
+        switch (RuleLexer.lex(ruleText).getType()) {
+            case CONTENT:
+                return TYPE_CONTENT;
+            case SCRIPT:
+                return TYPE_SCRIPT;
+            case ELEMENT_HIDING:
+            case CSS_INJECTION:
+                return TYPE_COSMETIC;
+            case NETWORK:
+                return TYPE_NETWORK;
+            default:
+                return TYPE_COMMENT;
+        }
+    }
+
+    /**
+     * Writes the rules store.
+     * <p>
+     * Rules are collected to a block which is deflated to a temporary file once it is full.
+     * The temporary file replaces the store file on {@link #commit()}.
+     * Rule types are spilled to a separate temporary file while the text is written,
+     * so memory usage does not depend on the number of rules.
+     * If the writer is closed without committing, the temporary files are removed.
+     */
+    static class Writer implements Closeable {
+
+        private final File file;
+        private final File tmpFile;
+        private final File typesFile;
+        private final FileOutputStream fileOutputStream;
+        private final CountingOutputStream outputStream;
+        private final OutputStream typesStream;
+        private final ByteArrayOutputStream blockTable = new ByteArrayOutputStream();
+        private final DataOutputStream blockTableStream = new DataOutputStream(blockTable);
+        private final Deflater deflater = new Deflater();
+        private final byte[] deflateBuffer = new byte[BUFFER_SIZE];
+        private final CRC32 crc = new CRC32();
+
+        private byte[] block = new byte[BLOCK_SIZE];
+        private int blockLength;
+        private int blockCount;
+        private int ruleCount;
+        private int textLength;
+        private boolean committed;
+
+        Writer(File file) throws IOException {
+            this.file = file;
+            this.tmpFile = new File(file.getPath() + ".tmp");
+            this.typesFile = new File(file.getPath() + ".types.tmp");
+
+            FileOutputStream textOutputStream = null;
+            FileOutputStream typesOutputStream;
+            try {
+                textOutputStream = new FileOutputStream(tmpFile);
+                typesOutputStream = new FileOutputStream(typesFile);
+            } catch (IOException ex) {
+                IoUtils.closeQuietly(textOutputStream);
+                deleteTmpFiles();
+                deflater.end();
+                throw ex;
+            }
+
+            this.fileOutputStream = textOutputStream;
+            this.outputStream = new CountingOutputStream(new BufferedOutputStream(fileOutputStream, BUFFER_SIZE));
+            this.typesStream = new BufferedOutputStream(typesOutputStream, BUFFER_SIZE);
+            outputStream.write(new byte[HEADER_SIZE]);
+        }
+
+        /**
+         * Adds rule to the store. Blank rules are skipped.
+         *
+         * @param ruleText Rule text
+         */
+        void addRule(String ruleText) throws IOException {
+            String rule = StringUtils.trim(ruleText);
+            if (StringUtils.isEmpty(rule)) {
+                return;
+            }
+
+            byte[] bytes = rule.getBytes(StandardCharsets.UTF_8);
+            if (blockLength > 0 && blockLength + bytes.length + 1 > BLOCK_SIZE) {
+                flushBlock();
+            }
+            if (block.length < bytes.length + 1) {
+                // Rule longer than a block makes a block of its own
+                block = new byte[bytes.length + 1];
+            }
+
+            System.arraycopy(bytes, 0, block, blockLength, bytes.length);
+            block[blockLength + bytes.length] = '\n';
+            blockLength += bytes.length + 1;
+
+            typesStream.write(classify(rule));
+            ruleCount++;
+
+            crc.update(bytes);
+            crc.update('\n');
+            textLength += bytes.length + 1;
+        }
+
+        /**
+         * Writes the last block, the rule types, the block table and the header and replaces the store file.
+         */
+        void commit() throws IOException {
+            flushBlock();
+            typesStream.close();
+            long typesStart = outputStream.getByteCount();
+            deflateFile(typesFile);
+            int typesLength = (int) (outputStream.getByteCount() - typesStart);
+            blockTableStream.flush();
+            blockTable.writeTo(outputStream);
+            outputStream.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(FORMAT_VERSION);
+            header.putInt(ruleCount);
+            header.putInt(textLength);
+            header.putLong(crc.getValue());
+            header.putInt(blockCount);
+            header.putInt(typesLength);
+            header.flip();
+            fileOutputStream.getChannel().write(header, 0);
+            fileOutputStream.getFD().sync();
+            outputStream.close();
+
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Cannot replace rules store " + file);
+            }
+            committed = true;
+            deleteTmpFiles();
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+            if (!committed) {
+                IoUtils.closeQuietly(outputStream);
+                IoUtils.closeQuietly(typesStream);
+                deleteTmpFiles();
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (blockLength == 0) {
+                return;
+            }
+
+            long blockStart = outputStream.getByteCount();
+            deflater.reset();
+            deflater.setInput(block, 0, blockLength);
+            finishDeflating();
+
+            blockTableStream.writeInt((int) (outputStream.getByteCount() - blockStart));
+            blockTableStream.writeInt(blockLength);
+            blockCount++;
+            blockLength = 0;
+        }
+
+        private void deflateFile(File source) throws IOException {
+            deflater.reset();
+            FileInputStream inputStream = null;
+            try {
+                inputStream = new FileInputStream(source);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    deflater.setInput(buffer, 0, read);
+                    while (!deflater.needsInput()) {
+                        writeDeflated();
+                    }
+                }
+            } finally {
+                IoUtils.closeQuietly(inputStream);
+            }
+            finishDeflating();
+        }
+
+        private void finishDeflating() throws IOException {
+            deflater.finish();
+            while (!deflater.finished()) {
+                writeDeflated();
+            }
+        }
+
+        private void writeDeflated() throws IOException {
+            int length = deflater.deflate(deflateBuffer);
+            outputStream.write(deflateBuffer, 0, length);
+        }
+
+        @SuppressWarnings("ResultOfMethodCallIgnored")
+        private void deleteTmpFiles() {
+            tmpFile.delete();
+            typesFile.delete();
+        }
+    }
+
+    /**
+     * Reads the rules store
+     */
+    static class Reader implements Closeable {
+
+        private final RandomAccessFile file;
+        private final int ruleCount;
+        private final int textLength;
+        private final long checksum;
+        /** File position of every block, the last item is the position of the types section */
+        private final long[] blockPositions;
+        /** End of every block in the uncompressed text */
+        private final int[] blockEnds;
+        private final int typesLength;
+        /** Length of the longest block, rules are inflated to one buffer of this length block by block */
+        private final int maxBlockLength;
+
+        private byte[] compressed;
+
+        /**
+         * Opens the store and validates its header.
+         * The checksum of the text is verified when the rules are read.
+         *
+         * @param file Store file
+         * @throws IOException if the file cannot be read or it is not a valid store
+         */
+        Reader(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+            try {
+                long length = this.file.length();
+                if (length < HEADER_SIZE || this.file.readInt() != MAGIC) {
+                    throw new IOException("Not a rules store: " + file);
+                }
+                int version = this.file.readInt();
+                if (version != FORMAT_VERSION) {
+                    throw new IOException("Unsupported rules store version " + version + ": " + file);
+                }
+                ruleCount = this.file.readInt();
+                textLength = this.file.readInt();
+                checksum = this.file.readLong();
+                if (ruleCount < 0 || textLength < 0) {
+                    throw new IOException("Rules store is corrupted: " + file);
+                }
+
+                int blockCount = this.file.readInt();
+                typesLength = this.file.readInt();
+                long tableStart = length - 8L * blockCount;
+                if (blockCount < 0 || typesLength < 0 || tableStart < HEADER_SIZE) {
+                    throw new IOException("Rules store is corrupted: " + file);
+                }
+
+                blockPositions = new long[blockCount + 1];
+                blockEnds = new int[blockCount];
+                blockPositions[0] = HEADER_SIZE;
+                long blockEnd = 0;
+                int longestBlock = 0;
+                this.file.seek(tableStart);
+                for (int i = 0; i < blockCount; i++) {
+                    int compressedLength = this.file.readInt();
+                    int blockLength = this.file.readInt();
+                    blockEnd += blockLength;
+                    if (compressedLength < 0 || blockLength <= 0 || blockEnd > textLength) {
+                        throw new IOException("Rules store is corrupted: " + file);
+                    }
+                    blockPositions[i + 1] = blockPositions[i] + compressedLength;
+                    blockEnds[i] = (int) blockEnd;
+                    longestBlock = Math.max(longestBlock, blockLength);
+                }
+                maxBlockLength = longestBlock;
+                if (blockEnd != textLength || blockPositions[blockCount] + typesLength != tableStart) {
+                    throw new IOException("Rules store is corrupted: " + file);
+                }
+            } catch (IOException ex) {
+                IoUtils.closeQuietly(this.file);
+                throw ex;
+            }
+        }
+
+        /**
+         * @return Number of rules in the store
+         */
+        int getRuleCount() {
+            return ruleCount;
+        }
+
+        /**
+         * @return CRC32 of the rules text
+         */
+        long getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * Writes the rules of the specified types to the channel skipping the rules that are already written.
+         * <p>
+         * Rules are never decoded to strings. Blocks are inflated one by one to the same buffer,
+         * runs of the rules to write are copied to the channel as soon as their block is inflated.
+         * If the store is corrupted, the rules written so far have to be discarded.
+         *
+         * @param typeMask     Mask of TYPE_* constants
+         * @param writtenRules Rules that are already written. The written rules are added to it.
+         * @param source       Index of this store in the set of the written rules
+         * @param channel      Channel to write rules to
+         * @return Number of rules written
+         * @throws CorruptedStoreException if the store is corrupted
+         */
+        int transferRules(int typeMask, RuleDeduplicator writtenRules, int source, WritableByteChannel channel) throws IOException {
+            byte[] types = inflateTypes();
+            byte[] block = new byte[maxBlockLength];
+            ByteBuffer blockBuffer = ByteBuffer.wrap(block);
+
+            int written = 0;
+            int rule = 0;
+            CRC32 crc = new CRC32();
+            Inflater inflater = new Inflater();
+            try {
+                for (int i = 0; i < blockEnds.length; i++) {
+                    int blockLength = inflateBlock(i, block, inflater);
+                    crc.update(block, 0, blockLength);
+                    int start = 0;
+                    int runStart = 0;
+                    int runEnd = 0;
+                    for (int j = 0; j < blockLength; j++) {
+                        if (block[j] != '\n') {
+                            continue;
+                        }
+                        if (rule >= ruleCount) {
+                            throw new CorruptedStoreException("Rules store index is corrupted");
+                        }
+
+                        int end = j + 1;
+                        // Rule does not include the trailing line break
+                        if ((types[rule++] & typeMask) != 0 && writtenRules.add(source, blockBuffer, start, end - start - 1)) {
+                            written++;
+                            if (start != runEnd) {
+                                write(block, runStart, runEnd, channel);
+                                runStart = start;
+                            }
+                            runEnd = end;
+                        }
+                        start = end;
+                    }
+                    write(block, runStart, runEnd, channel);
+                }
+            } finally {
+                inflater.end();
+            }
+
+            verify(rule, crc);
+            return written;
+        }
+
+        /**
+         * Reads the rules of the specified types skipping the rules that are already read.
+         * Only the unique rules are decoded to strings.
+         *
+         * @param typeMask  Mask of TYPE_* constants
+         * @param readRules Rules that are already read. The read rules are added to it.
+         * @param source    Index of this store in the set of the read rules
+         * @param rules     Collection to add rules to. If the store is corrupted, the rules added so far have to be discarded.
+         * @throws CorruptedStoreException if the store is corrupted
+         */
+        void readUniqueRules(int typeMask, RuleDeduplicator readRules, int source, Collection<String> rules) throws IOException {
+            byte[] types = inflateTypes();
+            byte[] block = new byte[maxBlockLength];
+            ByteBuffer blockBuffer = ByteBuffer.wrap(block);
+
+            int rule = 0;
+            CRC32 crc = new CRC32();
+            Inflater inflater = new Inflater();
+            try {
+                for (int i = 0; i < blockEnds.length; i++) {
+                    int blockLength = inflateBlock(i, block, inflater);
+                    crc.update(block, 0, blockLength);
+                    int start = 0;
+                    for (int j = 0; j < blockLength; j++) {
+                        if (block[j] != '\n') {
+                            continue;
+                        }
+                        if (rule >= ruleCount) {
+                            throw new CorruptedStoreException("Rules store index is corrupted");
+                        }
+
+                        int length = j - start;
+                        if ((types[rule++] & typeMask) != 0 && readRules.add(source, blockBuffer, start, length)) {
+                            rules.add(new String(block, start, length, StandardCharsets.UTF_8));
+                        }
+                        start = j + 1;
+                    }
+                }
+            } finally {
+                inflater.end();
+            }
+
+            verify(rule, crc);
+        }
+
+        /**
+         * Inflates the block to the start of the buffer
+         *
+         * @return Length of the block
+         */
+        private int inflateBlock(int block, byte[] buffer, Inflater inflater) throws IOException {
+            int length = blockEnds[block] - (block == 0 ? 0 : blockEnds[block - 1]);
+            inflate(blockPositions[block], blockPositions[block + 1], buffer, 0, length, inflater);
+            return length;
+        }
+
+        /**
+         * Verifies that all the rules have been read and the text matches its checksum
+         *
+         * @param readCount Number of the rules read
+         * @param crc       CRC32 of the inflated blocks
+         */
+        private void verify(int readCount, CRC32 crc) throws CorruptedStoreException {
+            if (readCount != ruleCount) {
+                throw new CorruptedStoreException("Rules store index is corrupted");
+            }
+            if (crc.getValue() != checksum) {
+                throw new CorruptedStoreException("Rules store checksum mismatch");
+            }
+        }
+
+        private byte[] inflateTypes() throws IOException {
+            byte[] types = new byte[ruleCount];
+            long typesStart = blockPositions[blockEnds.length];
+            Inflater inflater = new Inflater();
+            try {
+                inflate(typesStart, typesStart + typesLength, types, 0, ruleCount, inflater);
+            } finally {
+                inflater.end();
+            }
+            return types;
+        }
+
+        private void inflate(long start, long end, byte[] output, int offset, int length, Inflater inflater) throws IOException {
+            int size = (int) (end - start);
+            if (compressed == null || compressed.length < size) {
+                compressed = new byte[size];
+            }
+            file.seek(start);
+            file.readFully(compressed, 0, size);
+
+            inflater.reset();
+            inflater.setInput(compressed, 0, size);
+            try {
+                int inflated = 0;
+                while (inflated < length) {
+                    int count = inflater.inflate(output, offset + inflated, length - inflated);
+                    if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new CorruptedStoreException("Rules store block is corrupted");
+                    }
+                    inflated += count;
+                }
+            } catch (DataFormatException ex) {
+                throw new CorruptedStoreException("Rules store block is corrupted", ex);
+            }
+        }
+
+        private static void write(byte[] text, int start, int end, WritableByteChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(text, start, end - start);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        @Override
+        public void close() {
+            IoUtils.closeQuietly(file);
+        }
+    }
+
+    /**
+     * Thrown when the rules text of a store turns out to be corrupted while it is read
+     */
+    static class CorruptedStoreException extends IOException {
+
+        CorruptedStoreException(String message) {
+            super(message);
+        }
+
+        CorruptedStoreException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
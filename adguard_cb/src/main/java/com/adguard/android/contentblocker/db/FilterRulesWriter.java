@@ -0,0 +1,29 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.db;
+
+import com.adguard.lite.sdk.commons.io.LineHandler;
+
+/**
+ * Writer of the new filter rules.
+ * <p>
+ * Every line passed to {@link #handleLine(String)} is added as a rule.
+ * Rules are written to a temporary storage and replace the current filter rules on {@link #commit()} only.
+ * Closing the writer without committing discards the written rules.
+ */
+public interface FilterRulesWriter extends LineHandler, FilterRulesUpdate {
+}
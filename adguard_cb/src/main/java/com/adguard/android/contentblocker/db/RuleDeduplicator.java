@@ -0,0 +1,187 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.db;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Set of the unique rules across several filters.
+ * <p>
+ * The bytes of every unique rule are copied to an arena the set owns, so the buffers the rules are read from
+ * can be reused or released as soon as their rules are added. Duplicates are never copied,
+ * so the set takes the size of the unique rules text plus about 20 bytes per unique rule.
+ * The set itself is a primitive open-addressing table of 64-bit rule hashes and arena positions.
+ * Equal hashes are verified by comparing the rule bytes, so a hash collision never drops a rule.
+ * <p>
+ * For every source the number of its rules duplicating the rules of the other sources is counted.
+ */
+class RuleDeduplicator {
+
+    private static final int INITIAL_CAPACITY = 1 << 14;
+    private static final int INITIAL_ARENA_SIZE = 64 * 1024;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private int sourceCount;
+    private int[] crossDuplicates = new int[4];
+
+    /** Bytes of the unique rules one after another */
+    private byte[] arena = new byte[INITIAL_ARENA_SIZE];
+    private int arenaLength;
+
+    /** Rule hashes, 0 marks an empty slot */
+    private long[] hashes;
+    /** Source index in the high 32 bits and rule offset in the arena in the low 32 bits */
+    private long[] positions;
+    private int[] lengths;
+    private int mask;
+    private int size;
+
+    RuleDeduplicator() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Registers the next source of the rules
+     *
+     * @return Source index
+     */
+    int addSource() {
+        if (sourceCount == crossDuplicates.length) {
+            crossDuplicates = Arrays.copyOf(crossDuplicates, crossDuplicates.length * 2);
+        }
+        return sourceCount++;
+    }
+
+    /**
+     * Adds the rule to the set
+     *
+     * @param source Source index
+     * @param buffer Buffer the rule is read from, it is not referenced after the call
+     * @param offset Absolute offset of the rule in the buffer
+     * @param length Length of the rule in bytes
+     * @return True if the rule has not been added before
+     */
+    boolean add(int source, ByteBuffer buffer, int offset, int length) {
+        long hash = hash(buffer, offset, length);
+
+        int slot = (int) hash & mask;
+        while (hashes[slot] != 0) {
+            if (hashes[slot] == hash && lengths[slot] == length && equal((int) positions[slot], buffer, offset, length)) {
+                int existingSource = (int) (positions[slot] >>> 32);
+                if (existingSource != source) {
+                    crossDuplicates[source]++;
+                }
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int arenaOffset = append(buffer, offset, length);
+        hashes[slot] = hash;
+        positions[slot] = ((long) source << 32) | (arenaOffset & 0xffffffffL);
+        lengths[slot] = length;
+        if (++size > hashes.length / 2) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of the unique rules
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param source Source index
+     * @return Number of the rules of the source that duplicate rules of the sources added before it
+     */
+    int getCrossDuplicates(int source) {
+        return crossDuplicates[source];
+    }
+
+    private int append(ByteBuffer buffer, int offset, int length) {
+        if (arenaLength + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaLength + length));
+        }
+        int start = arenaLength;
+        for (int i = 0; i < length; i++) {
+            arena[start + i] = buffer.get(offset + i);
+        }
+        arenaLength += length;
+        return start;
+    }
+
+    private boolean equal(int arenaOffset, ByteBuffer buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) != arena[arenaOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void allocate(int capacity) {
+        hashes = new long[capacity];
+        positions = new long[capacity];
+        lengths = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        long[] oldHashes = hashes;
+        long[] oldPositions = positions;
+        int[] oldLengths = lengths;
+        allocate(oldHashes.length * 2);
+
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldHashes[i] == 0) {
+                continue;
+            }
+            int slot = (int) oldHashes[i] & mask;
+            while (hashes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = oldHashes[i];
+            positions[slot] = oldPositions[i];
+            lengths[slot] = oldLengths[i];
+        }
+    }
+
+    /**
+     * FNV-1a hash of the rule bytes with a final avalanche step, so that the low bits can be used as the slot index.
+     * Zero is reserved for empty slots.
+     */
+    @VisibleForTesting
+    long hash(ByteBuffer buffer, int offset, int length) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= buffer.get(i) & 0xff;
+            h *= FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.db;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.adguard.lite.sdk.commons.io.IoUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SQL script compiled at build time (see sql.gradle) to a list of statements with bound arguments.
+ * Statements sharing the same SQL are compiled once and executed with different arguments.
+ */
+final class SqlScript {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SqlScript.class);
+
+    private static final String ASSETS_DIR = "sql/";
+    private static final String EXTENSION = ".stmt";
+    private static final int MAGIC = 0x53514c31;
+
+    private static final int ARG_NULL = 0;
+    private static final int ARG_LONG = 1;
+    private static final int ARG_DOUBLE = 2;
+    private static final int ARG_STRING = 3;
+    private static final int ARG_TEMPLATE = 4;
+
+    private final String name;
+    private final String hash;
+    private final List<Statement> statements;
+
+    private SqlScript(String name, String hash, List<Statement> statements) {
+        this.name = name;
+        this.hash = hash;
+        this.statements = statements;
+    }
+
+    /**
+     * Loads the compiled script from the assets
+     *
+     * @param context Context
+     * @param name    Script name (source file name without .sql)
+     * @return Script or null if there is no such script
+     * @throws IOException if script cannot be read
+     */
+    static SqlScript load(Context context, String name) throws IOException {
+        InputStream inputStream;
+        try {
+            inputStream = context.getAssets().open(ASSETS_DIR + name + EXTENSION);
+        } catch (FileNotFoundException ex) {
+            return null;
+        }
+
+        try {
+            return read(name, inputStream);
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Reads the compiled script
+     *
+     * @param name        Script name
+     * @param inputStream Compiled script stream
+     * @return Script
+     * @throws IOException if stream cannot be read or has a wrong format
+     */
+    static SqlScript read(String name, InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Wrong format of SQL script " + name);
+        }
+
+        String hash = in.readUTF();
+        int count = in.readInt();
+        List<Statement> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String sql = in.readUTF();
+            int argCount = in.readUnsignedByte();
+            int[] types = new int[argCount];
+            Object[] args = new Object[argCount];
+            for (int j = 0; j < argCount; j++) {
+                types[j] = in.readUnsignedByte();
+                switch (types[j]) {
+                    case ARG_NULL:
+                        break;
+                    case ARG_LONG:
+                        args[j] = in.readLong();
+                        break;
+                    case ARG_DOUBLE:
+                        args[j] = in.readDouble();
+                        break;
+                    case ARG_STRING:
+                        args[j] = in.readUTF();
+                        break;
+                    case ARG_TEMPLATE:
+                        args[j] = in.readUnsignedByte();
+                        break;
+                    default:
+                        throw new IOException("Wrong argument type " + types[j] + " in SQL script " + name);
+                }
+            }
+            statements.add(new Statement(sql, types, args));
+        }
+
+        return new SqlScript(name, hash, statements);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return SHA-1 of the script source
+     */
+    String getHash() {
+        return hash;
+    }
+
+    /**
+     * Executes the script statements.
+     * Script is not wrapped into a transaction, the caller is supposed to do it.
+     *
+     * @param db           Database
+     * @param templateArgs Values of the '{N}' templates in the script source
+     * @return Number of statements executed
+     */
+    int execute(SQLiteDatabase db, String... templateArgs) {
+        Map<String, SQLiteStatement> compiledStatements = new HashMap<>();
+        try {
+            for (Statement statement : statements) {
+                SQLiteStatement compiledStatement = compiledStatements.get(statement.sql);
+                if (compiledStatement == null) {
+                    LOG.debug("Compiling sql: {}", statement.sql);
+                    compiledStatement = db.compileStatement(statement.sql);
+                    compiledStatements.put(statement.sql, compiledStatement);
+                }
+                statement.bind(compiledStatement, templateArgs);
+                compiledStatement.execute();
+            }
+        } finally {
+            for (SQLiteStatement compiledStatement : compiledStatements.values()) {
+                compiledStatement.close();
+            }
+        }
+
+        LOG.debug("{} statements of {} executed using {} compiled statements", statements.size(), name, compiledStatements.size());
+        return statements.size();
+    }
+
+    /**
+     * Statement with its arguments
+     */
+    private static class Statement {
+        private final String sql;
+        private final int[] types;
+        private final Object[] args;
+
+        Statement(String sql, int[] types, Object[] args) {
+            this.sql = sql;
+            this.types = types;
+            this.args = args;
+        }
+
+        void bind(SQLiteStatement statement, String[] templateArgs) {
+            statement.clearBindings();
+            for (int i = 0; i < args.length; i++) {
+                int index = i + 1;
+                switch (types[i]) {
+                    case ARG_LONG:
+                        statement.bindLong(index, (Long) args[i]);
+                        break;
+                    case ARG_DOUBLE:
+                        statement.bindDouble(index, (Double) args[i]);
+                        break;
+                    case ARG_STRING:
+                        statement.bindString(index, (String) args[i]);
+                        break;
+                    case ARG_TEMPLATE:
+                        statement.bindString(index, templateArgs[(Integer) args[i]]);
+                        break;
+                    default:
+                        statement.bindNull(index);
+                        break;
+                }
+            }
+        }
+    }
+}
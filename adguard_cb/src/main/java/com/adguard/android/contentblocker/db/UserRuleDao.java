@@ -0,0 +1,96 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.db;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Data access object for the rules entered by the user (user filter or whitelist).
+ * Every rule is a separate row, so a single rule can be added, toggled or removed
+ * without rewriting the whole list.
+ */
+public interface UserRuleDao {
+
+    /** User filter rules table */
+    String USER_RULES_TABLE = "user_rules";
+
+    /** Whitelisted domains table */
+    String WHITELIST_TABLE = "whitelist_rules";
+
+    /**
+     * Selects all the rules in the order they were added
+     *
+     * @return List of rules
+     */
+    List<String> selectRuleTexts();
+
+    /**
+     * Selects the enabled rules in the order they were added
+     *
+     * @return List of enabled rules
+     */
+    List<String> selectEnabledRuleTexts();
+
+    /**
+     * @return Set with disabled rules
+     */
+    Set<String> selectDisabledRuleTexts();
+
+    /**
+     * Adds the enabled rules to the end of the list
+     *
+     * @param ruleTexts Rules to add
+     */
+    void insertRules(Collection<String> ruleTexts);
+
+    /**
+     * Replaces the rule text keeping its position. The rule becomes enabled.
+     *
+     * @param oldRuleText Rule to replace
+     * @param newRuleText New rule text
+     */
+    void updateRule(String oldRuleText, String newRuleText);
+
+    /**
+     * Removes the rule
+     *
+     * @param ruleText Rule to remove
+     */
+    void deleteRule(String ruleText);
+
+    /**
+     * Enables or disables the rule
+     *
+     * @param ruleText Rule text
+     * @param enabled  true to enable the rule
+     */
+    void updateRuleEnabled(String ruleText, boolean enabled);
+
+    /**
+     * Replaces all the rules. Rules that were disabled before stay disabled.
+     *
+     * @param ruleTexts New rules
+     */
+    void replaceRules(Collection<String> ruleTexts);
+
+    /**
+     * Removes all the rules
+     */
+    void clear();
+}
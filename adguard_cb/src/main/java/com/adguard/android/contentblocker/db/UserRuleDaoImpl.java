@@ -0,0 +1,166 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * User rules dao implementation (using db).
+ * Rules are looked up by the indexed rule_text column, and their order is kept by the row id.
+ */
+public class UserRuleDaoImpl implements UserRuleDao {
+    private static final String RULE_ID = "rule_id";
+    private static final String RULE_TEXT = "rule_text";
+    private static final String RULE_ENABLED = "enabled";
+
+    private final DbHelper dbHelper;
+    private final String tableName;
+
+    /**
+     * Creates an instance of the dao
+     *
+     * @param dbHelper  Db helper
+     * @param tableName {@link #USER_RULES_TABLE} or {@link #WHITELIST_TABLE}
+     */
+    public UserRuleDaoImpl(DbHelper dbHelper, String tableName) {
+        this.dbHelper = dbHelper;
+        this.tableName = tableName;
+    }
+
+    @Override
+    public List<String> selectRuleTexts() {
+        return selectRuleTexts(null);
+    }
+
+    @Override
+    public List<String> selectEnabledRuleTexts() {
+        return selectRuleTexts(RULE_ENABLED + "=1");
+    }
+
+    @Override
+    public Set<String> selectDisabledRuleTexts() {
+        return new HashSet<>(selectRuleTexts(RULE_ENABLED + "=0"));
+    }
+
+    @Override
+    public void insertRules(Collection<String> ruleTexts) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            db.beginTransaction();
+            insertRules(db, tableName, ruleTexts, Collections.<String>emptySet());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void updateRule(String oldRuleText, String newRuleText) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        ContentValues values = new ContentValues();
+        values.put(RULE_TEXT, newRuleText);
+        values.put(RULE_ENABLED, 1);
+        db.update(tableName, values, RULE_TEXT + "=?", new String[]{oldRuleText});
+    }
+
+    @Override
+    public void deleteRule(String ruleText) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.delete(tableName, RULE_TEXT + "=?", new String[]{ruleText});
+    }
+
+    @Override
+    public void updateRuleEnabled(String ruleText, boolean enabled) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        ContentValues values = new ContentValues();
+        values.put(RULE_ENABLED, enabled ? 1 : 0);
+        db.update(tableName, values, RULE_TEXT + "=?", new String[]{ruleText});
+    }
+
+    @Override
+    public void replaceRules(Collection<String> ruleTexts) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            db.beginTransaction();
+            Set<String> disabledRules = new HashSet<>(selectRuleTexts(RULE_ENABLED + "=0"));
+            db.delete(tableName, null, null);
+            insertRules(db, tableName, ruleTexts, disabledRules);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void clear() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.delete(tableName, null, null);
+    }
+
+    /**
+     * Inserts the rules with a single precompiled statement.
+     * Must be called inside a transaction.
+     *
+     * @param db            Database
+     * @param tableName     Rules table
+     * @param ruleTexts     Rules to insert
+     * @param disabledRules Rules to insert as disabled
+     */
+    static void insertRules(SQLiteDatabase db, String tableName, Collection<String> ruleTexts, Set<String> disabledRules) {
+        SQLiteStatement statement = db.compileStatement("INSERT INTO " + tableName + " (" + RULE_TEXT + ", " + RULE_ENABLED + ") VALUES (?, ?)");
+        try {
+            for (String ruleText : ruleTexts) {
+                statement.bindString(1, ruleText);
+                statement.bindLong(2, disabledRules.contains(ruleText) ? 0 : 1);
+                statement.executeInsert();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private List<String> selectRuleTexts(String selection) {
+        List<String> ruleTexts = new ArrayList<>();
+
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            cursor = db.query(tableName, new String[]{RULE_TEXT}, selection, null, null, null, RULE_ID);
+            while (cursor.moveToNext()) {
+                ruleTexts.add(cursor.getString(0));
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        return ruleTexts;
+    }
+}
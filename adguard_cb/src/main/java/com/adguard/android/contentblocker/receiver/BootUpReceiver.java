@@ -43,7 +43,9 @@ public class BootUpReceiver extends BroadcastReceiver {
             return;
         }
 
-        // We initialize service locator to do default actions inside its constructor
-        ServiceLocator.getInstance(context);
+        // Service locator does default actions in background after it is created,
+        // the receiver is kept alive until they are done
+        final PendingResult pendingResult = goAsync();
+        ServiceLocator.getInstance(context).runAfterStartUp(pendingResult::finish);
     }
 }
@@ -0,0 +1,346 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service;
+
+import android.content.Context;
+
+import com.adguard.android.contentblocker.db.FilterRulesUpdate;
+import com.adguard.android.contentblocker.db.FilterRulesWriter;
+import com.adguard.lite.sdk.ServiceApiClient;
+import com.adguard.lite.sdk.commons.diff.RcsPatch;
+import com.adguard.lite.sdk.commons.io.IoUtils;
+import com.adguard.lite.sdk.commons.io.LineHandler;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Differential filter updates.
+ * <p>
+ * Filters supporting differential updates declare the path of the next patch in the "! Diff-Path:" header.
+ * The original text of such filters is kept in the "diff" directory, so that the patches can be applied to it.
+ * Patches are applied one after another until the server responds that there is no next patch yet,
+ * and the checksum of every patched text is verified.
+ */
+class FilterDiffUpdater {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FilterDiffUpdater.class);
+
+    private static final String DIFF_DIR = "diff";
+    private static final String DIFF_PATH_HEADER = "! Diff-Path:";
+    private static final int MAX_HEADER_LINES = 50;
+    private static final int MAX_PATCHES = 24;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final File directory;
+
+    /**
+     * Creates an instance of the updater
+     *
+     * @param context Application context
+     */
+    FilterDiffUpdater(Context context) {
+        directory = new File(context.getFilesDir(), DIFF_DIR);
+    }
+
+    /**
+     * Tries to update the filter rules by applying patches to the stored filter text.
+     *
+     * @param filterId    Filter id
+     * @param filterUrl   Filter download url ({0} is replaced with the filter id)
+     * @param rulesWriter Writer of the new filter rules. It is closed if there is nothing to patch or patching fails.
+     * @return Uncommitted update to the patched rules
+     * or null if the filter does not support differential updates or there are no patches for it
+     * @throws IOException if patches cannot be downloaded or applied
+     */
+    FilterRulesUpdate tryUpdate(int filterId, String filterUrl, FilterRulesWriter rulesWriter) throws IOException {
+        File textFile = getTextFile(filterId);
+        if (!textFile.exists()) {
+            rulesWriter.close();
+            return null;
+        }
+
+        String baseUrl = filterUrl.replace("{0}", Integer.toString(filterId));
+        File current = textFile;
+        int appliedPatches = 0;
+        try {
+            while (appliedPatches < MAX_PATCHES) {
+                String diffPath = readDiffPath(current);
+                if (diffPath == null) {
+                    break;
+                }
+
+                String resourceName = StringUtils.substringAfter(diffPath, "#");
+                String patchUrl = new URL(new URL(baseUrl), StringUtils.substringBefore(diffPath, "#")).toString();
+                List<String> patchLines = ServiceApiClient.downloadFilterPatch(patchUrl);
+                if (patchLines == null) {
+                    break;
+                }
+
+                RcsPatch patch = RcsPatch.parse(patchLines, StringUtils.isEmpty(resourceName) ? null : resourceName);
+                if (patch.getChecksum() == null) {
+                    throw new IOException("Patch " + patchUrl + " has no checksum");
+                }
+
+                File next = new File(directory, getTextFileName(filterId) + "." + appliedPatches + ".tmp");
+                applyPatch(patch, current, next);
+                deleteTmpFile(current, textFile);
+                current = next;
+                appliedPatches++;
+            }
+
+            if (appliedPatches == 0) {
+                rulesWriter.close();
+                return null;
+            }
+
+            LOG.info("Applied {} patches to filter {}", appliedPatches, filterId);
+            copyLines(current, rulesWriter);
+            return new PatchedRulesUpdate(rulesWriter, current, textFile);
+        } catch (IOException ex) {
+            rulesWriter.close();
+            deleteTmpFile(current, textFile);
+            throw ex;
+        }
+    }
+
+    /**
+     * Wraps the writer of the fully downloaded filter rules,
+     * so that the filter text is kept for the following differential updates.
+     *
+     * @param filterId    Filter id
+     * @param rulesWriter Writer of the new filter rules. It is closed if the text file cannot be created.
+     * @return Writer that must be passed the filter lines as is
+     * @throws IOException if the text file cannot be created
+     */
+    FilterRulesWriter createTextWriter(int filterId, FilterRulesWriter rulesWriter) throws IOException {
+        try {
+            return new TextRulesWriter(rulesWriter, getTextFile(filterId));
+        } catch (IOException ex) {
+            rulesWriter.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Removes all stored filter texts
+     */
+    void clear() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    private File getTextFile(int filterId) {
+        return new File(directory, getTextFileName(filterId));
+    }
+
+    private static String getTextFileName(int filterId) {
+        return "filter_" + filterId + ".txt";
+    }
+
+    private static String readDiffPath(File file) throws IOException {
+        BufferedReader reader = null;
+        try {
+            reader = openReader(file);
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null && lineNumber++ < MAX_HEADER_LINES) {
+                line = line.trim();
+                if (line.startsWith(DIFF_PATH_HEADER)) {
+                    return StringUtils.trimToNull(line.substring(DIFF_PATH_HEADER.length()));
+                }
+                if (!line.isEmpty() && !line.startsWith("!")) {
+                    // Header is over
+                    break;
+                }
+            }
+            return null;
+        } finally {
+            IoUtils.closeQuietly(reader);
+        }
+    }
+
+    private static void applyPatch(RcsPatch patch, File source, File target) throws IOException {
+        BufferedReader reader = null;
+        final Writer[] writer = {null};
+        try {
+            reader = openReader(source);
+            writer[0] = openWriter(target);
+            patch.apply(reader, new LineHandler() {
+                @Override
+                public void handleLine(String line) throws IOException {
+                    writer[0].write(line);
+                    writer[0].write('\n');
+                }
+            });
+            writer[0].flush();
+        } catch (IOException ex) {
+            IoUtils.closeQuietly(writer[0]);
+            FileUtils.deleteQuietly(target);
+            throw ex;
+        } finally {
+            IoUtils.closeQuietly(reader);
+            IoUtils.closeQuietly(writer[0]);
+        }
+    }
+
+    private static void copyLines(File source, LineHandler handler) throws IOException {
+        BufferedReader reader = null;
+        try {
+            reader = openReader(source);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                handler.handleLine(line);
+            }
+        } finally {
+            IoUtils.closeQuietly(reader);
+        }
+    }
+
+    private static BufferedReader openReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private static Writer openWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private static void deleteTmpFile(File file, File textFile) {
+        if (!file.equals(textFile)) {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    private static void replaceFile(File source, File target) throws IOException {
+        if (!source.renameTo(target)) {
+            FileUtils.deleteQuietly(source);
+            throw new IOException("Cannot replace " + target);
+        }
+    }
+
+    /**
+     * Update to the patched rules, which are already written to the rules writer.
+     * Replaces the stored filter text with the patched one on commit.
+     */
+    private static class PatchedRulesUpdate implements FilterRulesUpdate {
+
+        private final FilterRulesWriter rulesWriter;
+        private final File patchedFile;
+        private final File textFile;
+        private boolean committed;
+
+        PatchedRulesUpdate(FilterRulesWriter rulesWriter, File patchedFile, File textFile) {
+            this.rulesWriter = rulesWriter;
+            this.patchedFile = patchedFile;
+            this.textFile = textFile;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            rulesWriter.commit();
+            replaceFile(patchedFile, textFile);
+            committed = true;
+        }
+
+        @Override
+        public void close() {
+            rulesWriter.close();
+            if (!committed) {
+                FileUtils.deleteQuietly(patchedFile);
+            }
+        }
+    }
+
+    /**
+     * Writer of the fully downloaded filter.
+     * Passes the lines to the rules writer and keeps the filter text if the filter supports differential updates.
+     */
+    private class TextRulesWriter implements FilterRulesWriter {
+
+        private final FilterRulesWriter rulesWriter;
+        private final File textFile;
+        private final File tmpFile;
+        private final Writer writer;
+        private boolean inHeader = true;
+        private boolean diffSupported;
+        private int lineNumber;
+        private boolean committed;
+
+        TextRulesWriter(FilterRulesWriter rulesWriter, File textFile) throws IOException {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Cannot create directory " + directory);
+            }
+            this.rulesWriter = rulesWriter;
+            this.textFile = textFile;
+            this.tmpFile = new File(directory, textFile.getName() + ".tmp");
+            this.writer = openWriter(tmpFile);
+        }
+
+        @Override
+        public void handleLine(String line) throws IOException {
+            rulesWriter.handleLine(line);
+            writer.write(line);
+            writer.write('\n');
+
+            if (inHeader) {
+                String trimmed = line.trim();
+                if (trimmed.startsWith(DIFF_PATH_HEADER)) {
+                    diffSupported = true;
+                } else if (++lineNumber > MAX_HEADER_LINES || (!trimmed.isEmpty() && !trimmed.startsWith("!"))) {
+                    inHeader = false;
+                }
+            }
+        }
+
+        @Override
+        public void commit() throws IOException {
+            writer.close();
+            rulesWriter.commit();
+            if (diffSupported) {
+                replaceFile(tmpFile, textFile);
+            } else {
+                // There is no point in keeping the text of a filter without patches
+                FileUtils.deleteQuietly(tmpFile);
+                FileUtils.deleteQuietly(textFile);
+            }
+            committed = true;
+        }
+
+        @Override
+        public void close() {
+            IoUtils.closeQuietly(writer);
+            rulesWriter.close();
+            if (!committed) {
+                FileUtils.deleteQuietly(tmpFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service;
+
+import com.adguard.android.contentblocker.commons.concurrent.ExecutorsPool;
+import com.adguard.android.contentblocker.db.FilterRuleDao;
+import com.adguard.android.contentblocker.db.FilterRulesUpdate;
+import com.adguard.android.contentblocker.db.FilterRulesWriter;
+import com.adguard.lite.sdk.ServiceApiClient;
+import com.adguard.lite.sdk.commons.io.IoUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads rules of several filters in parallel.
+ * <p>
+ * Downloads run on {@link ExecutorsPool#getDownloadExecutorService()}, the number of simultaneous
+ * requests to a single host is additionally limited by {@link #MAX_REQUESTS_PER_HOST}.
+ * Downloads over the limit wait in the queue of their host and are submitted when a running one finishes,
+ * so they never hold a thread of the pool while waiting.
+ * Downloaded rules are staged and committed together only after every download
+ * has either finished or timed out, so a failed download never leaves its filter half-updated.
+ */
+class FilterRulesDownloader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FilterRulesDownloader.class);
+
+    private static final int MAX_REQUESTS_PER_HOST = 2;
+    private static final long DOWNLOAD_TIMEOUT = 3 * 60 * 1000; // 3 minutes
+
+    private static final ConcurrentMap<String, HostQueue> HOST_QUEUES = new ConcurrentHashMap<>();
+
+    private final FilterRuleDao filterRuleDao;
+    private final FilterDiffUpdater diffUpdater;
+    private final String filterUrl;
+
+    /**
+     * Creates an instance of the downloader
+     *
+     * @param filterRuleDao Filter rules dao
+     * @param diffUpdater   Differential updater, it is tried before downloading the whole filter
+     * @param filterUrl     Filter download url ({0} is replaced with the filter id)
+     */
+    FilterRulesDownloader(FilterRuleDao filterRuleDao, FilterDiffUpdater diffUpdater, String filterUrl) {
+        this.filterRuleDao = filterRuleDao;
+        this.diffUpdater = diffUpdater;
+        this.filterUrl = filterUrl;
+    }
+
+    /**
+     * Downloads and commits rules of the specified filters
+     *
+     * @param filterIds Filter ids
+     * @return Map of failed filter ids to the failure cause. Empty if all filters have been updated.
+     */
+    Map<Integer, Exception> download(Collection<Integer> filterIds) {
+        HostQueue hostQueue = getHostQueue(filterUrl);
+        List<DownloadTask> tasks = new ArrayList<>(filterIds.size());
+        List<FutureTask<Void>> futures = new ArrayList<>(filterIds.size());
+        for (int filterId : filterIds) {
+            DownloadTask task = new DownloadTask(filterId);
+            FutureTask<Void> future = new FutureTask<>(task);
+            tasks.add(task);
+            futures.add(future);
+            hostQueue.submit(future);
+        }
+
+        Map<Integer, Exception> failures = new HashMap<>();
+        long deadline = System.currentTimeMillis() + DOWNLOAD_TIMEOUT;
+        for (int i = 0; i < tasks.size(); i++) {
+            DownloadTask task = tasks.get(i);
+            FutureTask<Void> future = futures.get(i);
+            try {
+                future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                failures.put(task.filterId, cause instanceof Exception ? (Exception) cause : ex);
+            } catch (TimeoutException ex) {
+                if (task.cancel(future)) {
+                    failures.put(task.filterId, ex);
+                }
+            } catch (InterruptedException ex) {
+                if (task.cancel(future)) {
+                    failures.put(task.filterId, ex);
+                }
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // All downloads are finished, committing the downloaded rules at once.
+        // Updates of the failed downloads have been closed by their tasks.
+        for (DownloadTask task : tasks) {
+            if (failures.containsKey(task.filterId)) {
+                continue;
+            }
+
+            try {
+                task.update.commit();
+            } catch (IOException ex) {
+                failures.put(task.filterId, ex);
+            } finally {
+                IoUtils.closeQuietly(task.update);
+            }
+        }
+
+        for (Map.Entry<Integer, Exception> failure : failures.entrySet()) {
+            LOG.warn("Cannot update rules of filter {}: {}", failure.getKey(), failure.getValue().toString());
+        }
+        LOG.info("Downloaded rules of {} filters, {} failed", tasks.size() - failures.size(), failures.size());
+
+        return failures;
+    }
+
+    private static HostQueue getHostQueue(String url) {
+        String host;
+        try {
+            host = new URL(url).getHost();
+        } catch (MalformedURLException ex) {
+            host = url;
+        }
+
+        HostQueue queue = HOST_QUEUES.get(host);
+        if (queue == null) {
+            HostQueue newQueue = new HostQueue();
+            queue = HOST_QUEUES.putIfAbsent(host, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Queue of the downloads from a single host.
+     * At most {@link #MAX_REQUESTS_PER_HOST} of them are submitted to the download executor at a time.
+     */
+    private static class HostQueue {
+
+        private final Queue<Runnable> pending = new ArrayDeque<>();
+        private int running;
+
+        /**
+         * Submits the download to the executor or queues it if the host limit is reached
+         *
+         * @param download Download to run
+         */
+        void submit(Runnable download) {
+            synchronized (this) {
+                if (running >= MAX_REQUESTS_PER_HOST) {
+                    pending.add(download);
+                    return;
+                }
+                running++;
+            }
+            execute(download);
+        }
+
+        private void execute(final Runnable download) {
+            ExecutorsPool.getDownloadExecutorService().execute(() -> {
+                try {
+                    download.run();
+                } finally {
+                    onFinished();
+                }
+            });
+        }
+
+        private void onFinished() {
+            Runnable next;
+            synchronized (this) {
+                next = pending.poll();
+                if (next == null) {
+                    running--;
+                    return;
+                }
+            }
+            execute(next);
+        }
+    }
+
+    /**
+     * Downloads rules of a single filter into an uncommitted update.
+     * <p>
+     * The task owns the update until the download succeeds: if the download fails or is canceled,
+     * the update is closed by the task itself, as it may still be writing to it when the task is canceled.
+     * Otherwise the update is handed over to {@link #download(Collection)}, which commits it.
+     */
+    private class DownloadTask implements Callable<Void> {
+
+        private static final int PENDING = 0;
+        private static final int RUNNING = 1;
+        private static final int SUCCEEDED = 2;
+        private static final int CANCELED = 3;
+
+        private final int filterId;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private FilterRulesUpdate update;
+
+        DownloadTask(int filterId) {
+            this.filterId = filterId;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            if (!state.compareAndSet(PENDING, RUNNING)) {
+                return null;
+            }
+
+            FilterRulesUpdate rulesUpdate = null;
+            boolean succeeded = false;
+            try {
+                LOG.info("Updating rules for filter:" + filterId);
+                try {
+                    rulesUpdate = diffUpdater.tryUpdate(filterId, filterUrl, filterRuleDao.createFilterRulesWriter(filterId));
+                } catch (IOException ex) {
+                    LOG.warn("Cannot apply patches to filter {}, downloading it entirely: {}", filterId, ex.toString());
+                }
+
+                if (rulesUpdate == null) {
+                    FilterRulesWriter writer = diffUpdater.createTextWriter(filterId, filterRuleDao.createFilterRulesWriter(filterId));
+                    rulesUpdate = writer;
+                    ServiceApiClient.downloadFilterText(filterId, filterUrl, writer);
+                }
+                update = rulesUpdate;
+                succeeded = state.compareAndSet(RUNNING, SUCCEEDED);
+                return null;
+            } finally {
+                if (!succeeded) {
+                    IoUtils.closeQuietly(rulesUpdate);
+                }
+                finished.countDown();
+            }
+        }
+
+        /**
+         * Cancels the task after its timeout and waits until it stops using the update
+         *
+         * @param future Future of this task
+         * @return False if the task has succeeded meanwhile, so its update can be committed
+         */
+        boolean cancel(FutureTask<Void> future) {
+            if (state.compareAndSet(PENDING, CANCELED)) {
+                future.cancel(false);
+                return true;
+            }
+            if (!state.compareAndSet(RUNNING, CANCELED)) {
+                return state.get() != SUCCEEDED;
+            }
+
+            future.cancel(true);
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    finished.await();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }
+    }
+}
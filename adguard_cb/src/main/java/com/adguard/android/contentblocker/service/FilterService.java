@@ -20,10 +20,14 @@ import android.app.Activity;
 import android.app.ProgressDialog;
 import android.content.Context;
 
+import com.adguard.android.contentblocker.db.FilterListDao;
 import com.adguard.lite.sdk.model.FilterList;
+import com.adguard.lite.sdk.rules.CosmeticRule;
+import com.adguard.lite.sdk.rules.NetworkRule;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 /**
  * Service that manages ad filters
@@ -51,10 +55,24 @@ public interface FilterService {
     void checkFiltersUpdates(Activity activity);
 
     /**
-     * @return List of filters
+     * @return Unmodifiable list of filters. Filters are shared and must not be modified.
      */
     List<FilterList> getFilters();
 
+    /**
+     * Registers the listener notified when filters are enabled, updated or localized
+     *
+     * @param listener Listener
+     */
+    void addOnFilterListsChangedListener(FilterListDao.OnFilterListsChangedListener listener);
+
+    /**
+     * Unregisters the listener
+     *
+     * @param listener Listener
+     */
+    void removeOnFilterListsChangedListener(FilterListDao.OnFilterListsChangedListener listener);
+
     /**
      * @return Filter list count
      */
@@ -118,10 +136,46 @@ public interface FilterService {
     List<Integer> getEnabledFilterIds();
 
     /**
-     * Applies new settings and filters
+     * Applies new settings and filters.
+     * Waits for the rebuild that includes the current settings.
      */
     void applyNewSettings();
 
+    /**
+     * Requests the rebuild of the filters with the current settings.
+     * Requests made in a row are coalesced into one rebuild.
+     *
+     * @return Future of the number of the compiled rules
+     */
+    Future<Integer> requestApplyNewSettings();
+
+    /**
+     * Requests the rebuild of the filters if they have not been compiled by this version of the app yet,
+     * e.g. after the upgrade from a version that wrote the filters in place
+     */
+    void checkFiltersCompiled();
+
+    /**
+     * Finds the rule of the compiled filters applied to the request.
+     * The rules are loaded on the first call after every compile, so it must not be called on the UI thread.
+     *
+     * @param url         Request URL
+     * @param documentUrl URL of the page the request is made from, null if the request is the page itself
+     * @return Applied rule or null if no rule matches the request
+     */
+    NetworkRule findMatchingRule(String url, String documentUrl);
+
+    /**
+     * Gets the cosmetic rules of the compiled filters applied on the site.
+     * The index is loaded on the first call after every compile, so it must not be called on the UI thread.
+     *
+     * @param domain         Site domain
+     * @param includeGeneric True to include the rules applied on every site
+     * @return Applied rules and exceptions in the order of the compiled filters,
+     * empty if the filters have not been compiled yet
+     */
+    List<CosmeticRule> getCosmeticRules(String domain, boolean includeGeneric);
+
     /**
      * @return User filter rules
      */
@@ -139,6 +193,21 @@ public interface FilterService {
      */
     void addUserRuleItem(String ruleText);
 
+    /**
+     * Replaces the user filter rule keeping its position
+     *
+     * @param oldRuleText Rule to replace
+     * @param newRuleText New rule text
+     */
+    void replaceUserRuleItem(String oldRuleText, String newRuleText);
+
+    /**
+     * Removes rule from the user filter
+     *
+     * @param ruleText Rule to remove
+     */
+    void removeUserRuleItem(String ruleText);
+
     /**
      * Sets user rules
      *
@@ -180,6 +249,21 @@ public interface FilterService {
      */
     void addWhitelistItem(String item);
 
+    /**
+     * Replaces the whitelist item keeping its position
+     *
+     * @param oldItem Item to replace
+     * @param newItem New item
+     */
+    void replaceWhitelistItem(String oldItem, String newItem);
+
+    /**
+     * Removes item from whitelist
+     *
+     * @param item Item to remove
+     */
+    void removeWhitelistItem(String item);
+
     /**
      * @param whitelist Whitelist value to save
      */
@@ -22,27 +22,42 @@ import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.CancellationSignal;
 
 import com.adguard.android.contentblocker.R;
 import com.adguard.android.contentblocker.commons.AppLink;
+import com.adguard.lite.sdk.FiltersVariant;
 import com.adguard.lite.sdk.ServiceApiClient;
 import com.adguard.lite.sdk.commons.BrowserUtils;
 import com.adguard.android.contentblocker.commons.StringHelperUtils;
 import com.adguard.android.contentblocker.commons.TextStatistics;
 import com.adguard.android.contentblocker.commons.concurrent.DispatcherThreadPool;
+import com.adguard.android.contentblocker.commons.concurrent.ExecutorsPool;
 import com.adguard.android.contentblocker.commons.network.NetworkUtils;
 import com.adguard.android.contentblocker.db.DbHelper;
 import com.adguard.android.contentblocker.db.FilterListDao;
 import com.adguard.android.contentblocker.db.FilterListDaoImpl;
 import com.adguard.android.contentblocker.db.FilterRuleDao;
 import com.adguard.android.contentblocker.db.FilterRuleDaoImpl;
+import com.adguard.android.contentblocker.db.UserRuleDao;
+import com.adguard.android.contentblocker.db.UserRuleDaoImpl;
+import com.adguard.android.contentblocker.service.compiler.CompileScheduler;
+import com.adguard.android.contentblocker.service.compiler.FilterCompiler;
 import com.adguard.android.contentblocker.ui.utils.ProgressDialogUtils;
+import com.adguard.lite.sdk.commons.io.GenerationalFile;
 import com.adguard.lite.sdk.commons.io.IoUtils;
+import com.adguard.lite.sdk.commons.web.ConditionalResponse;
+import com.adguard.lite.sdk.commons.web.HttpValidatorCache;
 import com.adguard.lite.sdk.model.FilterList;
 import com.adguard.lite.sdk.model.FiltersI18nJsonDto;
+import com.adguard.lite.sdk.rules.CosmeticIndex;
+import com.adguard.lite.sdk.rules.CosmeticRule;
+import com.adguard.lite.sdk.rules.NetworkRule;
+import com.adguard.lite.sdk.rules.NetworkRuleMatcher;
+import com.adguard.lite.sdk.rules.RuleInfo;
+import com.adguard.lite.sdk.rules.RuleLexer;
 
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.lang3.StringUtils;
@@ -53,12 +68,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import static org.apache.commons.io.ByteOrderMark.UTF_16BE;
 import static org.apache.commons.io.ByteOrderMark.UTF_16LE;
@@ -72,24 +89,34 @@ import static org.apache.commons.io.ByteOrderMark.UTF_8;
 public class FilterServiceImpl implements FilterService {
     private static final Logger LOG = LoggerFactory.getLogger(FilterServiceImpl.class);
 
-    private static final int MIN_RULE_LENGTH = 4;
-    private static final String ASCII_SYMBOL = "\\p{ASCII}+";
-    private static final String COMMENT = "!";
-    private static final String ADBLOCK_META_START = "[Adblock";
-    private static final String MASK_OBSOLETE_SCRIPT_INJECTION = "###adg_start_script_inject";
-    private static final String MASK_OBSOLETE_STYLE_INJECTION = "###adg_start_style_inject";
-
     private static final int UPDATE_INVALIDATE_PERIOD = 24 * 60 * 60 * 1000; // 24 hours
 
     private static final String FILTERS_UPDATE_QUEUE = "filters-update-queue";
 
+    /** Version lower than any server version, so that a filter with this version is always outdated */
+    private static final String LOST_FILTER_VERSION = "0.0.0.0";
+
     private final Context context;
     private final FilterListDao filterListDao;
     private final FilterRuleDao filterRuleDao;
+    private final UserRuleDao userRuleDao;
+    private final UserRuleDao whitelistDao;
     private final PreferencesService preferencesService;
     private final NotificationService notificationService;
+    private final FilterCompiler filterCompiler;
+    private final CompileScheduler compileScheduler;
+    private final FilterDiffUpdater diffUpdater;
+    private final GenerationalFile filtersFile;
+
+    private volatile int cachedFilterRuleCount = 0;
+
+    private final Object urlMatcherLock = new Object();
+    private NetworkRuleMatcher urlMatcher;
+    private File urlMatcherSource;
 
-    private int cachedFilterRuleCount = 0;
+    private final Object cosmeticIndexLock = new Object();
+    private CosmeticIndex cosmeticIndex;
+    private long cosmeticIndexModified;
 
     /**
      * Creates an instance of AdguardService
@@ -101,9 +128,17 @@ public class FilterServiceImpl implements FilterService {
         this.context = context;
         filterListDao = new FilterListDaoImpl(context, dbHelper);
         filterRuleDao = new FilterRuleDaoImpl(context);
+        userRuleDao = new UserRuleDaoImpl(dbHelper, UserRuleDao.USER_RULES_TABLE);
+        whitelistDao = new UserRuleDaoImpl(dbHelper, UserRuleDao.WHITELIST_TABLE);
 
         this.preferencesService = preferencesService;
         this.notificationService = notificationService;
+        filterCompiler = new FilterCompiler(context, filterRuleDao, userRuleDao, whitelistDao);
+        compileScheduler = new CompileScheduler(this::compileFilters, ExecutorsPool.getCompileExecutorService());
+        diffUpdater = new FilterDiffUpdater(context);
+        filtersFile = FiltersVariant.DEFAULT.createFile(context);
+        ServiceApiClient.setValidatorCache(new HttpValidatorCache(context));
+        filterRuleDao.addOnFilterRulesLostListener(this::onFilterRulesLost);
     }
 
     @Override
@@ -121,6 +156,16 @@ public class FilterServiceImpl implements FilterService {
         return filterListDao.selectFilterLists();
     }
 
+    @Override
+    public void addOnFilterListsChangedListener(FilterListDao.OnFilterListsChangedListener listener) {
+        filterListDao.addOnFilterListsChangedListener(listener);
+    }
+
+    @Override
+    public void removeOnFilterListsChangedListener(FilterListDao.OnFilterListsChangedListener listener) {
+        filterListDao.removeOnFilterListsChangedListener(listener);
+    }
+
     @Override
     public int getFilterListCount() {
         return filterListDao.getFilterListCount();
@@ -171,7 +216,6 @@ public class FilterServiceImpl implements FilterService {
 
     @Override
     public void updateFilterEnabled(FilterList filter, boolean enabled) {
-        filter.setEnabled(enabled);
         filterListDao.updateFilterEnabled(filter, enabled);
     }
 
@@ -215,143 +259,185 @@ public class FilterServiceImpl implements FilterService {
 
     @Override
     public String getUserRules() {
-        return preferencesService.getUserRules();
+        return StringUtils.join(userRuleDao.selectRuleTexts(), "\n");
     }
 
     @Override
     public List<String> getUserRulesItems() {
-        return StringHelperUtils.splitAndTrim(getUserRules(), "\n");
+        return userRuleDao.selectRuleTexts();
     }
 
     @Override
     public void addUserRuleItem(String ruleText) {
-        String userRules = getUserRules();
-        if (userRules.isEmpty()) {
-            userRules = ruleText;
-        } else {
-            userRules += "\n" + ruleText;
-        }
+        userRuleDao.insertRules(StringHelperUtils.splitAndTrim(ruleText, "\n"));
+    }
+
+    @Override
+    public void replaceUserRuleItem(String oldRuleText, String newRuleText) {
+        userRuleDao.updateRule(oldRuleText, StringUtils.trim(newRuleText));
+    }
 
-        setUserRules(userRules);
+    @Override
+    public void removeUserRuleItem(String ruleText) {
+        userRuleDao.deleteRule(ruleText);
     }
 
     @Override
     public void setUserRules(String userRules) {
-        preferencesService.setUserRuleItems(userRules);
+        userRuleDao.replaceRules(StringHelperUtils.splitAndTrim(userRules, "\n"));
     }
 
     @Override
     public void clearUserRules() {
-        setUserRules(StringUtils.EMPTY);
-        preferencesService.setDisabledUserRules(new HashSet<>());
+        userRuleDao.clear();
     }
 
     @Override
     public Set<String> getDisabledUserRules() {
-        return preferencesService.getDisabledUserRules();
+        return userRuleDao.selectDisabledRuleTexts();
     }
 
     @Override
     public void enableUserRule(String ruleText, boolean enabled) {
-        Set<String> disabledRules = preferencesService.getDisabledUserRules();
-        if (!enabled) {
-            if (disabledRules.add(ruleText)) {
-                preferencesService.setDisabledUserRules(disabledRules);
-            }
-        } else {
-            if (disabledRules.remove(ruleText)) {
-                preferencesService.setDisabledUserRules(disabledRules);
-            }
-        }
+        userRuleDao.updateRuleEnabled(ruleText, enabled);
     }
 
     @Override
     public String getWhiteList() {
-        return preferencesService.getWhitelist();
+        return StringUtils.join(whitelistDao.selectRuleTexts(), "\n");
     }
 
     @Override
     public List<String> getWhiteListItems() {
-        return StringHelperUtils.splitAndTrim(getWhiteList(), "\n");
+        return whitelistDao.selectRuleTexts();
     }
 
     @Override
     public void addWhitelistItem(String item) {
-        String whiteList = getWhiteList();
-        if (StringUtils.isBlank(whiteList)) {
-            whiteList = item;
-        } else {
-            whiteList += "\n" + item;
-        }
-        setWhiteList(whiteList);
+        whitelistDao.insertRules(StringHelperUtils.splitAndTrim(item, "\n"));
+    }
+
+    @Override
+    public void replaceWhitelistItem(String oldItem, String newItem) {
+        whitelistDao.updateRule(oldItem, StringUtils.trim(newItem));
+    }
+
+    @Override
+    public void removeWhitelistItem(String item) {
+        whitelistDao.deleteRule(item);
     }
 
     @Override
     public void setWhiteList(String whitelist) {
-        preferencesService.setWhitelist(whitelist);
+        whitelistDao.replaceRules(StringHelperUtils.splitAndTrim(whitelist, "\n"));
     }
 
     @Override
     public void clearWhiteList() {
-        setWhiteList(StringUtils.EMPTY);
-        preferencesService.setDisabledWhitelistRules(new HashSet<>());
+        whitelistDao.clear();
     }
 
     @Override
     public Set<String> getDisabledWhitelistRules() {
-        return preferencesService.getDisabledWhitelistRules();
+        return whitelistDao.selectDisabledRuleTexts();
     }
 
     @Override
     public void enableWhitelistRule(String ruleText, boolean enabled) {
-        Set<String> disabledRules = preferencesService.getDisabledWhitelistRules();
-        if (!enabled) {
-            if (disabledRules.add(ruleText)) {
-                preferencesService.setDisabledWhitelistRules(disabledRules);
-            }
-        } else {
-            if (disabledRules.remove(ruleText)) {
-                preferencesService.setDisabledWhitelistRules(disabledRules);
-            }
-        }
+        whitelistDao.updateRuleEnabled(ruleText, enabled);
     }
 
     @Override
     public void applyNewSettings() {
-        List<String> rules = getAllEnabledRules();
+        try {
+            requestApplyNewSettings().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.warn("Unable to save filters to file!!!", e.getCause());
+        }
+    }
 
-        List<String> userRules = StringHelperUtils.splitAndTrim(preferencesService.getUserRules(), "\n");
-        Set<String> disabledUserRules = preferencesService.getDisabledUserRules();
-        for (String userRule : userRules) {
-            if (validateRuleText(userRule) && !disabledUserRules.contains(userRule)) {
-                rules.add(userRule);
-            }
+    @Override
+    public Future<Integer> requestApplyNewSettings() {
+        return compileScheduler.request();
+    }
+
+    @Override
+    public void checkFiltersCompiled() {
+        if (!filterCompiler.isCompiled()) {
+            LOG.info("Filters have not been compiled by this version yet, requesting the rebuild");
+            requestApplyNewSettings();
         }
+    }
 
-        List<String> whitelistRules = StringHelperUtils.splitAndTrim(preferencesService.getWhitelist(), "\n");
-        Set<String> disabledWhitelistRules = preferencesService.getDisabledWhitelistRules();
-        for (String whitelistRule : whitelistRules) {
-            if (!disabledWhitelistRules.contains(whitelistRule)) {
-                rules.add(createWhiteListRule(whitelistRule));
-
-                /**
-                 * Add these rules, because the Ya Browser does not support the $document modifier
-                 */
-                // TODO Should remove this after the Ya Browser browser add support $document modifier
-                rules.add(String.format("@@http*$domain=%s", whitelistRule));
-                rules.add(String.format("@@||%s^$elemhide", whitelistRule));
+    private int compileFilters(CancellationSignal signal) throws IOException {
+        int ruleCount = filterCompiler.compile(getEnabledFilterIds(), signal);
+        cachedFilterRuleCount = ruleCount;
+        LOG.info("Saved {} filters", ruleCount);
+        preferencesService.setFilterRuleCount(ruleCount);
+        enableContentBlocker(context);
+        return ruleCount;
+    }
+
+    @Override
+    public NetworkRule findMatchingRule(String url, String documentUrl) {
+        NetworkRuleMatcher matcher = getUrlMatcher();
+        return matcher == null ? null : matcher.match(url, documentUrl);
+    }
+
+    /**
+     * Gets the matcher of the published default filters.
+     * Generations are never rewritten, so the matcher is rebuilt only when a new one is published.
+     *
+     * @return Matcher or null if the filters have not been compiled yet
+     */
+    private NetworkRuleMatcher getUrlMatcher() {
+        File current = filtersFile.getCurrent();
+        synchronized (urlMatcherLock) {
+            if (current != null && !current.equals(urlMatcherSource)) {
+                try {
+                    long startTime = System.currentTimeMillis();
+                    urlMatcher = NetworkRuleMatcher.load(current);
+                    urlMatcherSource = current;
+                    LOG.info("Loaded {} network rules from {} in {} ms", urlMatcher.getRuleCount(), current,
+                            System.currentTimeMillis() - startTime);
+                } catch (IOException e) {
+                    LOG.error("Cannot load network rules from {}:\r\n", current, e);
+                }
             }
+            return urlMatcher;
         }
+    }
 
-        cachedFilterRuleCount = rules.size();
+    @Override
+    public List<CosmeticRule> getCosmeticRules(String domain, boolean includeGeneric) {
+        CosmeticIndex index = getCosmeticIndex();
+        return index == null ? Collections.<CosmeticRule>emptyList() : index.getRules(domain, includeGeneric);
+    }
 
-        try {
-            LOG.info("Saving {} filters...", cachedFilterRuleCount);
-            FileUtils.writeLines(new File(context.getFilesDir().getAbsolutePath() + "/filters.txt"), rules);
-            preferencesService.setFilterRuleCount(cachedFilterRuleCount);
-            enableContentBlocker(context);
-        } catch (IOException e) {
-            LOG.warn("Unable to save filters to file!!!", e);
+    /**
+     * Gets the cosmetic index of the compiled filters.
+     * The compiler replaces the index file on every change, so it is reloaded when the file is modified.
+     *
+     * @return Index or null if the filters have not been compiled yet
+     */
+    private CosmeticIndex getCosmeticIndex() {
+        File indexFile = filterCompiler.getCosmeticIndexFile();
+        synchronized (cosmeticIndexLock) {
+            long modified = indexFile.lastModified();
+            if (modified != 0 && modified != cosmeticIndexModified) {
+                try {
+                    long startTime = System.currentTimeMillis();
+                    cosmeticIndex = CosmeticIndex.read(indexFile);
+                    cosmeticIndexModified = modified;
+                    LOG.info("Loaded {} cosmetic rules from {} in {} ms", cosmeticIndex.getRuleCount(), indexFile,
+                            System.currentTimeMillis() - startTime);
+                } catch (IOException e) {
+                    LOG.error("Cannot load cosmetic index from {}:\r\n", indexFile, e);
+                }
+            }
+            return cosmeticIndex;
         }
     }
 
@@ -368,32 +454,6 @@ public class FilterServiceImpl implements FilterService {
         context.sendBroadcast(intent);
     }
 
-    /**
-     * Creates whilelist rule from domain name
-     *
-     * @param domain Domain name
-     * @return Url filter rule text
-     */
-    private String createWhiteListRule(String domain) {
-        return "@@{0}^$document".replace("{0}", domain);
-    }
-
-    /**
-     * Checks the rules of non ascii symbols and control symbols
-     *
-     * @param userRule rule
-     * @return true if correct rule or false
-     */
-    private boolean validateRuleText(String userRule) {
-        return StringUtils.isNotBlank(userRule) &&
-                userRule.matches(ASCII_SYMBOL) &&
-                StringUtils.length(userRule) > MIN_RULE_LENGTH &&
-                !StringUtils.startsWith(userRule, COMMENT) &&
-                !StringUtils.startsWith(userRule, ADBLOCK_META_START) &&
-                !StringUtils.contains(userRule, MASK_OBSOLETE_SCRIPT_INJECTION) &&
-                !StringUtils.contains(userRule, MASK_OBSOLETE_STYLE_INJECTION);
-    }
-
     /**
      * Updates filters without updates for some time.
      *
@@ -419,7 +479,8 @@ public class FilterServiceImpl implements FilterService {
         for (FilterList filter : getEnabledFilters()) {
 
             if (force || shouldUpdateOutdatedFilter(filter, timeFromUpdate)) {
-                filtersToUpdate.add(filter);
+                // Filters are changed while updating, so they are copied from the shared list
+                filtersToUpdate.add(new FilterList(filter));
             }
         }
 
@@ -438,7 +499,8 @@ public class FilterServiceImpl implements FilterService {
         preferencesService.setLastUpdateCheck(new Date().getTime());
 
         try {
-            final List<FilterList> updated = ServiceApiClient.downloadFilterVersions(filters, AppLink.FilterApi.getCheckFilterVersionsUrl());
+            final ConditionalResponse metadata = ServiceApiClient.downloadFiltersMetadata(AppLink.FilterApi.getCheckFilterVersionsUrl());
+            final List<FilterList> updated = ServiceApiClient.parseFilterVersions(filters, metadata.getBody());
             if (updated == null) {
                 LOG.warn("Cannot download filter updates.");
                 return null;
@@ -449,6 +511,7 @@ public class FilterServiceImpl implements FilterService {
                 map.put(filter.getFilterId(), filter);
             }
 
+            List<FilterList> outdatedFilters = new ArrayList<>();
             for (FilterList current : filters) {
                 final int filterId = current.getFilterId();
                 if (!map.containsKey(filterId)) {
@@ -460,17 +523,7 @@ public class FilterServiceImpl implements FilterService {
                 FilterList update = map.get(filterId);
                 if (update.getVersion().compareTo(current.getVersion()) > 0
                         || !filterRuleDao.hasFilterRules(filterId)) {
-
-                    current.setVersion(update.getVersion().toString());
-                    current.setLastTimeDownloaded(new Date());
-                    current.setTimeUpdated(update.getTimeUpdated());
-                    map.put(filterId, current);
-
-                    LOG.info("Updating filter:" + current.getFilterId());
-                    updateFilter(current);
-
-                    LOG.info("Updating rules for filter:" + current.getFilterId());
-                    updateFilterRules(filterId);
+                    outdatedFilters.add(current);
                 } else {
                     map.remove(filterId);
                     current.setLastTimeDownloaded(new Date());
@@ -478,10 +531,46 @@ public class FilterServiceImpl implements FilterService {
                 }
             }
 
-            LOG.info("Start filters localizations update");
-            final FiltersI18nJsonDto localizations = ServiceApiClient.downloadFiltersLocalizations(AppLink.FilterApi.getFiltersLocalizationsUrl());
-            filterListDao.updateLocalizations(localizations);
-            LOG.info(localizations != null ? "Filters localizations have been updated successfully" : "Filters localizations have not been updated");
+            Map<Integer, Exception> failures = updateFilterRules(outdatedFilters);
+            for (FilterList current : outdatedFilters) {
+                final int filterId = current.getFilterId();
+                if (failures.containsKey(filterId)) {
+                    // Filter metadata is left as is so the filter will be checked again next time
+                    map.remove(filterId);
+                    continue;
+                }
+
+                FilterList update = map.get(filterId);
+                current.setVersion(update.getVersion().toString());
+                current.setLastTimeDownloaded(new Date());
+                current.setTimeUpdated(update.getTimeUpdated());
+                map.put(filterId, current);
+
+                LOG.info("Updating filter:" + current.getFilterId());
+                updateFilter(current);
+            }
+
+            if (!outdatedFilters.isEmpty() && failures.size() == outdatedFilters.size()) {
+                LOG.warn("Cannot download rules of any of {} outdated filters", outdatedFilters.size());
+                return null;
+            }
+
+            if (metadata.isNotModified()) {
+                LOG.info("Filters metadata has not been modified, skipping filters localizations update");
+            } else {
+                LOG.info("Start filters localizations update");
+                final ConditionalResponse localizationsResponse = ServiceApiClient.downloadFiltersLocalizations(AppLink.FilterApi.getFiltersLocalizationsUrl());
+                final FiltersI18nJsonDto localizations = ServiceApiClient.parseFiltersLocalizations(localizationsResponse);
+                int updatedCount = filterListDao.updateLocalizations(localizations);
+                localizationsResponse.saveValidators();
+                LOG.info(localizations != null ? "{} filters localizations have been updated successfully" : "Filters localizations have not been updated", updatedCount);
+            }
+
+            // Validators are saved only when the whole metadata has been applied,
+            // otherwise the next check would skip the filters localizations update
+            if (failures.isEmpty()) {
+                metadata.saveValidators();
+            }
 
             LOG.info("Finished checking filters updates.");
 
@@ -510,15 +599,43 @@ public class FilterServiceImpl implements FilterService {
         return enabledFilters;
     }
 
-    private void updateFilterRules(int filterId) throws IOException {
-        final List<String> rules = ServiceApiClient.downloadFilterRules(filterId, AppLink.FilterApi.getFilterUrl());
-        filterRuleDao.setFilterRules(filterId, rules);
+    private Map<Integer, Exception> updateFilterRules(List<FilterList> filters) {
+        if (filters.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        List<Integer> filterIds = new ArrayList<>(filters.size());
+        for (FilterList filter : filters) {
+            filterIds.add(filter.getFilterId());
+        }
+
+        LOG.info("Downloading rules of {} filters", filterIds.size());
+        return new FilterRulesDownloader(filterRuleDao, diffUpdater, AppLink.FilterApi.getFilterUrl()).download(filterIds);
     }
 
     private void updateFilter(FilterList current) {
         filterListDao.updateFilter(current);
     }
 
+    /**
+     * Resets the version and the download time of the filter whose local rules are lost,
+     * so that the next update check downloads it again
+     *
+     * @param filterId Filter id
+     */
+    private void onFilterRulesLost(int filterId) {
+        FilterList filter = filterListDao.selectFilterList(filterId);
+        if (filter == null) {
+            return;
+        }
+
+        LOG.warn("Rules of filter {} are lost, it will be downloaded on the next update check", filterId);
+        FilterList current = new FilterList(filter);
+        current.setVersion(LOST_FILTER_VERSION);
+        current.setLastTimeDownloaded(new Date(0));
+        updateFilter(current);
+    }
+
     private boolean shouldUpdateOutdatedFilter(FilterList filterList, long timeFromUpdate) {
         if (!filterList.isEnabled()) {
             return false;
@@ -602,7 +719,7 @@ public class FilterServiceImpl implements FilterService {
 
 
         private void importRules(String download) {
-            final String[] rules = StringUtils.split(download, "\n");
+            final String[] rules = StringUtils.splitPreserveAllTokens(download, '\n');
 
             if (rules == null || rules.length < 1) {
                 LOG.error("Error downloading user rules from {}", url);
@@ -613,12 +730,24 @@ public class FilterServiceImpl implements FilterService {
             LOG.info("{} user rules downloaded from {}", rules.length, url);
 
             final List<String> rulesList = new ArrayList<>(rules.length);
-            for (String rule : rules) {
-                final String trimmedRule = rule.trim();
-                if (StringUtils.isNotBlank(trimmedRule) && trimmedRule.length() < 8000) {
-                    rulesList.add(trimmedRule);
+            int skippedCount = 0;
+            for (int i = 0; i < rules.length; i++) {
+                final String trimmedRule = rules[i].trim();
+                if (StringUtils.isBlank(trimmedRule) || trimmedRule.length() >= 8000) {
+                    continue;
+                }
+                rulesList.add(trimmedRule);
+
+                // Kept in the user filter, but not compiled, so the user can fix them
+                RuleInfo.Reason reason = RuleLexer.lex(trimmedRule).getReason();
+                if (reason != null && reason != RuleInfo.Reason.COMMENT && reason != RuleInfo.Reason.METADATA) {
+                    LOG.warn("Line {} of the user rules from {} is not compiled: {}", i + 1, url, reason);
+                    skippedCount++;
                 }
             }
+            if (skippedCount > 0) {
+                LOG.warn("{} of the imported user rules are not compiled", skippedCount);
+            }
 
             if (rulesList.size() < 1) {
                 LOG.error("Invalid user rules from {}", url);
@@ -626,12 +755,11 @@ public class FilterServiceImpl implements FilterService {
                 return;
             }
 
-            String newRules = StringUtils.join(rulesList, "\n");
-            if (!overwrite) {
-                newRules = preferencesService.getUserRules() + "\n" + newRules;
+            if (overwrite) {
+                userRuleDao.replaceRules(rulesList);
+            } else {
+                userRuleDao.insertRules(rulesList);
             }
-
-            preferencesService.setUserRuleItems(newRules);
             LOG.info("User rules added successfully.");
 
             applyNewSettings();
@@ -720,6 +848,13 @@ public class FilterServiceImpl implements FilterService {
                 }
             }
 
+            diffUpdater.clear();
+
+            HttpValidatorCache validatorCache = ServiceApiClient.getValidatorCache();
+            if (validatorCache != null) {
+                validatorCache.clear();
+            }
+
             checkFilterUpdates(true);
             applyNewSettings();
         }
@@ -17,7 +17,6 @@
 package com.adguard.android.contentblocker.service;
 
 import java.util.Date;
-import java.util.Set;
 
 /**
  * Service that stores application preferences
@@ -70,48 +69,6 @@ public interface PreferencesService {
      */
     void setOnboardingShown(boolean value);
 
-    /**
-     * @return Whitelisted domains
-     */
-    String getWhitelist();
-
-    /**
-     * @param whitelist Whitelist contents
-     */
-    void setWhitelist(String whitelist);
-
-    /**
-     * @return Set with disabled whitelist rules
-     */
-    Set<String> getDisabledWhitelistRules();
-
-    /**
-     * @param disabledWhitelistRules Set with disabled whitelist rules
-     */
-    void setDisabledWhitelistRules(Set<String> disabledWhitelistRules);
-
-    /**
-     * @return User filter rules
-     */
-    String getUserRules();
-
-    /**
-     * Set user filter text
-     *
-     * @param userRules user rules
-     */
-    void setUserRuleItems(String userRules);
-
-    /**
-     * @return Set with disabled user rules
-     */
-    Set<String> getDisabledUserRules();
-
-    /**
-     * @param disabledUserRules Set with disabled user rules
-     */
-    void setDisabledUserRules(Set<String> disabledUserRules);
-
     /**
      * @param time Last time updates where checked
      */
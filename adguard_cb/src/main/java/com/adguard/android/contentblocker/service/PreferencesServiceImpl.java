@@ -21,13 +21,10 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * Application preferences helper.
@@ -89,31 +86,6 @@ public class PreferencesServiceImpl implements PreferencesService {
         editor.apply();
     }
 
-    @Override
-    public String getUserRules() {
-        return sharedPreferences.getString(KEY_USER_RULES_STRING, StringUtils.EMPTY);
-    }
-
-    @Override
-    public void setUserRuleItems(String userRules) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(KEY_USER_RULES_STRING, userRules);
-        editor.apply();
-    }
-
-    @Override
-    public Set<String> getDisabledUserRules() {
-        Set<String> valueSet = sharedPreferences.getStringSet(KEY_DISABLED_USER_RULES, null);
-        return valueSet != null ? new HashSet<>(valueSet) : new HashSet<>();
-    }
-
-    @Override
-    public void setDisabledUserRules(Set<String> disabledUserRules) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putStringSet(KEY_DISABLED_USER_RULES, disabledUserRules);
-        editor.apply();
-    }
-
     @Override
     public void setLastUpdateCheck(long time) {
         SharedPreferences.Editor editor = sharedPreferences.edit();
@@ -186,28 +158,4 @@ public class PreferencesServiceImpl implements PreferencesService {
         editor.putInt(KEY_RATE_APP_DIALOG_COUNT, getRateAppDialogCount() + 1);
         editor.apply();
     }
-
-    @Override
-    public String getWhitelist() {
-        return sharedPreferences.getString(KEY_WHITELIST_STRING, null);
-    }
-
-    @Override
-    public void setWhitelist(String whitelist) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(KEY_WHITELIST_STRING, whitelist);
-        editor.apply();
-    }
-
-    @Override
-    public Set<String> getDisabledWhitelistRules() {
-        return sharedPreferences.getStringSet(KEY_DISABLED_WHITELIST, new HashSet<>());
-    }
-
-    @Override
-    public void setDisabledWhitelistRules(Set<String> disabledWhitelistRules) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putStringSet(KEY_DISABLED_WHITELIST, disabledWhitelistRules);
-        editor.apply();
-    }
 }
@@ -0,0 +1,163 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesces the requests to rebuild the filters.
+ * <p>
+ * Only one compile runs at a time. Requests that come while a compile is waiting to start share it,
+ * a request that comes while a compile is running cancels it, as its input is already stale.
+ * The waiters of the cancelled compile get the result of the next one, which includes their changes too.
+ * So every returned future is completed by a compile started after the request was made.
+ */
+public class CompileScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompileScheduler.class);
+
+    /**
+     * Rebuilds the filters
+     */
+    public interface Compilation {
+
+        /**
+         * @param signal Signal of the newer request, the compile should stop with
+         *               {@link OperationCanceledException} once it is canceled
+         * @return Number of the compiled rules
+         */
+        int compile(CancellationSignal signal) throws IOException;
+    }
+
+    private final Compilation compilation;
+    private final Executor executor;
+
+    /** Result of the compile that is not started yet */
+    private Result pending;
+    /** Result of the running compile, null once it is completed */
+    private Result current;
+    /** Cancellation signal of the running compile, null if there is no running compile */
+    private CancellationSignal runningSignal;
+
+    /**
+     * Creates an instance of the scheduler
+     *
+     * @param compilation Compilation to run
+     * @param executor    Executor to run compiles on
+     */
+    public CompileScheduler(Compilation compilation, Executor executor) {
+        this.compilation = compilation;
+        this.executor = executor;
+    }
+
+    /**
+     * Requests the rebuild
+     *
+     * @return Future of the number of the compiled rules
+     */
+    public synchronized Future<Integer> request() {
+        if (pending == null) {
+            if (current != null && !runningSignal.isCanceled()) {
+                LOG.info("Cancelling the stale compile");
+                runningSignal.cancel();
+                pending = current;
+            } else {
+                pending = new Result();
+                if (runningSignal == null) {
+                    executor.execute(this::runCompilations);
+                }
+            }
+        }
+        return pending;
+    }
+
+    private void runCompilations() {
+        while (true) {
+            Result result;
+            CancellationSignal signal;
+            synchronized (this) {
+                if (pending == null) {
+                    current = null;
+                    runningSignal = null;
+                    return;
+                }
+                result = current = pending;
+                pending = null;
+                signal = runningSignal = new CancellationSignal();
+            }
+
+            try {
+                int ruleCount = compilation.compile(signal);
+                synchronized (this) {
+                    // Result of a canceled compile has been moved to the next one
+                    if (!signal.isCanceled()) {
+                        result.complete(ruleCount);
+                        current = null;
+                    }
+                }
+            } catch (OperationCanceledException ex) {
+                LOG.info("Compile has been cancelled by a newer request");
+            } catch (Throwable th) {
+                // Errors fail the result as well, otherwise its waiters and the later requests would never complete
+                synchronized (this) {
+                    if (!signal.isCanceled()) {
+                        result.fail(th);
+                        current = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Result of the compile, it is completed by the scheduler only
+     */
+    private static class Result extends FutureTask<Integer> {
+
+        Result() {
+            super(() -> null);
+        }
+
+        @Override
+        public void run() {
+            // Completed by the scheduler only
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // Result is shared by several requests, one of them cannot cancel it
+            return false;
+        }
+
+        void complete(int ruleCount) {
+            set(ruleCount);
+        }
+
+        void fail(Throwable th) {
+            setException(th);
+        }
+    }
+}
@@ -0,0 +1,612 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+
+import com.adguard.android.contentblocker.db.FilterRuleDao;
+import com.adguard.android.contentblocker.db.UserRuleDao;
+import com.adguard.lite.sdk.FiltersVariant;
+import com.adguard.lite.sdk.commons.HashUtils;
+import com.adguard.lite.sdk.commons.io.GenerationalFile;
+import com.adguard.lite.sdk.commons.io.IoUtils;
+import com.adguard.lite.sdk.rules.CosmeticIndex;
+import com.adguard.lite.sdk.rules.CosmeticRuleMerger;
+import com.adguard.lite.sdk.rules.RuleLexer;
+import com.adguard.lite.sdk.rules.RuleOptimizer;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Incremental compiler of the filters.txt file.
+ * <p>
+ * The output is split into {@link Segment}s which are compiled separately.
+ * A segment is recompiled only when the key of its source has changed,
+ * after that the output file is spliced from the segment files.
+ * The output is spliced to a new generation of the filters file and published atomically,
+ * so the content provider always serves a complete file.
+ * So editing the whitelist costs as much as compiling the whitelist,
+ * while the rules of the enabled filters are not touched at all.
+ * <p>
+ * A separate {@link FiltersVariant} is published for every installed browser with a known content blocking engine.
+ * Variants drop the syntax the browser ignores, so they are smaller and faster to load.
+ * All the variants are spliced before any of them is published, so they are always compiled from the same segments.
+ * <p>
+ * Filter rules are deduplicated across all the enabled filters, that's why they share one segment.
+ * The key of this segment is built from the fingerprints of every filter's local rules,
+ * so it is invalidated when any filter is enabled, disabled or updated.
+ * <p>
+ * Filter rules are passed through {@link RuleOptimizer} after they are merged,
+ * which normalizes the modifiers of the network rules and drops the rules subsumed by broader ones,
+ * and then through {@link CosmeticRuleMerger}, which merges the cosmetic rules differing in their domains only.
+ * This is done when the filters segment is recompiled only, the rules are read as bytes
+ * and only the rules that may be changed are decoded.
+ * The targets of the $badfilter user rules are never dropped, so these user rules are a part of the filters key.
+ * <p>
+ * The cosmetic rules of the default variant are indexed by domain to {@value #COSMETIC_INDEX_FILE}.
+ * It is built from the filters and user rules segments only, as the whitelist has no cosmetic rules,
+ * it is deleted when one of them is recompiled and rebuilt from their files after splicing.
+ */
+public class FilterCompiler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FilterCompiler.class);
+
+    private static final String COMPILED_DIR = "compiled";
+    private static final String MANIFEST_FILE = "segments.properties";
+    private static final String LEGACY_OUTPUT_FILE = "filters.txt";
+    private static final String COSMETIC_INDEX_FILE = "cosmetic.idx";
+    private static final String LINE_SEPARATOR = "\n";
+    private static final String BADFILTER_KEY = "badfilter";
+
+    /** Merged cosmetic rules are split to lines of this length at most */
+    private static final int MAX_MERGED_RULE_LENGTH = 2048;
+
+    /** Browser content blockers support basic and CSS rules only */
+    private static final int BROWSER_RULE_TYPES = FilterRuleDao.RULE_TYPE_NETWORK | FilterRuleDao.RULE_TYPE_COSMETIC;
+
+    /** Segments of the default variant the cosmetic index is built from */
+    private static final List<Segment> COSMETIC_SEGMENTS = Arrays.asList(Segment.FILTERS, Segment.USER_RULES);
+
+    private final Context context;
+    private final File compiledDir;
+    private final Map<FiltersVariant, GenerationalFile> outputFiles = new EnumMap<>(FiltersVariant.class);
+    private final File legacyOutputFile;
+    private final File cosmeticIndexFile;
+    private final FilterRuleDao filterRuleDao;
+    private final UserRuleDao userRuleDao;
+    private final UserRuleDao whitelistDao;
+
+    private SegmentManifest manifest;
+
+    /**
+     * Creates an instance of the compiler
+     *
+     * @param context            Context
+     * @param filterRuleDao      Filter rules storage
+     * @param userRuleDao        User filter rules storage
+     * @param whitelistDao       Whitelist storage
+     */
+    public FilterCompiler(Context context, FilterRuleDao filterRuleDao, UserRuleDao userRuleDao, UserRuleDao whitelistDao) {
+        this.context = context;
+        this.compiledDir = new File(context.getFilesDir(), COMPILED_DIR);
+        for (FiltersVariant variant : FiltersVariant.values()) {
+            outputFiles.put(variant, variant.createFile(context));
+        }
+        this.legacyOutputFile = new File(context.getFilesDir(), LEGACY_OUTPUT_FILE);
+        this.cosmeticIndexFile = new File(compiledDir, COSMETIC_INDEX_FILE);
+        this.filterRuleDao = filterRuleDao;
+        this.userRuleDao = userRuleDao;
+        this.whitelistDao = whitelistDao;
+    }
+
+    /**
+     * Recompiles the outdated segments and writes the output files of the needed variants.
+     *
+     * @param filterIds Enabled filters ids
+     * @param signal    Cancellation signal, it is checked before every segment and every output file.
+     *                  Segments compiled before the cancellation are kept, as they match their keys,
+     *                  while no output file is published.
+     * @return Number of rules in the default variant
+     * @throws IOException if segments or the output file cannot be written
+     * @throws android.os.OperationCanceledException if the compile has been canceled
+     */
+    public synchronized int compile(List<Integer> filterIds, CancellationSignal signal) throws IOException {
+        if (!compiledDir.exists() && !compiledDir.mkdirs()) {
+            throw new IOException("Cannot create directory " + compiledDir);
+        }
+        if (manifest == null) {
+            manifest = new SegmentManifest(new File(compiledDir, MANIFEST_FILE));
+        }
+
+        Set<FiltersVariant> variants = FiltersVariant.getInstalled(context);
+        Set<Segment> segments = EnumSet.noneOf(Segment.class);
+        for (FiltersVariant variant : variants) {
+            segments.addAll(getSegments(variant));
+        }
+
+        List<String> userRules = userRuleDao.selectEnabledRuleTexts();
+        List<String> whitelist = whitelistDao.selectEnabledRuleTexts();
+
+        List<String> badfilters = selectBadfilters(userRules);
+        String filtersKey = createFiltersKey(filterIds, badfilters);
+        String userRulesKey = createKey(userRules);
+        String whitelistKey = createKey(whitelist);
+
+        for (Segment segment : segments) {
+            signal.throwIfCanceled();
+            switch (segment) {
+                case FILTERS:
+                case BROWSER_FILTERS:
+                    if (!isUpToDate(segment, filtersKey)) {
+                        int typeMask = segment == Segment.FILTERS ? FilterRuleDao.RULE_TYPE_ALL : BROWSER_RULE_TYPES;
+                        compileFiltersSegment(segment, filtersKey, filterIds, typeMask, badfilters);
+                    }
+                    break;
+                case USER_RULES:
+                    if (!isUpToDate(segment, userRulesKey)) {
+                        compileSegment(segment, userRulesKey, compileUserRules(userRules));
+                    }
+                    break;
+                default:
+                    if (!isUpToDate(segment, whitelistKey)) {
+                        compileSegment(segment, whitelistKey, compileWhitelist(segment, whitelist));
+                    }
+                    break;
+            }
+        }
+
+        int ruleCount = 0;
+        Map<FiltersVariant, File> generationFiles = new EnumMap<>(FiltersVariant.class);
+        try {
+            for (FiltersVariant variant : variants) {
+                signal.throwIfCanceled();
+                generationFiles.put(variant, splice(variant));
+                if (variant == FiltersVariant.DEFAULT) {
+                    ruleCount = getRuleCount(variant);
+                }
+            }
+
+            Iterator<Map.Entry<FiltersVariant, File>> iterator = generationFiles.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<FiltersVariant, File> entry = iterator.next();
+                outputFiles.get(entry.getKey()).publish(entry.getValue());
+                iterator.remove();
+            }
+        } finally {
+            for (Map.Entry<FiltersVariant, File> entry : generationFiles.entrySet()) {
+                outputFiles.get(entry.getKey()).discard(entry.getValue());
+            }
+        }
+
+        if (!cosmeticIndexFile.exists()) {
+            writeCosmeticIndex();
+        }
+
+        // Filters used to be written in place by older versions
+        FileUtils.deleteQuietly(legacyOutputFile);
+
+        return ruleCount;
+    }
+
+    /**
+     * Checks if the published filters have been compiled by this version of the app.
+     * After the upgrade from a version that wrote the filters in place, the content provider serves those filters
+     * until they are compiled again.
+     *
+     * @return False if nothing is published yet or the filters of an older version are still in use
+     */
+    public boolean isCompiled() {
+        return outputFiles.get(FiltersVariant.DEFAULT).getCurrent() != null && !legacyOutputFile.exists();
+    }
+
+    /**
+     * @return File of the cosmetic rules index, it does not exist until the first compile
+     */
+    public File getCosmeticIndexFile() {
+        return cosmeticIndexFile;
+    }
+
+    /**
+     * Gets the segments the variant is spliced from
+     *
+     * @param variant Filters variant
+     * @return Segments in the splicing order
+     */
+    private static List<Segment> getSegments(FiltersVariant variant) {
+        switch (variant) {
+            case YANDEX:
+                return Arrays.asList(Segment.BROWSER_FILTERS, Segment.USER_RULES, Segment.WHITELIST_NO_DOCUMENT);
+            case SAMSUNG:
+                return Arrays.asList(Segment.BROWSER_FILTERS, Segment.USER_RULES, Segment.WHITELIST_DOCUMENT);
+            default:
+                return Arrays.asList(Segment.FILTERS, Segment.USER_RULES, Segment.WHITELIST);
+        }
+    }
+
+    private boolean isUpToDate(Segment segment, String sourceKey) {
+        return manifest.isUpToDate(segment, getSegmentFile(segment), sourceKey);
+    }
+
+    /**
+     * Compiles the filters segment.
+     * Filter rules are copied from the storage directly to the segment file and optimized there.
+     *
+     * @param segment    Filters segment
+     * @param sourceKey  Key of the enabled filters
+     * @param filterIds  Enabled filters ids
+     * @param typeMask   Types of the rules to copy
+     * @param badfilters $badfilter user rules
+     */
+    private void compileFiltersSegment(Segment segment, String sourceKey, List<Integer> filterIds, int typeMask,
+                                       List<String> badfilters) throws IOException {
+        LOG.info("Compiling segment {} from {} filters", segment.getName(), filterIds.size());
+
+        File tmpFile = getTmpSegmentFile(segment);
+        FileOutputStream outputStream = null;
+        int[] ruleCounts = new int[filterIds.size()];
+        int ruleCount;
+        try {
+            outputStream = new FileOutputStream(tmpFile);
+            ruleCount = filterRuleDao.writeRuleTexts(filterIds, typeMask, outputStream.getChannel(), ruleCounts);
+        } finally {
+            IoUtils.closeQuietly(outputStream);
+        }
+
+        ruleCount = optimizeSegment(tmpFile, filterIds, ruleCounts, badfilters);
+        commitSegment(segment, tmpFile, sourceKey, ruleCount);
+    }
+
+    /**
+     * Rewrites the merged filter rules without the redundant ones and with the cosmetic rules merged by domain.
+     * Rules are copied as bytes, only the rules the optimizer or the merger may change are decoded.
+     * The rules dropped and merged in each filter are logged separately. A merged group may take the rules
+     * of several filters, so the bytes saved by merging are logged for the whole segment.
+     *
+     * @param segmentFile Merged rules, the rules of each filter follow the rules of the previous one
+     * @param filterIds   Merged filters ids
+     * @param ruleCounts  Number of the merged rules of each filter
+     * @param badfilters  $badfilter user rules, the rules they disable are kept
+     * @return Number of the rules left
+     */
+    private int optimizeSegment(File segmentFile, List<Integer> filterIds, int[] ruleCounts, List<String> badfilters) throws IOException {
+        RuleOptimizer optimizer = new RuleOptimizer();
+        CosmeticRuleMerger merger = new CosmeticRuleMerger(MAX_MERGED_RULE_LENGTH);
+        for (String badfilter : badfilters) {
+            optimizer.addBadfilter(badfilter);
+        }
+
+        // Lines that may be changed, the others are copied as they are in the second pass
+        BitSet changedLines = new BitSet();
+        SegmentLineReader reader = null;
+        try {
+            reader = new SegmentLineReader(segmentFile);
+            for (int line = 0; reader.next(); line++) {
+                if (reader.mayBeOptimized()) {
+                    String rule = reader.getText();
+                    boolean optimized = optimizer.collect(rule);
+                    if (merger.collect(rule) || optimized) {
+                        changedLines.set(line);
+                    }
+                }
+            }
+        } finally {
+            IoUtils.closeQuietly(reader);
+        }
+
+        File optimizedFile = new File(segmentFile.getPath() + ".opt");
+        int[] droppedRules = new int[ruleCounts.length];
+        long[] droppedBytes = new long[ruleCounts.length];
+        int[] mergedRules = new int[ruleCounts.length];
+        int mergedGroupRules = 0;
+        long mergedBytes = 0;
+        int lineCount = 0;
+        int ruleCount = 0;
+        OutputStream outputStream = null;
+        try {
+            reader = new SegmentLineReader(segmentFile);
+            outputStream = new BufferedOutputStream(new FileOutputStream(optimizedFile));
+            int source = 0;
+            int sourceLines = 0;
+            for (; reader.next(); lineCount++) {
+                while (sourceLines >= ruleCounts[source] && source < ruleCounts.length - 1) {
+                    source++;
+                    sourceLines = 0;
+                }
+                sourceLines++;
+
+                if (!changedLines.get(lineCount)) {
+                    reader.writeLine(outputStream);
+                    ruleCount++;
+                    continue;
+                }
+
+                String line = reader.getText();
+                String rule = optimizer.optimize(line);
+                List<String> rules = rule == null ? Collections.<String>emptyList() : merger.merge(rule);
+                if (rules.size() == 1 && line.equals(rules.get(0))) {
+                    reader.writeLine(outputStream);
+                    ruleCount++;
+                    continue;
+                }
+
+                int lineLength = reader.getLength() + LINE_SEPARATOR.length();
+                if (rule == null) {
+                    droppedRules[source]++;
+                    droppedBytes[source] += lineLength;
+                    continue;
+                }
+
+                int length = 0;
+                for (String outputRule : rules) {
+                    byte[] bytes = (outputRule + LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8);
+                    outputStream.write(bytes);
+                    length += bytes.length;
+                }
+                ruleCount += rules.size();
+                if (rules.size() != 1 || !rule.equals(rules.get(0))) {
+                    // Every rule of a group is merged, the first one is replaced with the merged rules of the group
+                    mergedRules[source]++;
+                    mergedGroupRules += rules.size();
+                    mergedBytes += lineLength - length;
+                }
+            }
+            outputStream.close();
+        } finally {
+            IoUtils.closeQuietly(reader);
+            IoUtils.closeQuietly(outputStream);
+        }
+
+        if (!optimizedFile.renameTo(segmentFile)) {
+            FileUtils.deleteQuietly(optimizedFile);
+            throw new IOException("Cannot replace segment file " + segmentFile);
+        }
+
+        int totalDropped = 0;
+        for (int i = 0; i < filterIds.size(); i++) {
+            if (droppedRules[i] > 0 || mergedRules[i] > 0) {
+                LOG.info("Filter {}: {} redundant rules dropped ({} bytes), {} cosmetic rules merged into groups",
+                        filterIds.get(i), droppedRules[i], droppedBytes[i], mergedRules[i]);
+            }
+            totalDropped += droppedRules[i];
+        }
+        LOG.info("Optimized {} filter rules to {}: {} redundant rules dropped with {} broad rules, "
+                        + "{} cosmetic rules merged into {} rules ({} bytes saved), {} rules decoded",
+                lineCount, ruleCount, totalDropped, optimizer.getBroadRuleCount(),
+                merger.getMergedRuleCount(), mergedGroupRules, mergedBytes, changedLines.cardinality());
+        return ruleCount;
+    }
+
+    private void compileSegment(Segment segment, String sourceKey, List<String> rules) throws IOException {
+        LOG.info("Compiling segment {} with {} rules", segment.getName(), rules.size());
+
+        File tmpFile = getTmpSegmentFile(segment);
+        FileUtils.writeLines(tmpFile, StandardCharsets.UTF_8.name(), rules, LINE_SEPARATOR);
+        commitSegment(segment, tmpFile, sourceKey, rules.size());
+    }
+
+    private void commitSegment(Segment segment, File tmpFile, String sourceKey, int ruleCount) throws IOException {
+        if (COSMETIC_SEGMENTS.contains(segment)) {
+            // Deleted first, so that it is rebuilt even if the compile does not get to it
+            FileUtils.deleteQuietly(cosmeticIndexFile);
+        }
+
+        File segmentFile = getSegmentFile(segment);
+        if (!tmpFile.renameTo(segmentFile)) {
+            throw new IOException("Cannot replace segment file " + segmentFile);
+        }
+
+        manifest.update(segment, sourceKey, ruleCount);
+    }
+
+    /**
+     * Writes the segments of the variant one by one to a new generation of its output file.
+     * The generation is not published, so that all the variants can be published together.
+     *
+     * @param variant Filters variant
+     * @return Generation file
+     */
+    private File splice(FiltersVariant variant) throws IOException {
+        GenerationalFile outputFile = outputFiles.get(variant);
+        File generationFile = outputFile.newGeneration();
+        FileOutputStream outputStream = null;
+        boolean spliced = false;
+        try {
+            outputStream = new FileOutputStream(generationFile);
+            FileChannel outputChannel = outputStream.getChannel();
+            for (Segment segment : getSegments(variant)) {
+                transfer(getSegmentFile(segment), outputChannel);
+            }
+            outputStream.close();
+            spliced = true;
+        } finally {
+            IoUtils.closeQuietly(outputStream);
+            if (!spliced) {
+                outputFile.discard(generationFile);
+            }
+        }
+
+        LOG.info("Spliced {} rules to {}", getRuleCount(variant), generationFile);
+        return generationFile;
+    }
+
+    /**
+     * @param variant Filters variant
+     * @return Number of rules in the segments of the variant
+     */
+    private int getRuleCount(FiltersVariant variant) {
+        int ruleCount = 0;
+        for (Segment segment : getSegments(variant)) {
+            ruleCount += manifest.getRuleCount(segment);
+        }
+        return ruleCount;
+    }
+
+    /**
+     * Indexes the cosmetic rules of the filters and user rules segments
+     */
+    private void writeCosmeticIndex() throws IOException {
+        CosmeticIndex.Builder builder = new CosmeticIndex.Builder();
+        for (Segment segment : COSMETIC_SEGMENTS) {
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(getSegmentFile(segment)), StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    builder.add(line);
+                }
+            } finally {
+                IoUtils.closeQuietly(reader);
+            }
+        }
+
+        CosmeticIndex index = builder.build();
+        File tmpFile = new File(compiledDir, COSMETIC_INDEX_FILE + ".tmp");
+        index.write(tmpFile);
+        if (!tmpFile.renameTo(cosmeticIndexFile)) {
+            FileUtils.deleteQuietly(tmpFile);
+            throw new IOException("Cannot replace cosmetic index " + cosmeticIndexFile);
+        }
+        LOG.info("Indexed {} cosmetic rules of segments {}", index.getRuleCount(), COSMETIC_SEGMENTS);
+    }
+
+    private static void transfer(File file, FileChannel outputChannel) throws IOException {
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            FileChannel inputChannel = inputStream.getChannel();
+            long position = 0;
+            long size = inputChannel.size();
+            while (position < size) {
+                position += inputChannel.transferTo(position, size - position, outputChannel);
+            }
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+    }
+
+    private File getSegmentFile(Segment segment) {
+        return new File(compiledDir, segment.getFileName());
+    }
+
+    private File getTmpSegmentFile(Segment segment) {
+        return new File(compiledDir, segment.getFileName() + ".tmp");
+    }
+
+    private List<String> compileUserRules(List<String> userRules) {
+        List<String> rules = new ArrayList<>();
+        for (String userRule : userRules) {
+            if (RuleLexer.lex(userRule).isValid()) {
+                rules.add(userRule);
+            }
+        }
+        return rules;
+    }
+
+    private static List<String> selectBadfilters(List<String> userRules) {
+        List<String> badfilters = new ArrayList<>();
+        for (String userRule : userRules) {
+            if (RuleOptimizer.isBadfilter(userRule)) {
+                badfilters.add(userRule);
+            }
+        }
+        return badfilters;
+    }
+
+    private List<String> compileWhitelist(Segment segment, List<String> whitelist) {
+        List<String> rules = new ArrayList<>();
+        for (String whitelistRule : whitelist) {
+            if (segment != Segment.WHITELIST_NO_DOCUMENT) {
+                rules.add(createWhiteListRule(whitelistRule));
+            }
+
+            /**
+             * Add these rules, because the Ya Browser does not support the $document modifier
+             */
+            // TODO Should remove this after the Ya Browser browser add support $document modifier
+            if (segment != Segment.WHITELIST_DOCUMENT) {
+                rules.add(String.format("@@http*$domain=%s", whitelistRule));
+                rules.add(String.format("@@||%s^$elemhide", whitelistRule));
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Creates the key of the filters segment.
+     * It consists of the enabled filter ids and fingerprints of their local rules,
+     * and of the $badfilter user rules, as the optimizer keeps the rules they disable.
+     *
+     * @param filterIds  Enabled filters ids
+     * @param badfilters $badfilter user rules
+     * @return Segment key
+     */
+    private String createFiltersKey(List<Integer> filterIds, List<String> badfilters) {
+        StringBuilder sb = new StringBuilder();
+        for (int filterId : filterIds) {
+            sb.append(filterId).append(':').append(filterRuleDao.getFilterRulesFingerprint(filterId)).append(LINE_SEPARATOR);
+        }
+        for (String badfilter : badfilters) {
+            sb.append(BADFILTER_KEY).append(':').append(badfilter).append(LINE_SEPARATOR);
+        }
+        return HashUtils.sha1(sb.toString());
+    }
+
+    /**
+     * Creates the key of the user rules or whitelist segment.
+     *
+     * @param rules Enabled rules
+     * @return Segment key
+     */
+    private static String createKey(List<String> rules) {
+        return HashUtils.sha1(StringUtils.join(rules, LINE_SEPARATOR));
+    }
+
+    /**
+     * Creates whilelist rule from domain name
+     *
+     * @param domain Domain name
+     * @return Url filter rule text
+     */
+    private static String createWhiteListRule(String domain) {
+        return "@@{0}^$document".replace("{0}", domain);
+    }
+}
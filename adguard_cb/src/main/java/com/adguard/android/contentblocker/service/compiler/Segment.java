@@ -0,0 +1,66 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+/**
+ * Compiled part of the filters.txt file.
+ * <p>
+ * Every segment is compiled from its own source (enabled filters, user rules or whitelist)
+ * and remembers the key of the source it was compiled from.
+ * Some sources are compiled to several segments, differing in the rules syntax they contain,
+ * and every filters variant is spliced from its own set of segments.
+ */
+enum Segment {
+
+    /** Merged and deduplicated rules of the enabled filters */
+    FILTERS("filters"),
+
+    /** Rules of the enabled filters supported by browser content blockers: without JS, content rules and comments */
+    BROWSER_FILTERS("filters-browser"),
+
+    /** Enabled and valid user rules */
+    USER_RULES("user"),
+
+    /** Rules generated from the enabled whitelist domains */
+    WHITELIST("whitelist"),
+
+    /** Whitelist rules for browsers supporting the $document modifier */
+    WHITELIST_DOCUMENT("whitelist-document"),
+
+    /** Whitelist rules for browsers not supporting the $document modifier */
+    WHITELIST_NO_DOCUMENT("whitelist-no-document");
+
+    private final String name;
+
+    Segment(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return Segment name used for the segment file and manifest keys
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return Segment file name
+     */
+    String getFileName() {
+        return name + ".seg";
+    }
+}
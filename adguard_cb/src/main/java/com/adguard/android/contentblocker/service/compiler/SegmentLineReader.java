@@ -0,0 +1,136 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a segment file as bytes, so that the lines which are copied as they are never get decoded
+ */
+final class SegmentLineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int INITIAL_LINE_SIZE = 256;
+
+    private final InputStream inputStream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLength;
+    private byte[] line = new byte[INITIAL_LINE_SIZE];
+    private int lineLength;
+
+    SegmentLineReader(File file) throws IOException {
+        inputStream = new FileInputStream(file);
+    }
+
+    /**
+     * Reads the next line
+     *
+     * @return False if the end of the file is reached
+     */
+    boolean next() throws IOException {
+        lineLength = 0;
+        while (true) {
+            if (bufferPosition == bufferLength) {
+                bufferLength = Math.max(inputStream.read(buffer), 0);
+                bufferPosition = 0;
+                if (bufferLength == 0) {
+                    // The last line may have no line break
+                    return lineLength > 0;
+                }
+            }
+
+            byte b = buffer[bufferPosition++];
+            if (b == '\n') {
+                return true;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = b;
+        }
+    }
+
+    /**
+     * @return Length of the current line in bytes, without the line break
+     */
+    int getLength() {
+        return lineLength;
+    }
+
+    /**
+     * @return Decoded current line
+     */
+    String getText() {
+        return new String(line, 0, lineLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks if the current line may be changed by the optimizer or the merger.
+     * These are network rules anchored to a domain or with modifiers and the rules with a cosmetic marker.
+     *
+     * @return False if the line is surely written as it is
+     */
+    boolean mayBeOptimized() {
+        if (lineLength == 0 || line[0] == '!') {
+            return false;
+        }
+        if (startsWith("||") || startsWith("@@||")) {
+            return true;
+        }
+        for (int i = 0; i < lineLength; i++) {
+            if (line[i] == '$' || line[i] == '#') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the current line with the line break
+     *
+     * @param outputStream Stream to write to
+     */
+    void writeLine(OutputStream outputStream) throws IOException {
+        outputStream.write(line, 0, lineLength);
+        outputStream.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    private boolean startsWith(String prefix) {
+        if (lineLength < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
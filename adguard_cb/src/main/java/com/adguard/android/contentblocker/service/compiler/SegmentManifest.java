@@ -0,0 +1,131 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.service.compiler;
+
+import com.adguard.lite.sdk.commons.io.IoUtils;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Persistent description of the compiled segments.
+ * <p>
+ * For every segment it keeps the key of the source the segment was compiled from
+ * and the number of rules in it.
+ */
+class SegmentManifest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentManifest.class);
+
+    /**
+     * Increase this value every time the segments format or the compilation logic changes
+     * so that all the segments are recompiled after the upgrade.
+     */
+    private static final String FORMAT_VERSION = "2";
+
+    private static final String KEY_FORMAT_VERSION = "format.version";
+    private static final String SUFFIX_KEY = ".key";
+    private static final String SUFFIX_RULE_COUNT = ".rules";
+
+    private final File file;
+    private final Properties properties = new Properties();
+
+    SegmentManifest(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Checks if the segment was compiled from the source with the specified key.
+     *
+     * @param segment     Segment
+     * @param segmentFile Compiled segment file
+     * @param sourceKey   Key of the source
+     * @return true if the segment is up to date
+     */
+    boolean isUpToDate(Segment segment, File segmentFile, String sourceKey) {
+        return segmentFile.exists() && StringUtils.equals(sourceKey, properties.getProperty(segment.getName() + SUFFIX_KEY));
+    }
+
+    /**
+     * @param segment Segment
+     * @return Number of rules in the compiled segment
+     */
+    int getRuleCount(Segment segment) {
+        try {
+            return Integer.parseInt(properties.getProperty(segment.getName() + SUFFIX_RULE_COUNT, "0"));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Remembers the newly compiled segment and saves the manifest.
+     *
+     * @param segment   Segment
+     * @param sourceKey Key of the source the segment was compiled from
+     * @param ruleCount Number of rules in the segment
+     */
+    void update(Segment segment, String sourceKey, int ruleCount) throws IOException {
+        properties.setProperty(segment.getName() + SUFFIX_KEY, sourceKey);
+        properties.setProperty(segment.getName() + SUFFIX_RULE_COUNT, Integer.toString(ruleCount));
+        save();
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            properties.load(inputStream);
+        } catch (IOException ex) {
+            LOG.warn("Cannot load segments manifest, all segments will be recompiled\n", ex);
+            properties.clear();
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+
+        if (!FORMAT_VERSION.equals(properties.getProperty(KEY_FORMAT_VERSION))) {
+            LOG.info("Segments format has changed, all segments will be recompiled");
+            properties.clear();
+        }
+    }
+
+    private void save() throws IOException {
+        properties.setProperty(KEY_FORMAT_VERSION, FORMAT_VERSION);
+
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(file);
+            properties.store(outputStream, null);
+        } finally {
+            IoUtils.closeQuietly(outputStream);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.ui;
+
+import android.os.Bundle;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.adguard.android.contentblocker.R;
+import com.adguard.android.contentblocker.ServiceLocator;
+import com.adguard.android.contentblocker.commons.concurrent.ExecutorsPool;
+import com.adguard.android.contentblocker.service.FilterService;
+import com.adguard.lite.sdk.rules.NetworkRule;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Checks which rule of the compiled filters blocks or allows a URL
+ */
+public class CheckUrlActivity extends AppCompatActivity {
+
+    private static final String SCHEME_SEPARATOR = "://";
+    private static final String DEFAULT_SCHEME = "https://";
+
+    private FilterService filterService;
+    private EditText urlView;
+    private EditText documentUrlView;
+    private TextView resultView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_check_url);
+
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null) {
+            // Show the Up button in the action bar.
+            actionBar.setDisplayHomeAsUpEnabled(true);
+        }
+
+        filterService = ServiceLocator.getInstance(getApplicationContext()).getFilterService();
+        urlView = findViewById(R.id.check_url_input);
+        documentUrlView = findViewById(R.id.check_url_document_input);
+        resultView = findViewById(R.id.check_url_result);
+
+        findViewById(R.id.check_url_button).setOnClickListener(view -> checkUrl());
+    }
+
+    private void checkUrl() {
+        final String url = normalizeUrl(urlView.getText().toString());
+        if (url == null) {
+            urlView.setError(getString(R.string.check_url_empty));
+            return;
+        }
+        final String documentUrl = normalizeUrl(documentUrlView.getText().toString());
+
+        resultView.setText(R.string.check_url_progress);
+        // Rules are loaded on the first check after a compile
+        ExecutorsPool.getCachedExecutorService().submit(() -> {
+            NetworkRule rule = filterService.findMatchingRule(url, documentUrl);
+            runOnUiThread(() -> {
+                if (!isFinishing()) {
+                    showResult(rule);
+                }
+            });
+        });
+    }
+
+    private void showResult(NetworkRule rule) {
+        if (rule == null) {
+            resultView.setText(R.string.check_url_no_match);
+        } else if (rule.isWhitelist()) {
+            resultView.setText(getString(R.string.check_url_allowed, rule.getRuleText()));
+        } else {
+            resultView.setText(getString(R.string.check_url_blocked, rule.getRuleText()));
+        }
+    }
+
+    /**
+     * @return URL with a scheme, as users usually type just the domain, or null if the text is blank
+     */
+    private static String normalizeUrl(String text) {
+        String url = StringUtils.trimToNull(text);
+        if (url != null && !url.contains(SCHEME_SEPARATOR)) {
+            url = DEFAULT_SCHEME + url;
+        }
+        return url;
+    }
+}
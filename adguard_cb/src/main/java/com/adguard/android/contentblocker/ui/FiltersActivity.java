@@ -28,13 +28,25 @@ import com.adguard.android.contentblocker.ui.utils.FilterViewAdapter;
 
 public class FiltersActivity extends AppCompatActivity {
 
+    private FilterService filterService;
+    private FilterViewAdapter adapter;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_filters);
         ListView listView = findViewById(R.id.listView);
-        FilterService filterService = ServiceLocator.getInstance(getApplicationContext()).getFilterService();
-        FilterViewAdapter adapter = new FilterViewAdapter(this, filterService);
+        filterService = ServiceLocator.getInstance(getApplicationContext()).getFilterService();
+        adapter = new FilterViewAdapter(this, filterService);
+        // Listener is registered before the snapshot is read, so that a change between them is not missed
+        filterService.addOnFilterListsChangedListener(adapter);
+        adapter.setFilterLists(filterService.getFilters());
         listView.setAdapter(adapter);
     }
+
+    @Override
+    protected void onDestroy() {
+        filterService.removeOnFilterListsChangedListener(adapter);
+        super.onDestroy();
+    }
 }
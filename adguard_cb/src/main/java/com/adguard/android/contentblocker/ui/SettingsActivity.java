@@ -75,6 +75,9 @@ public class SettingsActivity extends AppCompatActivity {
         findViewById(R.id.filter_list_wrapper).setOnClickListener(view ->
                 NavigationHelper.redirectToActivity(SettingsActivity.this, FiltersActivity.class));
 
+        findViewById(R.id.check_url_wrapper).setOnClickListener(view ->
+                NavigationHelper.redirectToActivity(SettingsActivity.this, CheckUrlActivity.class));
+
         findViewById(R.id.clear_filter_cache_wrapper).setOnClickListener(v -> {
             ProgressDialog progressDialog = ProgressDialogUtils.showProgressDialog(SettingsActivity.this,
                     R.string.please_wait,
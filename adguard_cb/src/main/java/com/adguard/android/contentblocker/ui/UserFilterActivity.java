@@ -330,17 +330,16 @@ public class UserFilterActivity extends AppCompatActivity implements FilterServi
         @Override
         public void remove(String item) {
             super.remove(item);
-            // We do this just to make sure that there are no ghost records in the disabled rules list
-            filterService.enableUserRule(item, true);
-            filterService.setUserRules(getText());
+            filterService.removeUserRuleItem(item);
             updateFloatingButton();
             new ApplyAndRefreshTask(filterService, UserFilterActivity.this).execute();
         }
 
         @Override
         public void replace(String item, int index) {
+            String oldItem = getItem(index);
             super.replace(item, index);
-            filterService.setUserRules(getText());
+            filterService.replaceUserRuleItem(oldItem, item);
             updateFloatingButton();
             new ApplyAndRefreshTask(filterService, UserFilterActivity.this).execute();
         }
@@ -188,17 +188,16 @@ public class WhitelistActivity extends AppCompatActivity {
         @Override
         public void remove(String item) {
             super.remove(item);
-            // We do this just to make sure that there are no ghost records in the disabled rules list
-            filterService.enableWhitelistRule(item, true);
-            filterService.setWhiteList(getText());
+            filterService.removeWhitelistItem(item);
             new ApplyAndRefreshTask(filterService, WhitelistActivity.this).execute();
             invalidateOptionsMenu();
         }
 
         public void replace(String item, int index) {
-            super.remove(getItem(index));
+            String oldItem = getItem(index);
+            super.remove(oldItem);
             super.insert(item, index);
-            filterService.setWhiteList(getText());
+            filterService.replaceWhitelistItem(oldItem, item);
             new ApplyAndRefreshTask(filterService, WhitelistActivity.this).execute();
             invalidateOptionsMenu();
         }
@@ -24,12 +24,21 @@ import android.os.AsyncTask;
 import com.adguard.android.contentblocker.R;
 import com.adguard.android.contentblocker.service.FilterService;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 public class ApplyAndRefreshTask extends AsyncTask<Void, Void, Void> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(ApplyAndRefreshTask.class);
+
     private final FilterService service;
     @SuppressLint("StaticFieldLeak")
     private final Activity activity;
     private ProgressDialog dialog;
+    private Future<Integer> result;
 
     public ApplyAndRefreshTask(FilterService service, Activity activity) {
         this.service = service;
@@ -39,11 +48,19 @@ public class ApplyAndRefreshTask extends AsyncTask<Void, Void, Void> {
     @Override
     protected void onPreExecute() {
         dialog = ProgressDialogUtils.showProgressDialog(activity, -1, R.string.please_wait);
+        // Requested on the main thread, so that the tasks started in a row share one rebuild
+        result = service.requestApplyNewSettings();
     }
 
     @Override
     protected Void doInBackground(Void... params) {
-        service.applyNewSettings();
+        try {
+            result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.warn("Unable to apply new settings", e.getCause());
+        }
         return null;
     }
 
@@ -29,6 +29,8 @@ import android.widget.Filterable;
 import android.widget.TextView;
 
 import com.adguard.android.contentblocker.R;
+import com.adguard.lite.sdk.rules.RuleInfo;
+import com.adguard.lite.sdk.rules.RuleLexer;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -102,13 +104,14 @@ public class FilterRulesAdapter extends BaseAdapter implements Filterable {
 
         TextView textView = convertView.findViewById(R.id.itemTextView);
         String rule = getItem(position);
+        RuleInfo info = RuleLexer.lex(rule);
         textView.setText(rule);
-        textView.setTextColor(getRuleColor(rule));
+        textView.setTextColor(getRuleColor(info));
 
         AppCompatCheckBox checkBox = convertView.findViewById(R.id.checkBox);
         checkBox.setOnCheckedChangeListener(null);
         checkBox.setChecked(isItemChecked(rule));
-        if (isRuleComment(rule)) {
+        if (info.getType() == RuleInfo.Type.COMMENT) {
             checkBox.setVisibility(View.INVISIBLE);
         } else {
             checkBox.setVisibility(View.VISIBLE);
@@ -227,41 +230,33 @@ public class FilterRulesAdapter extends BaseAdapter implements Filterable {
         return !disabledItems.contains(item);
     }
 
-    /**
-     * Checks if this is a comment string
-     *
-     * @param rule Rule text
-     * @return true if this is a comment
-     */
-    private boolean isRuleComment(String rule) {
-        return StringUtils.startsWith(rule, "!") ||
-                StringUtils.startsWith(rule, "[Adblock");
-    }
-
     /**
      * Syntax highlighting depending on the rule type
      *
-     * @param rule Rule text
+     * @param info Lexed rule
      * @return Rule color
      */
-    private int getRuleColor(String rule) {
+    private int getRuleColor(RuleInfo info) {
 
         Resources resources = context.getResources();
-        if (isRuleComment(rule)) {
-            return resources.getColor(R.color.ruleColorCommentLight);
-        } else if (StringUtils.startsWith(rule, "@@")) {
-            return resources.getColor(R.color.ruleColorWhitelistLight);
-        } else if (StringUtils.containsAny(rule, "#%#", "#@%#")) {
-            return resources.getColor(R.color.ruleColorJavaScriptLight);
-        } else if (StringUtils.containsAny(rule, "#$#", "#@$#")) {
-            return resources.getColor(R.color.ruleColorCssInjectLight);
-        } else if (StringUtils.containsAny(rule, "##", "#@#")) {
-            return resources.getColor(R.color.ruleColorCssLight);
-        } else if (StringUtils.containsAny(rule, "$$", "$@$")) {
-            return resources.getColor(R.color.ruleColorContentLight);
+        switch (info.getType()) {
+            case COMMENT:
+                return resources.getColor(R.color.ruleColorCommentLight);
+            case NETWORK:
+                return info.isWhitelist()
+                        ? resources.getColor(R.color.ruleColorWhitelistLight)
+                        : resources.getColor(R.color.ruleColorDefaultLight);
+            case SCRIPT:
+                return resources.getColor(R.color.ruleColorJavaScriptLight);
+            case CSS_INJECTION:
+                return resources.getColor(R.color.ruleColorCssInjectLight);
+            case ELEMENT_HIDING:
+                return resources.getColor(R.color.ruleColorCssLight);
+            case CONTENT:
+                return resources.getColor(R.color.ruleColorContentLight);
+            default:
+                return resources.getColor(R.color.ruleColorDefaultLight);
         }
-
-        return resources.getColor(R.color.ruleColorDefaultLight);
     }
 
     /**
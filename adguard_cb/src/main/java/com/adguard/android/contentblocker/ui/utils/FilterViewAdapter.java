@@ -25,31 +25,46 @@ import android.widget.CheckBox;
 import android.widget.TextView;
 
 import com.adguard.android.contentblocker.R;
+import com.adguard.android.contentblocker.db.FilterListDao;
 import com.adguard.android.contentblocker.service.FilterService;
 import com.adguard.lite.sdk.model.FilterList;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
-public class FilterViewAdapter extends BaseAdapter implements View.OnClickListener {
+public class FilterViewAdapter extends BaseAdapter implements View.OnClickListener, FilterListDao.OnFilterListsChangedListener {
 
     private final Activity context;
     private final LayoutInflater layoutInflater;
     private final FilterService filterService;
 
+    private List<FilterList> filterLists = Collections.emptyList();
+
     public FilterViewAdapter(Activity context, FilterService filterService) {
         this.context = context;
         this.filterService = filterService;
         this.layoutInflater = LayoutInflater.from(context);
     }
 
+    /**
+     * Shows the filter lists, must be called on the UI thread
+     *
+     * @param filterLists Filter lists snapshot
+     */
+    public void setFilterLists(List<FilterList> filterLists) {
+        this.filterLists = filterLists;
+        notifyDataSetChanged();
+    }
+
     @Override
     public int getCount() {
-        return filterService.getFilterListCount();
+        return filterLists.size();
     }
 
     @Override
     public Object getItem(int position) {
-        return filterService.getFilters().get(position);
+        return filterLists.get(position);
     }
 
     @Override
@@ -63,7 +78,7 @@ public class FilterViewAdapter extends BaseAdapter implements View.OnClickListen
     }
 
     private View createViewFromResource(LayoutInflater inflater, int position, View convertView, ViewGroup parent) {
-        FilterList filterList = filterService.getFilters().get(position);
+        FilterList filterList = filterLists.get(position);
         View view;
         if (convertView == null) {
             view = inflater.inflate(R.layout.filter_list_item, parent, false);
@@ -95,11 +110,17 @@ public class FilterViewAdapter extends BaseAdapter implements View.OnClickListen
     @Override
     public void onClick(View v) {
         FilterList filterList = (FilterList) v.getTag();
-        filterService.updateFilterEnabled(filterList, !filterList.isEnabled());
-        ((CheckBox) v.findViewById(R.id.checkbox)).setChecked(filterList.isEnabled());
+        boolean enabled = !filterList.isEnabled();
+        filterService.updateFilterEnabled(filterList, enabled);
+        ((CheckBox) v.findViewById(R.id.checkbox)).setChecked(enabled);
         new ApplyAndRefreshTask(filterService, context).execute();
     }
 
+    @Override
+    public void onFilterListsChanged(final List<FilterList> filterLists) {
+        context.runOnUiThread(() -> setFilterLists(filterLists));
+    }
+
     private CharSequence getFilterSummaryText(FilterList filter) {
         StringBuilder sb = new StringBuilder();
 
@@ -0,0 +1,41 @@
+CREATE TABLE filter_lists (
+filter_list_id INTEGER,
+filter_name VARCHAR(255),
+filter_description VARCHAR(1024),
+enabled INTEGER,
+version VARCHAR(255),
+time_last_downloaded BIGINT, 
+time_updated BIGINT,
+display_order INTEGER
+);
+
+CREATE TABLE filters_localization (
+filter_list_id INTEGER,
+language_code VARCHAR(2),
+filter_name VARCHAR(255),
+filter_description VARCHAR(1024)
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS filters_localization_index ON filters_localization (filter_list_id, language_code);
+
+CREATE TABLE IF NOT EXISTS user_rules (
+rule_id INTEGER PRIMARY KEY,
+rule_text TEXT NOT NULL,
+enabled INTEGER NOT NULL DEFAULT 1
+);
+
+CREATE INDEX IF NOT EXISTS user_rules_text_index ON user_rules (rule_text);
+
+CREATE TABLE IF NOT EXISTS whitelist_rules (
+rule_id INTEGER PRIMARY KEY,
+rule_text TEXT NOT NULL,
+enabled INTEGER NOT NULL DEFAULT 1
+);
+
+CREATE INDEX IF NOT EXISTS whitelist_rules_text_index ON whitelist_rules (rule_text);
+
+
+CREATE TABLE IF NOT EXISTS script_hashes (
+script_name VARCHAR(255) PRIMARY KEY,
+script_hash VARCHAR(40)
+);
@@ -0,0 +1,6 @@
+DROP TABLE IF EXISTS filter_lists;
+DROP TABLE IF EXISTS filters_localization;
+DROP TABLE IF EXISTS traffic_stats;
+DROP TABLE IF EXISTS user_rules;
+DROP TABLE IF EXISTS whitelist_rules;
+DROP TABLE IF EXISTS script_hashes;
\ No newline at end of file
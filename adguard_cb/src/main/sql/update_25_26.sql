@@ -0,0 +1,15 @@
+CREATE TABLE IF NOT EXISTS user_rules (
+rule_id INTEGER PRIMARY KEY,
+rule_text TEXT NOT NULL,
+enabled INTEGER NOT NULL DEFAULT 1
+);
+
+CREATE INDEX IF NOT EXISTS user_rules_text_index ON user_rules (rule_text);
+
+CREATE TABLE IF NOT EXISTS whitelist_rules (
+rule_id INTEGER PRIMARY KEY,
+rule_text TEXT NOT NULL,
+enabled INTEGER NOT NULL DEFAULT 1
+);
+
+CREATE INDEX IF NOT EXISTS whitelist_rules_text_index ON whitelist_rules (rule_text);
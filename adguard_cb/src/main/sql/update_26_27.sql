@@ -0,0 +1,3 @@
+DELETE FROM filters_localization WHERE rowid NOT IN (SELECT MAX(rowid) FROM filters_localization GROUP BY filter_list_id, language_code);
+
+CREATE UNIQUE INDEX IF NOT EXISTS filters_localization_index ON filters_localization (filter_list_id, language_code);
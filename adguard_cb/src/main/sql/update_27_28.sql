@@ -0,0 +1,4 @@
+CREATE TABLE IF NOT EXISTS script_hashes (
+script_name VARCHAR(255) PRIMARY KEY,
+script_hash VARCHAR(40)
+);
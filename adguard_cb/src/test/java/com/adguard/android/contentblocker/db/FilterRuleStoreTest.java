@@ -0,0 +1,245 @@
+package com.adguard.android.contentblocker.db;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FilterRuleStoreTest {
+
+    private static final List<String> RULES = Arrays.asList(
+            "! Title: Test filter",
+            "||ads.example.org^",
+            "example.org##.banner",
+            "example.org#%#window.ads = false;",
+            "@@||example.org/ads.js$script",
+            "example.org$$script[data-ad]",
+            "example.org#$#body { overflow: auto !important; }");
+
+    /** Offset of the text CRC32 in the header */
+    private static final int CHECKSUM_OFFSET = 16;
+    private static final int HEADER_SIZE = 32;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File file = writeStore(Arrays.asList("  ||ads.example.org^  ", "", "   ", "example.org##.banner"));
+
+        FilterRuleStore.Reader reader = new FilterRuleStore.Reader(file);
+        try {
+            // Rules are trimmed and blank rules are skipped
+            assertEquals(2, reader.getRuleCount());
+            assertEquals("||ads.example.org^\nexample.org##.banner\n", transferRules(reader, FilterRuleStore.TYPE_ALL));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testRuleTypes() throws IOException {
+        File file = writeStore(RULES);
+
+        FilterRuleStore.Reader reader = new FilterRuleStore.Reader(file);
+        try {
+            assertEquals(RULES.size(), reader.getRuleCount());
+            assertEquals("||ads.example.org^\n@@||example.org/ads.js$script\n",
+                    transferRules(reader, FilterRuleStore.TYPE_NETWORK));
+            assertEquals("example.org##.banner\nexample.org#$#body { overflow: auto !important; }\n",
+                    transferRules(reader, FilterRuleStore.TYPE_COSMETIC));
+            assertEquals(Arrays.asList("example.org#%#window.ads = false;"), readRules(reader, FilterRuleStore.TYPE_SCRIPT));
+            assertEquals(Arrays.asList("example.org$$script[data-ad]"), readRules(reader, FilterRuleStore.TYPE_CONTENT));
+            assertEquals("! Title: Test filter\n||ads.example.org^\n@@||example.org/ads.js$script\n",
+                    transferRules(reader, FilterRuleStore.TYPE_NON_COSMETIC));
+            assertEquals(RULES, readRules(reader, FilterRuleStore.TYPE_ALL));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testManyBlocks() throws IOException {
+        // Enough rules for several blocks, one of the rules is longer than a block
+        List<String> rules = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            rules.add("||ads" + i + ".example.org^");
+        }
+        char[] longSelector = new char[100 * 1024];
+        Arrays.fill(longSelector, 'a');
+        rules.add(10000, "example.org##." + new String(longSelector));
+        File file = writeStore(rules);
+
+        FilterRuleStore.Reader reader = new FilterRuleStore.Reader(file);
+        try {
+            assertEquals(rules.size(), reader.getRuleCount());
+            assertEquals(rules, readRules(reader, FilterRuleStore.TYPE_ALL));
+            assertEquals(joinLines(rules), transferRules(reader, FilterRuleStore.TYPE_ALL));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testDeduplicationAcrossStores() throws IOException {
+        File first = writeStore(Arrays.asList("||ads.example.org^", "example.org##.banner", "||ads.example.org^"));
+        File second = writeStore(Arrays.asList("example.org##.banner", "||tracker.example.org^"));
+
+        RuleDeduplicator writtenRules = new RuleDeduplicator();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        int written = 0;
+        for (File file : Arrays.asList(first, second)) {
+            FilterRuleStore.Reader reader = new FilterRuleStore.Reader(file);
+            try {
+                written += reader.transferRules(FilterRuleStore.TYPE_ALL, writtenRules, writtenRules.addSource(),
+                        Channels.newChannel(outputStream));
+            } finally {
+                reader.close();
+            }
+        }
+
+        assertEquals(3, written);
+        assertEquals("||ads.example.org^\nexample.org##.banner\n||tracker.example.org^\n",
+                new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(0, writtenRules.getCrossDuplicates(0));
+        assertEquals(1, writtenRules.getCrossDuplicates(1));
+    }
+
+    @Test
+    public void testChecksumMismatch() throws IOException {
+        File file = writeStore(RULES);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(CHECKSUM_OFFSET);
+            long checksum = randomAccessFile.readLong();
+            randomAccessFile.seek(CHECKSUM_OFFSET);
+            randomAccessFile.writeLong(checksum + 1);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        // Header is valid, the checksum is verified when the rules are read
+        FilterRuleStore.Reader reader = new FilterRuleStore.Reader(file);
+        try {
+            assertEquals(RULES.size(), reader.getRuleCount());
+            transferRules(reader, FilterRuleStore.TYPE_ALL);
+            fail("Checksum mismatch must be reported");
+        } catch (FilterRuleStore.CorruptedStoreException expected) {
+            // Rules read so far are discarded by the caller
+        } finally {
+            reader.close();
+        }
+        assertNotReadable(file);
+    }
+
+    @Test
+    public void testCorruptedStore() throws IOException {
+        File file = writeStore(RULES);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        // Not a store
+        Files.write(file.toPath(), "||ads.example.org^\n".getBytes(StandardCharsets.UTF_8));
+        assertNotReadable(file);
+
+        // Truncated store
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 5));
+        assertNotReadable(file);
+
+        // Unsupported version
+        byte[] unsupported = bytes.clone();
+        unsupported[7] = 99;
+        Files.write(file.toPath(), unsupported);
+        assertNotReadable(file);
+
+        // Uncompressed stores of format version 1 are not read anymore, their filters are downloaded again
+        unsupported[7] = 1;
+        Files.write(file.toPath(), unsupported);
+        assertNotReadable(file);
+
+        // Corrupted text block
+        byte[] corrupted = bytes.clone();
+        for (int i = HEADER_SIZE; i < HEADER_SIZE + 8; i++) {
+            corrupted[i] = (byte) ~corrupted[i];
+        }
+        Files.write(file.toPath(), corrupted);
+        assertNotReadable(file);
+    }
+
+    @Test
+    public void testUncommittedWriter() throws IOException {
+        File file = writeStore(RULES);
+        byte[] committed = Files.readAllBytes(file.toPath());
+
+        FilterRuleStore.Writer writer = new FilterRuleStore.Writer(file);
+        writer.addRule("||other.example.org^");
+        writer.close();
+
+        // Store is not replaced and the temporary files are removed
+        assertArrayEquals(committed, Files.readAllBytes(file.toPath()));
+        assertEquals(1, folder.getRoot().listFiles().length);
+    }
+
+    private File writeStore(List<String> rules) throws IOException {
+        File file = folder.newFile();
+        FilterRuleStore.Writer writer = new FilterRuleStore.Writer(file);
+        try {
+            for (String rule : rules) {
+                writer.addRule(rule);
+            }
+            writer.commit();
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static String transferRules(FilterRuleStore.Reader reader, int typeMask) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        RuleDeduplicator writtenRules = new RuleDeduplicator();
+        reader.transferRules(typeMask, writtenRules, writtenRules.addSource(), Channels.newChannel(outputStream));
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readRules(FilterRuleStore.Reader reader, int typeMask) throws IOException {
+        List<String> rules = new ArrayList<>();
+        RuleDeduplicator readRules = new RuleDeduplicator();
+        reader.readUniqueRules(typeMask, readRules, readRules.addSource(), rules);
+        return rules;
+    }
+
+    private static String joinLines(List<String> rules) {
+        StringBuilder sb = new StringBuilder();
+        for (String rule : rules) {
+            sb.append(rule).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void assertNotReadable(File file) {
+        try {
+            FilterRuleStore.Reader reader = new FilterRuleStore.Reader(file);
+            try {
+                transferRules(reader, FilterRuleStore.TYPE_ALL);
+            } finally {
+                reader.close();
+            }
+            fail("Store must not be readable: " + file);
+        } catch (IOException expected) {
+            // Store is rejected
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.adguard.android.contentblocker.db;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RuleDeduplicatorTest {
+
+    @Test
+    public void testDuplicates() {
+        RuleDeduplicator rules = new RuleDeduplicator();
+        int source = rules.addSource();
+
+        assertTrue(add(rules, source, "||ads.example.org^"));
+        assertTrue(add(rules, source, "example.org##.banner"));
+        assertFalse(add(rules, source, "||ads.example.org^"));
+        assertTrue(add(rules, source, "||ads.example.org^$third-party"));
+
+        assertEquals(3, rules.size());
+        // Duplicates within a source are not counted as cross duplicates
+        assertEquals(0, rules.getCrossDuplicates(source));
+    }
+
+    @Test
+    public void testCrossDuplicates() {
+        RuleDeduplicator rules = new RuleDeduplicator();
+        int first = rules.addSource();
+        int second = rules.addSource();
+        int third = rules.addSource();
+
+        add(rules, first, "||ads.example.org^");
+        add(rules, first, "example.org##.banner");
+        add(rules, second, "||ads.example.org^");
+        add(rules, second, "||tracker.example.org^");
+        add(rules, third, "||ads.example.org^");
+        add(rules, third, "||tracker.example.org^");
+        add(rules, third, "example.org##.banner");
+
+        assertEquals(3, rules.size());
+        assertEquals(0, rules.getCrossDuplicates(first));
+        assertEquals(1, rules.getCrossDuplicates(second));
+        assertEquals(3, rules.getCrossDuplicates(third));
+    }
+
+    @Test
+    public void testManySources() {
+        RuleDeduplicator rules = new RuleDeduplicator();
+        for (int i = 0; i < 20; i++) {
+            int source = rules.addSource();
+            add(rules, source, "||ads.example.org^");
+            add(rules, source, "||ads" + i + ".example.org^");
+            assertEquals(i == 0 ? 0 : 1, rules.getCrossDuplicates(source));
+        }
+        assertEquals(21, rules.size());
+    }
+
+    @Test
+    public void testOffsetInBuffer() {
+        RuleDeduplicator rules = new RuleDeduplicator();
+        int source = rules.addSource();
+        ByteBuffer buffer = ByteBuffer.wrap("||a.org^\n||b.org^\n||a.org^\n".getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(rules.add(source, buffer, 0, 8));
+        assertTrue(rules.add(source, buffer, 9, 8));
+        assertFalse(rules.add(source, buffer, 18, 8));
+        // Prefix of a rule is another rule
+        assertTrue(rules.add(source, buffer, 0, 7));
+        assertEquals(3, rules.size());
+    }
+
+    @Test
+    public void testGrowth() {
+        RuleDeduplicator rules = new RuleDeduplicator();
+        int source = rules.addSource();
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(add(rules, source, "||ads" + i + ".example.org^"));
+        }
+        for (int i = 0; i < 100000; i += 7) {
+            assertFalse(add(rules, source, "||ads" + i + ".example.org^"));
+        }
+        assertEquals(100000, rules.size());
+    }
+
+    @Test
+    public void testHashCollisions() {
+        RuleDeduplicator rules = new RuleDeduplicator() {
+            @Override
+            long hash(ByteBuffer buffer, int offset, int length) {
+                return 42;
+            }
+        };
+        int first = rules.addSource();
+        int second = rules.addSource();
+
+        // Rules of the same length collide as well
+        assertTrue(add(rules, first, "||a.org^"));
+        assertTrue(add(rules, first, "||b.org^"));
+        assertTrue(add(rules, first, "##.banner"));
+        assertFalse(add(rules, first, "||b.org^"));
+        assertFalse(add(rules, second, "||a.org^"));
+        assertTrue(add(rules, second, "||c.org^"));
+
+        assertEquals(4, rules.size());
+        assertEquals(1, rules.getCrossDuplicates(second));
+    }
+
+    @Test
+    public void testHashCollisionsAfterGrowth() {
+        RuleDeduplicator rules = new RuleDeduplicator() {
+            @Override
+            long hash(ByteBuffer buffer, int offset, int length) {
+                // Few distinct hashes, so that every slot is shared by many rules
+                return 1 + (buffer.get(offset + length - 1) & 0x7);
+            }
+        };
+        int source = rules.addSource();
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(add(rules, source, "rule" + i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertFalse(add(rules, source, "rule" + i));
+        }
+        assertEquals(10000, rules.size());
+    }
+
+    private static boolean add(RuleDeduplicator rules, int source, String rule) {
+        byte[] bytes = rule.getBytes(StandardCharsets.UTF_8);
+        return rules.add(source, ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+}
@@ -0,0 +1,162 @@
+package com.adguard.android.contentblocker.service.compiler;
+
+import android.os.CancellationSignal;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs with Robolectric, as the scheduler cancels the compiles with a real {@link CancellationSignal}
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class CompileSchedulerTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPendingRequestsShareCompile() throws Exception {
+        List<Runnable> tasks = new ArrayList<>();
+        AtomicInteger compiles = new AtomicInteger();
+        CompileScheduler scheduler = new CompileScheduler(signal -> compiles.incrementAndGet(), tasks::add);
+
+        Future<Integer> first = scheduler.request();
+        Future<Integer> second = scheduler.request();
+        assertSame(first, second);
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        assertEquals(1, compiles.get());
+        assertEquals(1, (int) first.get(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLatestRequestWins() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        List<CancellationSignal> signals = new ArrayList<>();
+        CompileScheduler scheduler = new CompileScheduler(signal -> {
+            signals.add(signal);
+            if (signals.size() == 1) {
+                firstStarted.countDown();
+                // Stale compile runs until the newer request cancels it
+                while (!signal.isCanceled()) {
+                    Thread.yield();
+                }
+                signal.throwIfCanceled();
+            }
+            return signals.size();
+        }, executor);
+
+        Future<Integer> first = scheduler.request();
+        assertTrue(firstStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Future<Integer> second = scheduler.request();
+        Future<Integer> third = scheduler.request();
+
+        // Waiters of the cancelled compile get the result of the next one
+        assertSame(first, second);
+        assertSame(first, third);
+        assertEquals(2, (int) first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, signals.size());
+        assertTrue(signals.get(0).isCanceled());
+        assertFalse(signals.get(1).isCanceled());
+    }
+
+    @Test
+    public void testRequestAfterCompile() throws Exception {
+        AtomicInteger compiles = new AtomicInteger();
+        CompileScheduler scheduler = new CompileScheduler(signal -> compiles.incrementAndGet(), executor);
+
+        Future<Integer> first = scheduler.request();
+        assertEquals(1, (int) first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        Future<Integer> second = scheduler.request();
+        assertNotSame(first, second);
+        assertEquals(2, (int) second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCompileFailure() throws Exception {
+        IOException failure = new IOException("Cannot write segment");
+        CompileScheduler scheduler = new CompileScheduler(signal -> {
+            throw failure;
+        }, executor);
+
+        Future<Integer> result = scheduler.request();
+        try {
+            result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("Compile failure must be reported");
+        } catch (ExecutionException ex) {
+            assertSame(failure, ex.getCause());
+        }
+    }
+
+    @Test
+    public void testCompileError() throws Exception {
+        OutOfMemoryError error = new OutOfMemoryError();
+        AtomicInteger compiles = new AtomicInteger();
+        CompileScheduler scheduler = new CompileScheduler(signal -> {
+            if (compiles.incrementAndGet() == 1) {
+                throw error;
+            }
+            return compiles.get();
+        }, executor);
+
+        Future<Integer> first = scheduler.request();
+        try {
+            first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("Compile error must be reported");
+        } catch (ExecutionException ex) {
+            assertSame(error, ex.getCause());
+        }
+
+        // Scheduler is not stuck after the error
+        Future<Integer> second = scheduler.request();
+        assertNotSame(first, second);
+        assertEquals(2, (int) second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testResultCannotBeCancelled() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompileScheduler scheduler = new CompileScheduler(signal -> {
+            while (release.getCount() > 0) {
+                Thread.yield();
+            }
+            return 1;
+        }, executor);
+
+        Future<Integer> result = scheduler.request();
+        // One of the waiters cannot cancel the compile shared with the others
+        assertFalse(result.cancel(true));
+        release.countDown();
+        assertEquals(1, (int) result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,111 @@
+package com.adguard.android.contentblocker.service.compiler;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File manifestFile;
+    private File filtersFile;
+    private File userRulesFile;
+
+    @Before
+    public void setUp() throws IOException {
+        manifestFile = new File(folder.getRoot(), "segments.properties");
+        filtersFile = folder.newFile(Segment.FILTERS.getFileName());
+        userRulesFile = folder.newFile(Segment.USER_RULES.getFileName());
+    }
+
+    @Test
+    public void testEmptyManifest() {
+        SegmentManifest manifest = new SegmentManifest(manifestFile);
+        assertFalse(manifest.isUpToDate(Segment.FILTERS, filtersFile, "key"));
+        assertEquals(0, manifest.getRuleCount(Segment.FILTERS));
+    }
+
+    @Test
+    public void testUpdate() throws IOException {
+        SegmentManifest manifest = new SegmentManifest(manifestFile);
+        manifest.update(Segment.FILTERS, "filters-key", 100);
+
+        assertTrue(manifest.isUpToDate(Segment.FILTERS, filtersFile, "filters-key"));
+        assertFalse(manifest.isUpToDate(Segment.FILTERS, filtersFile, "other-key"));
+        assertFalse(manifest.isUpToDate(Segment.USER_RULES, userRulesFile, "filters-key"));
+        assertEquals(100, manifest.getRuleCount(Segment.FILTERS));
+        assertEquals(0, manifest.getRuleCount(Segment.USER_RULES));
+
+        manifest.update(Segment.FILTERS, "other-key", 50);
+        assertFalse(manifest.isUpToDate(Segment.FILTERS, filtersFile, "filters-key"));
+        assertTrue(manifest.isUpToDate(Segment.FILTERS, filtersFile, "other-key"));
+        assertEquals(50, manifest.getRuleCount(Segment.FILTERS));
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        SegmentManifest manifest = new SegmentManifest(manifestFile);
+        manifest.update(Segment.FILTERS, "filters-key", 100);
+        manifest.update(Segment.USER_RULES, "user-key", 3);
+
+        SegmentManifest reloaded = new SegmentManifest(manifestFile);
+        assertTrue(reloaded.isUpToDate(Segment.FILTERS, filtersFile, "filters-key"));
+        assertTrue(reloaded.isUpToDate(Segment.USER_RULES, userRulesFile, "user-key"));
+        assertEquals(100, reloaded.getRuleCount(Segment.FILTERS));
+        assertEquals(3, reloaded.getRuleCount(Segment.USER_RULES));
+    }
+
+    @Test
+    public void testMissingSegmentFile() throws IOException {
+        SegmentManifest manifest = new SegmentManifest(manifestFile);
+        manifest.update(Segment.FILTERS, "filters-key", 100);
+
+        assertTrue(filtersFile.delete());
+        assertFalse(manifest.isUpToDate(Segment.FILTERS, filtersFile, "filters-key"));
+    }
+
+    @Test
+    public void testFormatVersionChange() throws IOException {
+        writeManifest("format.version=1\nfilters.key=filters-key\nfilters.rules=100\n");
+
+        SegmentManifest manifest = new SegmentManifest(manifestFile);
+        assertFalse(manifest.isUpToDate(Segment.FILTERS, filtersFile, "filters-key"));
+        assertEquals(0, manifest.getRuleCount(Segment.FILTERS));
+    }
+
+    @Test
+    public void testNoFormatVersion() throws IOException {
+        writeManifest("filters.key=filters-key\nfilters.rules=100\n");
+
+        SegmentManifest manifest = new SegmentManifest(manifestFile);
+        assertFalse(manifest.isUpToDate(Segment.FILTERS, filtersFile, "filters-key"));
+    }
+
+    @Test
+    public void testInvalidRuleCount() throws IOException {
+        SegmentManifest manifest = new SegmentManifest(manifestFile);
+        manifest.update(Segment.FILTERS, "filters-key", 100);
+        String content = new String(Files.readAllBytes(manifestFile.toPath()), StandardCharsets.ISO_8859_1);
+        writeManifest(content.replace("filters.rules=100", "filters.rules=invalid"));
+
+        SegmentManifest reloaded = new SegmentManifest(manifestFile);
+        assertTrue(reloaded.isUpToDate(Segment.FILTERS, filtersFile, "filters-key"));
+        assertEquals(0, reloaded.getRuleCount(Segment.FILTERS));
+    }
+
+    private void writeManifest(String content) throws IOException {
+        Files.write(manifestFile.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.android.contentblocker.db;
+
+import com.adguard.benchmark.FilterCorpus;
+import com.adguard.lite.sdk.commons.io.IoUtils;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the filter rule stores, the part of the filters compile that does not need Android.
+ * <p>
+ * Stores are built from the bundled filters once, the benchmarks read them
+ * the way {@link FilterRuleDaoImpl} does when filters are compiled or selected.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterRuleStoreBenchmark {
+
+    private File storeDir;
+    private List<File> defaultStores;
+    private List<File> allStores;
+    private List<String> defaultFilterLines;
+    private List<String> allLines;
+
+    @Setup
+    public void setUp() throws IOException {
+        storeDir = Files.createTempDirectory("filter-stores").toFile();
+        allStores = new ArrayList<>();
+        defaultStores = new ArrayList<>();
+        for (int filterId : FilterCorpus.getFilterIds()) {
+            File store = new File(storeDir, filterId + ".store");
+            writeStore(FilterCorpus.readLines(filterId), store);
+            allStores.add(store);
+        }
+        for (int filterId : FilterCorpus.DEFAULT_FILTER_IDS) {
+            defaultStores.add(new File(storeDir, filterId + ".store"));
+        }
+        defaultFilterLines = FilterCorpus.readLines(FilterCorpus.DEFAULT_FILTER_IDS.get(0));
+        allLines = FilterCorpus.readAllLines();
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtils.deleteQuietly(storeDir);
+    }
+
+    /**
+     * FILTERS segment of the default filters, what the first compile after install writes
+     */
+    @Benchmark
+    public int transferDefaultFilters() throws IOException {
+        return transferRules(defaultStores, FilterRuleStore.TYPE_ALL);
+    }
+
+    /**
+     * FILTERS segment with every bundled filter enabled, the worst case of the compile
+     */
+    @Benchmark
+    public int transferAllFilters() throws IOException {
+        return transferRules(allStores, FilterRuleStore.TYPE_ALL);
+    }
+
+    /**
+     * Rules of the default filters as {@link FilterRuleDao#selectRuleTexts} reads them with cosmetics disabled
+     */
+    @Benchmark
+    public List<String> readUniqueDefaultRules() throws IOException {
+        RuleDeduplicator readRules = new RuleDeduplicator();
+        List<String> rules = new ArrayList<>();
+        for (File store : defaultStores) {
+            FilterRuleStore.Reader reader = new FilterRuleStore.Reader(store);
+            try {
+                reader.readUniqueRules(FilterRuleStore.TYPE_NON_COSMETIC, readRules, readRules.addSource(), rules);
+            } finally {
+                IoUtils.closeQuietly(reader);
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Store of the biggest default filter, written when the filter is updated
+     */
+    @Benchmark
+    public long writeDefaultFilterStore() throws IOException {
+        File store = new File(storeDir, "written.store");
+        writeStore(defaultFilterLines, store);
+        return store.length();
+    }
+
+    @Benchmark
+    public void classifyAllLines(Blackhole blackhole) {
+        for (String line : allLines) {
+            blackhole.consume(FilterRuleStore.classify(line));
+        }
+    }
+
+    private int transferRules(List<File> stores, int typeMask) throws IOException {
+        File output = new File(storeDir, "filters.txt");
+        RuleDeduplicator writtenRules = new RuleDeduplicator();
+        FileOutputStream outputStream = new FileOutputStream(output);
+        int written = 0;
+        try {
+            FileChannel channel = outputStream.getChannel();
+            for (File store : stores) {
+                FilterRuleStore.Reader reader = new FilterRuleStore.Reader(store);
+                try {
+                    written += reader.transferRules(typeMask, writtenRules, writtenRules.addSource(), channel);
+                } finally {
+                    IoUtils.closeQuietly(reader);
+                }
+            }
+        } finally {
+            IoUtils.closeQuietly(outputStream);
+        }
+        return written;
+    }
+
+    private static void writeStore(List<String> lines, File store) throws IOException {
+        FilterRuleStore.Writer writer = new FilterRuleStore.Writer(store);
+        try {
+            for (String line : lines) {
+                writer.addRule(line);
+            }
+            writer.commit();
+        } finally {
+            writer.close();
+        }
+    }
+}
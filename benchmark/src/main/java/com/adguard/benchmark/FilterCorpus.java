@@ -0,0 +1,99 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.benchmark;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Filters bundled with the app, used as the benchmark corpus.
+ * <p>
+ * The directory is set with the {@value #CORPUS_PROPERTY} system property,
+ * the jmh task passes adguard_cb/src/main/res/raw.
+ */
+public final class FilterCorpus {
+
+    /** Filters enabled by default for any language, see enable_default_filters.sql */
+    public static final List<Integer> DEFAULT_FILTER_IDS = Arrays.asList(2, 3, 4, 11);
+
+    private static final String CORPUS_PROPERTY = "benchmark.corpus";
+    private static final Pattern FILTER_FILE_NAME = Pattern.compile("filter_(\\d+)\\.txt");
+
+    private FilterCorpus() {
+    }
+
+    /**
+     * @return Ids of all the bundled filters, in ascending order
+     */
+    public static List<Integer> getFilterIds() {
+        File[] files = getDirectory().listFiles();
+        List<Integer> filterIds = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = FILTER_FILE_NAME.matcher(file.getName());
+                if (matcher.matches()) {
+                    filterIds.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        if (filterIds.isEmpty()) {
+            throw new IllegalStateException("No filters found in " + getDirectory());
+        }
+        filterIds.sort(Comparator.naturalOrder());
+        return filterIds;
+    }
+
+    /**
+     * Reads the lines of the bundled filter as is, comments and blank lines included
+     *
+     * @param filterId Filter id
+     * @return Filter lines
+     */
+    public static List<String> readLines(int filterId) throws IOException {
+        return FileUtils.readLines(new File(getDirectory(), "filter_" + filterId + ".txt"), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the lines of all the bundled filters
+     *
+     * @return Lines of the filters, in the order of filter ids
+     */
+    public static List<String> readAllLines() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int filterId : getFilterIds()) {
+            lines.addAll(readLines(filterId));
+        }
+        return lines;
+    }
+
+    private static File getDirectory() {
+        String path = System.getProperty(CORPUS_PROPERTY);
+        if (path == null) {
+            throw new IllegalStateException("Corpus directory is not set, run with -D" + CORPUS_PROPERTY + "=<filters dir>");
+        }
+        return new File(path);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p/>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p/>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk;
+
+import com.adguard.benchmark.FilterCorpus;
+import com.adguard.lite.sdk.model.FilterList;
+
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the filters metadata {@link ServiceApiClient#downloadFilterVersions} receives.
+ * <p>
+ * The metadata is built from the headers of the bundled filters,
+ * every bundled filter is checked for update as it is when all of them are enabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceApiClientBenchmark {
+
+    private static final String HEADER_TITLE = "! Title: ";
+    private static final String HEADER_DESCRIPTION = "! Description: ";
+    private static final String HEADER_VERSION = "! Version: ";
+    private static final String HEADER_TIME_UPDATED = "! TimeUpdated: ";
+
+    private List<FilterList> filters;
+    private String response;
+
+    @Setup
+    public void setUp() throws IOException {
+        filters = new ArrayList<>();
+        List<Map<String, Object>> metadata = new ArrayList<>();
+        for (int filterId : FilterCorpus.getFilterIds()) {
+            FilterList filter = new FilterList();
+            filter.setFilterId(filterId);
+            filters.add(filter);
+            metadata.add(readMetadata(filterId));
+        }
+        response = new ObjectMapper().writeValueAsString(Collections.singletonMap("filters", metadata));
+    }
+
+    @Benchmark
+    public List<FilterList> parseFilterVersions() {
+        return ServiceApiClient.parseFilterVersions(filters, response);
+    }
+
+    private static Map<String, Object> readMetadata(int filterId) throws IOException {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("filterId", filterId);
+        metadata.put("name", "Filter " + filterId);
+        metadata.put("description", "");
+        metadata.put("version", "1.0.0.0");
+        metadata.put("timeUpdated", "2019-01-01T00:00:00+0000");
+        for (String line : FilterCorpus.readLines(filterId)) {
+            if (!line.startsWith("!")) {
+                break;
+            }
+            if (line.startsWith(HEADER_TITLE)) {
+                metadata.put("name", StringUtils.substringAfter(line, HEADER_TITLE));
+            } else if (line.startsWith(HEADER_DESCRIPTION)) {
+                metadata.put("description", StringUtils.substringAfter(line, HEADER_DESCRIPTION));
+            } else if (line.startsWith(HEADER_VERSION)) {
+                metadata.put("version", StringUtils.substringAfter(line, HEADER_VERSION));
+            } else if (line.startsWith(HEADER_TIME_UPDATED)) {
+                // Filters have the zone offset as +03:00, the metadata as +0300
+                String timeUpdated = StringUtils.substringAfter(line, HEADER_TIME_UPDATED);
+                int colon = timeUpdated.lastIndexOf(':');
+                metadata.put("timeUpdated", timeUpdated.substring(0, colon) + timeUpdated.substring(colon + 1));
+            }
+        }
+        return metadata;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.rules;
+
+import com.adguard.benchmark.FilterCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-site cosmetic rule lookups in the index of the default filters
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CosmeticIndexBenchmark {
+
+    private static final String[] HOSTS = {
+            "www.youtube.com",
+            "m.facebook.com",
+            "news.yahoo.com",
+            "www.theguardian.com",
+            "edition.cnn.com",
+            "www.reddit.com",
+            "mail.google.com",
+            "www.amazon.co.uk",
+            "unknown.example.org"
+    };
+
+    private List<String> defaultRules;
+    private CosmeticIndex index;
+
+    @Setup
+    public void setUp() throws IOException {
+        defaultRules = new ArrayList<>();
+        for (int filterId : FilterCorpus.DEFAULT_FILTER_IDS) {
+            defaultRules.addAll(FilterCorpus.readLines(filterId));
+        }
+        index = buildIndex();
+    }
+
+    /**
+     * Site-specific rules of every host, what the per-site view lists
+     */
+    @Benchmark
+    public void getSpecificRules(Blackhole blackhole) {
+        for (String host : HOSTS) {
+            blackhole.consume(index.getRules(host, false));
+        }
+    }
+
+    @Benchmark
+    public void getAllRules(Blackhole blackhole) {
+        for (String host : HOSTS) {
+            blackhole.consume(index.getRules(host, true));
+        }
+    }
+
+    /**
+     * Indexing done by the compile when a segment of the default variant changes
+     */
+    @Benchmark
+    public CosmeticIndex buildIndex() {
+        CosmeticIndex.Builder builder = new CosmeticIndex.Builder();
+        for (String rule : defaultRules) {
+            builder.add(rule);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.rules;
+
+import com.adguard.benchmark.FilterCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * URL checks against the default filters, the rule set the test URL screen checks after the first run
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetworkRuleMatcherBenchmark {
+
+    private static final String DOCUMENT_URL = "https://news.example.com/2019/02/article.html";
+    private static final String[] URLS = {
+            "https://news.example.com/2019/02/article.html",
+            "https://news.example.com/static/js/app.min.js?v=3",
+            "https://cdn.example.net/images/photo-1024x768.jpg",
+            "https://pagead2.googlesyndication.com/pagead/js/adsbygoogle.js",
+            "https://www.google-analytics.com/analytics.js",
+            "https://connect.facebook.net/en_US/sdk.js#xfbml=1&version=v3.2",
+            "https://securepubads.g.doubleclick.net/gpt/pubads_impl_rendering_308.js",
+            "https://www.googletagmanager.com/gtm.js?id=GTM-XXXX",
+            "https://mc.yandex.ru/metrika/tag.js",
+            "https://platform.twitter.com/widgets.js",
+            "https://ads.exoclick.com/ads.php?type=300x250&login=test",
+            "https://fonts.googleapis.com/css?family=Roboto:400,700",
+            "https://api.example.com/v1/comments?article=12345&page=2",
+            "https://s0.2mdn.net/ads/richmedia/studio/pv2/banner.html",
+            "https://static.criteo.net/js/ld/publishertag.js",
+            "https://example.com/wp-content/plugins/adrotate/library/jquery.adrotate.dyngroup.js"
+    };
+
+    private List<String> defaultRules;
+    private NetworkRuleMatcher matcher;
+
+    @Setup
+    public void setUp() throws IOException {
+        defaultRules = new ArrayList<>();
+        for (int filterId : FilterCorpus.DEFAULT_FILTER_IDS) {
+            defaultRules.addAll(FilterCorpus.readLines(filterId));
+        }
+        matcher = new NetworkRuleMatcher(defaultRules);
+    }
+
+    /**
+     * Checks every URL once, the score is divided by the number of URLs for the time of a single check
+     */
+    @Benchmark
+    public void matchUrls(Blackhole blackhole) {
+        for (String url : URLS) {
+            blackhole.consume(matcher.match(url, DOCUMENT_URL));
+        }
+    }
+
+    /**
+     * Parses and indexes the rules, what the first check after a compile waits for
+     */
+    @Benchmark
+    public NetworkRuleMatcher buildMatcher() {
+        return new NetworkRuleMatcher(defaultRules);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+
+ AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by the
+ Free Software Foundation, either version 3 of the License, or (at your option)
+ any later version.
+
+ AdGuard Content Blocker is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.rules;
+
+import com.adguard.benchmark.FilterCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optimization of the merged rules of the bundled filters
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RuleOptimizerBenchmark {
+
+    private List<String> lines;
+
+    @Setup
+    public void setUp() throws IOException {
+        lines = new ArrayList<>(new LinkedHashSet<>(FilterCorpus.readAllLines()));
+    }
+
+    @Benchmark
+    public int optimizeAllLines() {
+        RuleOptimizer optimizer = new RuleOptimizer();
+        BitSet changedLines = new BitSet(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            if (optimizer.collect(lines.get(i))) {
+                changedLines.set(i);
+            }
+        }
+        int kept = lines.size();
+        for (int i = changedLines.nextSetBit(0); i >= 0; i = changedLines.nextSetBit(i + 1)) {
+            if (optimizer.optimize(lines.get(i)) == null) {
+                kept--;
+            }
+        }
+        return kept;
+    }
+}
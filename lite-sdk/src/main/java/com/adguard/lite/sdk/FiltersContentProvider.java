@@ -20,48 +20,117 @@ import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Binder;
 import android.os.ParcelFileDescriptor;
+import android.os.Trace;
 
 import androidx.annotation.NonNull;
 
 import com.adguard.lite.R;
+import com.adguard.lite.sdk.commons.io.GenerationalFile;
 import com.adguard.lite.sdk.commons.io.IoUtils;
 
 import org.apache.commons.io.IOUtils;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class FiltersContentProvider extends ContentProvider {
 
-    private static final String FILTERS_FILE_PATH = "/filters.txt";
-    private static final String FILTERS_FILE = "/filters.txt";
+    /**
+     * Filters precompiled by the app at build time, the raw default_filter is used if the app has none
+     */
+    private static final String PREBUILT_FILTERS_ASSET = "default_filters.txt";
 
-    private String filtersPath;
+    /**
+     * Filters written in place by older versions of the app. They are compiled with the user settings,
+     * so they are served after the upgrade until the app publishes the filters compiled by the new version.
+     */
+    private static final String LEGACY_FILTERS_FILE = "filters.txt";
+
+    private final Map<Integer, FiltersVariant> callerVariants = new ConcurrentHashMap<>();
+    private final Map<FiltersVariant, GenerationalFile> filtersFiles = new EnumMap<>(FiltersVariant.class);
 
     @Override
     public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
-        File filterFile = new File(filtersPath);
-        if (!filterFile.exists()) {
-            InputStream inputStream = null;
-            OutputStream outputStream = null;
-            try {
-                inputStream = getContext().getResources().openRawResource(R.raw.default_filter);
-                outputStream = new FileOutputStream(filterFile);
-                IOUtils.copy(inputStream, outputStream);
-            } catch (Exception e) {
-                throw new FileNotFoundException("Unable to open file " + filtersPath + " and open default_filter.text from resources/raw! Please save filter rules in that file and try again.");
-            } finally {
-                IoUtils.closeQuietly(inputStream);
-                IoUtils.closeQuietly(outputStream);
+        Trace.beginSection("FiltersContentProvider.openFile");
+        try {
+            FiltersVariant variant = getCallerVariant();
+            File filterFile = filtersFiles.get(variant).getCurrent();
+            if (filterFile == null && variant != FiltersVariant.DEFAULT) {
+                // Variant has not been compiled yet (e.g. the browser has just been installed)
+                filterFile = filtersFiles.get(FiltersVariant.DEFAULT).getCurrent();
+            }
+            if (filterFile == null) {
+                filterFile = publishDefaultFilter();
+            }
+
+            return ParcelFileDescriptor.open(filterFile, ParcelFileDescriptor.MODE_READ_ONLY);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Gets the filters variant for the calling browser.
+     * Package lookup is an IPC call, so variants are cached by uid.
+     */
+    private FiltersVariant getCallerVariant() {
+        int uid = Binder.getCallingUid();
+        FiltersVariant variant = callerVariants.get(uid);
+        if (variant == null) {
+            variant = FiltersVariant.forUid(getContext(), uid);
+            callerVariants.put(uid, variant);
+        }
+        return variant;
+    }
+
+    /**
+     * Publishes the filters of an older version of the app, the prebuilt filters from assets
+     * or the default filter from resources as the first generation of the filters file
+     */
+    private File publishDefaultFilter() throws FileNotFoundException {
+        File filterFile = null;
+        InputStream inputStream = null;
+        OutputStream outputStream = null;
+        try {
+            filterFile = filtersFiles.get(FiltersVariant.DEFAULT).newGeneration();
+            inputStream = openDefaultFilter();
+            outputStream = new FileOutputStream(filterFile);
+            IOUtils.copy(inputStream, outputStream);
+            outputStream.close();
+            // Compiled filters may have been published in the meantime, they must not be replaced
+            return filtersFiles.get(FiltersVariant.DEFAULT).publishIfAbsent(filterFile);
+        } catch (Exception e) {
+            if (filterFile != null) {
+                filtersFiles.get(FiltersVariant.DEFAULT).discard(filterFile);
             }
+            throw new FileNotFoundException("Unable to open filters file and open default_filter.text from resources/raw! Please save filter rules in that file and try again.");
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+            IoUtils.closeQuietly(outputStream);
         }
+    }
 
-        return ParcelFileDescriptor.open(filterFile, ParcelFileDescriptor.MODE_READ_ONLY);
+    private InputStream openDefaultFilter() {
+        try {
+            return new FileInputStream(new File(getContext().getFilesDir(), LEGACY_FILTERS_FILE));
+        } catch (FileNotFoundException e) {
+            // Not an upgrade from a version that wrote the filters in place
+        }
+        try {
+            return getContext().getAssets().open(PREBUILT_FILTERS_ASSET);
+        } catch (IOException e) {
+            return getContext().getResources().openRawResource(R.raw.default_filter);
+        }
     }
 
     @Override
@@ -71,7 +140,9 @@ public class FiltersContentProvider extends ContentProvider {
 
     @Override
     public boolean onCreate() {
-        filtersPath = getContext().getFilesDir().getAbsolutePath() + FILTERS_FILE_PATH;
+        for (FiltersVariant variant : FiltersVariant.values()) {
+            filtersFiles.put(variant, variant.createFile(getContext()));
+        }
         return true;
     }
 
@@ -0,0 +1,110 @@
+/*
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p/>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p/>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+
+import com.adguard.lite.sdk.commons.BrowserUtils;
+import com.adguard.lite.sdk.commons.io.GenerationalFile;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Variant of the compiled filters served to a browser.
+ * Every browser gets the rules in a form its content blocking engine supports,
+ * unknown callers get the {@link #DEFAULT} variant containing everything.
+ */
+public enum FiltersVariant {
+
+    DEFAULT("filters.txt", null),
+    YANDEX("filters-yandex.txt", BrowserUtils.YANDEX_BROWSER_PACKAGE),
+    SAMSUNG("filters-samsung.txt", BrowserUtils.SAMSUNG_BROWSER_PACKAGE);
+
+    private static final String FILTERS_DIR = "published";
+
+    private final String fileName;
+    private final String packagePrefix;
+
+    FiltersVariant(String fileName, String packagePrefix) {
+        this.fileName = fileName;
+        this.packagePrefix = packagePrefix;
+    }
+
+    /**
+     * Creates the file this variant is published to and served from
+     *
+     * @param context Context
+     * @return Filters file
+     */
+    public GenerationalFile createFile(Context context) {
+        return new GenerationalFile(new File(context.getFilesDir(), FILTERS_DIR), fileName);
+    }
+
+    /**
+     * Gets the variant for the browser package
+     *
+     * @param packageName Package name
+     * @return Variant or {@link #DEFAULT} if the package is not a known browser
+     */
+    public static FiltersVariant forPackage(String packageName) {
+        for (FiltersVariant variant : values()) {
+            if (variant.packagePrefix != null && packageName != null && packageName.startsWith(variant.packagePrefix)) {
+                return variant;
+            }
+        }
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the variant for the application with the specified uid
+     *
+     * @param context Context
+     * @param uid     Application uid
+     * @return Variant or {@link #DEFAULT} if the uid does not belong to a known browser
+     */
+    public static FiltersVariant forUid(Context context, int uid) {
+        String[] packages = context.getPackageManager().getPackagesForUid(uid);
+        if (packages != null) {
+            for (String packageName : packages) {
+                FiltersVariant variant = forPackage(packageName);
+                if (variant != DEFAULT) {
+                    return variant;
+                }
+            }
+        }
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the variants needed by the installed browsers
+     *
+     * @param context Context
+     * @return Set of variants, {@link #DEFAULT} is always included
+     */
+    public static Set<FiltersVariant> getInstalled(Context context) {
+        Set<FiltersVariant> result = EnumSet.of(DEFAULT);
+        List<PackageInfo> packages = context.getPackageManager().getInstalledPackages(0);
+        for (PackageInfo packageInfo : packages) {
+            result.add(forPackage(packageInfo.packageName));
+        }
+        return result;
+    }
+}
@@ -17,6 +17,9 @@
 package com.adguard.lite.sdk;
 
 import com.adguard.lite.sdk.api.HttpServiceClient;
+import com.adguard.lite.sdk.commons.io.LineHandler;
+import com.adguard.lite.sdk.commons.web.ConditionalResponse;
+import com.adguard.lite.sdk.commons.web.HttpStatusException;
 import com.adguard.lite.sdk.commons.web.UrlUtils;
 import com.adguard.lite.sdk.model.FilterList;
 import com.adguard.lite.sdk.model.FiltersI18nJsonDto;
@@ -57,37 +60,139 @@ public class ServiceApiClient extends HttpServiceClient {
      * @return List of rules
      */
     public static List<String> downloadFilterRules(int filterId, String filtersUrl) throws IOException {
+        final List<String> filterRules = new ArrayList<>();
+        downloadFilterRules(filterId, filtersUrl, new LineHandler() {
+            @Override
+            public void handleLine(String rule) {
+                filterRules.add(rule);
+            }
+        });
+        return filterRules;
+    }
+
+    /**
+     * Downloads filter rules and passes them to the handler as soon as they are read.
+     * Rules are trimmed, empty lines are skipped.
+     *
+     * @param filterId Filter id
+     * @param handler  Handler of the filter rules
+     * @throws IOException if rules cannot be downloaded, the response is empty or the handler fails
+     */
+    public static void downloadFilterRules(int filterId, String filtersUrl, final LineHandler handler) throws IOException {
+        downloadFilterText(filterId, filtersUrl, new LineHandler() {
+            @Override
+            public void handleLine(String line) throws IOException {
+                String rule = StringUtils.trim(line);
+                if (!StringUtils.isEmpty(rule)) {
+                    handler.handleLine(rule);
+                }
+            }
+        });
+    }
+
+    /**
+     * Downloads filter text and passes its lines to the handler as is.
+     * Unlike {@link #downloadFilterRules(int, String, LineHandler)} lines are not trimmed and empty lines are kept,
+     * so the text can be used as a base for differential updates.
+     *
+     * @param filterId Filter id
+     * @param handler  Handler of the filter lines
+     * @throws IOException if the text cannot be downloaded, the response is empty or the handler fails
+     */
+    public static void downloadFilterText(int filterId, String filtersUrl, final LineHandler handler) throws IOException {
         String downloadUrl = filtersUrl.replace("{0}", UrlUtils.urlEncode(Integer.toString(filterId)));
 
         LOG.info("Sending request to {}", downloadUrl);
-        String response = downloadString(downloadUrl);
-
-        LOG.debug("Response length is {}", response.length());
-        String[] rules = StringUtils.split(response, "\r\n");
-        List<String> filterRules = new ArrayList<>();
-        for (String line : rules) {
-            String rule = StringUtils.trim(line);
-            if (!StringUtils.isEmpty(rule)) {
-                filterRules.add(rule);
+        final int[] ruleCount = {0};
+        downloadLines(downloadUrl, new LineHandler() {
+            @Override
+            public void handleLine(String line) throws IOException {
+                handler.handleLine(line);
+                if (!StringUtils.isBlank(line)) {
+                    ruleCount[0]++;
+                }
             }
+        });
+
+        if (ruleCount[0] == 0) {
+            LOG.error("Response for {} is empty", downloadUrl);
+            throw new IOException("Response is empty.");
         }
+        LOG.debug("Downloaded {} rules", ruleCount[0]);
+    }
 
-        return filterRules;
+    /**
+     * Downloads filter patch for differential update
+     *
+     * @param patchUrl Patch url
+     * @return Lines of the patch or null if the patch does not exist yet (the filter is up to date)
+     * @throws IOException if the patch cannot be downloaded
+     */
+    public static List<String> downloadFilterPatch(String patchUrl) throws IOException {
+        LOG.info("Sending request to {}", patchUrl);
+        final List<String> lines = new ArrayList<>();
+        try {
+            downloadLines(patchUrl, new LineHandler() {
+                @Override
+                public void handleLine(String line) {
+                    lines.add(line);
+                }
+            });
+        } catch (HttpStatusException ex) {
+            if (ex.getStatusCode() == 404) {
+                LOG.debug("Patch {} does not exist", patchUrl);
+                return null;
+            }
+            throw ex;
+        }
+
+        LOG.debug("Downloaded patch of {} lines", lines.size());
+        return lines;
     }
 
     /**
-     * Downloads filters localizations
+     * Downloads filters localizations sending validators of the previous response.
+     * Use {@link #parseFiltersLocalizations(ConditionalResponse)} to map the response.
      *
-     * @return {@link FiltersI18nJsonDto}
-     * @throws IOException if downloading or mapping failed
+     * @param filterLocalizationsUrl Filters localizations url
+     * @return Filters localizations response
+     * @throws IOException if downloading failed
      */
-    public static FiltersI18nJsonDto downloadFiltersLocalizations(String filterLocalizationsUrl) throws IOException {
+    public static ConditionalResponse downloadFiltersLocalizations(String filterLocalizationsUrl) throws IOException {
         LOG.info("Sending request to {}", filterLocalizationsUrl);
-        String response = downloadString(filterLocalizationsUrl);
-        if (StringUtils.isBlank(response)) {
+        ConditionalResponse response = downloadStringConditional(filterLocalizationsUrl);
+        if (StringUtils.isBlank(response.getBody())) {
             throw new IOException("Failed to download filters localizations. Response is empty.");
         }
-        return OBJECT_MAPPER.readValue(response, FiltersI18nJsonDto.class);
+        return response;
+    }
+
+    /**
+     * Maps filters localizations response
+     *
+     * @param response Filters localizations response
+     * @return {@link FiltersI18nJsonDto} or null if localizations have not been modified since the previous request
+     * @throws IOException if mapping failed
+     */
+    public static FiltersI18nJsonDto parseFiltersLocalizations(ConditionalResponse response) throws IOException {
+        if (response.isNotModified()) {
+            LOG.info("Filters localizations have not been modified");
+            return null;
+        }
+        return OBJECT_MAPPER.readValue(response.getBody(), FiltersI18nJsonDto.class);
+    }
+
+    /**
+     * Downloads filters metadata (filters.js) sending validators of the previous response.
+     * If the metadata has not been modified, the body of the previous response is returned.
+     *
+     * @param checkFilterVersionsUrl Filters metadata url
+     * @return Filters metadata response
+     * @throws IOException if downloading failed
+     */
+    public static ConditionalResponse downloadFiltersMetadata(String checkFilterVersionsUrl) throws IOException {
+        LOG.info("Sending request to {}", checkFilterVersionsUrl);
+        return downloadStringConditional(checkFilterVersionsUrl);
     }
 
     /**
@@ -98,7 +203,17 @@ public class ServiceApiClient extends HttpServiceClient {
      */
     public static List<FilterList> downloadFilterVersions(List<FilterList> filters, String checkFilterVerionsUrl) throws IOException {
         LOG.info("Sending request to {}", checkFilterVerionsUrl);
-        String response = downloadString(checkFilterVerionsUrl);
+        return parseFilterVersions(filters, downloadString(checkFilterVerionsUrl));
+    }
+
+    /**
+     * Parses filter versions from the filters metadata.
+     *
+     * @param filters  list
+     * @param response filters metadata
+     * @return filters list with parsed versions
+     */
+    public static List<FilterList> parseFilterVersions(List<FilterList> filters, String response) {
         if (StringUtils.isBlank(response)) {
             return null;
         }
@@ -16,6 +16,9 @@
  */
 package com.adguard.lite.sdk.api;
 
+import com.adguard.lite.sdk.commons.io.LineHandler;
+import com.adguard.lite.sdk.commons.web.ConditionalResponse;
+import com.adguard.lite.sdk.commons.web.HttpValidatorCache;
 import com.adguard.lite.sdk.commons.web.UrlUtils;
 
 import org.apache.commons.lang3.StringUtils;
@@ -36,6 +39,24 @@ public class HttpServiceClient {
     private static final int CONNECTION_TIMEOUT = 10000; // 10 seconds
     private static final int READ_TIMEOUT = 30000; // 30 seconds
 
+    private static volatile HttpValidatorCache validatorCache;
+
+    /**
+     * Sets the cache of HTTP validators used by conditional requests.
+     *
+     * @param cache Validator cache or null to disable conditional requests
+     */
+    public static void setValidatorCache(HttpValidatorCache cache) {
+        validatorCache = cache;
+    }
+
+    /**
+     * @return Cache of HTTP validators or null if it is not set
+     */
+    public static HttpValidatorCache getValidatorCache() {
+        return validatorCache;
+    }
+
     /**
      * Downloads string from the specified url.
      *
@@ -55,6 +76,43 @@ public class HttpServiceClient {
         return response;
     }
 
+    /**
+     * Downloads string from the specified url sending validators of the previous response.
+     * If the validator cache is not set, the string is always downloaded in full.
+     *
+     * @param downloadUrl Download url
+     * @return Response
+     * @throws IOException if the response is empty
+     */
+    protected static ConditionalResponse downloadStringConditional(String downloadUrl) throws IOException {
+        HttpValidatorCache cache = validatorCache;
+        if (cache == null) {
+            return new ConditionalResponse(downloadString(downloadUrl), false);
+        }
+
+        LOG.debug("Sending conditional HTTP GET request to {}", downloadUrl);
+        final ConditionalResponse response = UrlUtils.downloadStringConditional(new URL(downloadUrl), READ_TIMEOUT, CONNECTION_TIMEOUT, "utf-8", cache);
+        if (response == null || StringUtils.isEmpty(response.getBody())) {
+            LOG.error("Response for {} is empty", downloadUrl);
+            throw new IOException("Response is empty.");
+        }
+
+        LOG.debug("Got response: notModified={} length={}", response.isNotModified(), response.getBody().length());
+        return response;
+    }
+
+    /**
+     * Downloads text from the specified url line by line.
+     *
+     * @param downloadUrl Download url
+     * @param handler     Handler of the response lines
+     * @throws IOException if the text cannot be downloaded or the handler fails
+     */
+    protected static void downloadLines(String downloadUrl, LineHandler handler) throws IOException {
+        LOG.debug("Sending HTTP GET request to {}", downloadUrl);
+        UrlUtils.downloadLines(new URL(downloadUrl), READ_TIMEOUT, CONNECTION_TIMEOUT, "utf-8", handler);
+    }
+
     /**
      * Posts request with specified parameters to url.
      *
@@ -0,0 +1,43 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.commons;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hash functions used for cache keys and content checks
+ */
+public class HashUtils {
+
+    /**
+     * Calculates SHA-1 hash of the text
+     *
+     * @param text Text, it is hashed in UTF-8
+     * @return Hex string without the leading zeros
+     */
+    public static String sha1(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return new BigInteger(1, digest.digest(text.getBytes(StandardCharsets.UTF_8))).toString(16);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not supported", ex);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.commons.diff;
+
+import com.adguard.lite.sdk.commons.io.LineHandler;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Line-based patch in the RCS format (the output of {@code diff -n}), as served by filter hosts for differential updates.
+ * <p>
+ * A patch file may contain several patches, each one is preceded by a header line:
+ * <pre>
+ * diff name:&lt;name&gt; checksum:&lt;sha1&gt; lines:&lt;number of patch lines&gt;
+ * </pre>
+ * The body consists of {@code aN M} commands (add M lines after the line N of the original text, followed by these lines)
+ * and {@code dN M} commands (delete M lines starting with the line N of the original text).
+ * Commands are sorted by the line number, so the patch is applied in a single pass over the original text.
+ * <p>
+ * The checksum is a SHA-1 hash of the resulting text where every line is terminated with "\n".
+ */
+public class RcsPatch {
+
+    private static final String HEADER_PREFIX = "diff ";
+    private static final String NAME_FIELD = "name:";
+    private static final String CHECKSUM_FIELD = "checksum:";
+    private static final String LINES_FIELD = "lines:";
+
+    private final String checksum;
+    private final List<Command> commands;
+
+    private RcsPatch(String checksum, List<Command> commands) {
+        this.checksum = checksum;
+        this.commands = commands;
+    }
+
+    /**
+     * Parses the patch
+     *
+     * @param lines        Lines of the patch file
+     * @param resourceName Name of the patch to take from the file or null to take the first one
+     * @return Parsed patch
+     * @throws IOException if the patch is malformed or there is no patch with the specified name
+     */
+    public static RcsPatch parse(List<String> lines, String resourceName) throws IOException {
+        int index = 0;
+        while (index < lines.size()) {
+            String line = lines.get(index);
+            if (StringUtils.isEmpty(line)) {
+                index++;
+                continue;
+            }
+
+            if (!line.startsWith(HEADER_PREFIX)) {
+                // Patch without a header, the whole file is a single patch
+                if (resourceName != null) {
+                    throw new IOException("Patch " + resourceName + " is not found");
+                }
+                return new RcsPatch(null, parseCommands(lines, index, lines.size()));
+            }
+
+            String name = null;
+            String checksum = null;
+            int length = -1;
+            for (String field : StringUtils.split(line.substring(HEADER_PREFIX.length()), ' ')) {
+                if (field.startsWith(NAME_FIELD)) {
+                    name = field.substring(NAME_FIELD.length());
+                } else if (field.startsWith(CHECKSUM_FIELD)) {
+                    checksum = field.substring(CHECKSUM_FIELD.length());
+                } else if (field.startsWith(LINES_FIELD)) {
+                    length = parseNumber(field.substring(LINES_FIELD.length()), line);
+                }
+            }
+
+            int start = index + 1;
+            int end = length < 0 ? lines.size() : start + length;
+            if (end > lines.size()) {
+                throw new IOException("Patch is truncated: " + line);
+            }
+            if (resourceName == null || resourceName.equals(name)) {
+                return new RcsPatch(checksum, parseCommands(lines, start, end));
+            }
+            if (length < 0) {
+                break;
+            }
+            index = end;
+        }
+
+        if (resourceName != null) {
+            throw new IOException("Patch " + resourceName + " is not found");
+        }
+        return new RcsPatch(null, Collections.<Command>emptyList());
+    }
+
+    /**
+     * @return Expected SHA-1 hash of the patched text or null if the patch does not specify it
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Applies the patch to the text and verifies the checksum of the result (if the patch specifies it).
+     * Lines of the result are passed to the output as soon as they are ready,
+     * so the output must be discarded if this method throws.
+     *
+     * @param original Original text
+     * @param output   Handler of the patched lines
+     * @throws IOException if the patch does not match the text, the checksum of the result is wrong or the output fails
+     */
+    public void apply(BufferedReader original, LineHandler output) throws IOException {
+        MessageDigest digest = createDigest();
+        int position = 0;
+        for (Command command : commands) {
+            // Delete command refers to the first deleted line, add command refers to the line to insert after
+            int target = command.add ? command.line : command.line - 1;
+            if (target < position) {
+                throw new IOException("Patch commands are not sorted");
+            }
+            for (; position < target; position++) {
+                writeLine(readLine(original), output, digest);
+            }
+
+            if (command.add) {
+                for (String line : command.lines) {
+                    writeLine(line, output, digest);
+                }
+            } else {
+                for (int i = 0; i < command.count; i++) {
+                    readLine(original);
+                }
+                position += command.count;
+            }
+        }
+
+        String line;
+        while ((line = original.readLine()) != null) {
+            writeLine(line, output, digest);
+        }
+
+        if (checksum != null) {
+            String actual = StringUtils.leftPad(new BigInteger(1, digest.digest()).toString(16), 40, '0');
+            if (!actual.equalsIgnoreCase(checksum)) {
+                throw new IOException("Checksum mismatch: expected " + checksum + " but was " + actual);
+            }
+        }
+    }
+
+    private static List<Command> parseCommands(List<String> lines, int start, int end) throws IOException {
+        List<Command> commands = new ArrayList<>();
+        int index = start;
+        while (index < end) {
+            String line = lines.get(index++);
+            if (StringUtils.isEmpty(line)) {
+                continue;
+            }
+
+            char type = line.charAt(0);
+            String[] parts = StringUtils.split(line.substring(1), ' ');
+            if ((type != 'a' && type != 'd') || parts.length != 2) {
+                throw new IOException("Invalid patch command: " + line);
+            }
+
+            int lineNumber = parseNumber(parts[0], line);
+            int count = parseNumber(parts[1], line);
+            if (type == 'a') {
+                if (index + count > end) {
+                    throw new IOException("Patch is truncated: " + line);
+                }
+                commands.add(new Command(true, lineNumber, count, new ArrayList<>(lines.subList(index, index + count))));
+                index += count;
+            } else {
+                if (lineNumber < 1) {
+                    throw new IOException("Invalid patch command: " + line);
+                }
+                commands.add(new Command(false, lineNumber, count, Collections.<String>emptyList()));
+            }
+        }
+        return commands;
+    }
+
+    private static int parseNumber(String value, String line) throws IOException {
+        try {
+            int number = Integer.parseInt(value);
+            if (number < 0) {
+                throw new IOException("Invalid number in patch line: " + line);
+            }
+            return number;
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid number in patch line: " + line, ex);
+        }
+    }
+
+    private static String readLine(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new IOException("Patch refers to a line beyond the end of the text");
+        }
+        return line;
+    }
+
+    private static void writeLine(String line, LineHandler output, MessageDigest digest) throws IOException {
+        digest.update(line.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+        output.handleLine(line);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not supported", ex);
+        }
+    }
+
+    /**
+     * Single patch command
+     */
+    private static class Command {
+
+        private final boolean add;
+        private final int line;
+        private final int count;
+        private final List<String> lines;
+
+        Command(boolean add, int line, int count, List<String> lines) {
+            this.add = add;
+            this.line = line;
+            this.count = count;
+            this.lines = lines;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.commons.io;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * File published in generations.
+ * <p>
+ * Every new version of the file is written to a new generation file, which is synced to disk
+ * and then published by atomically replacing the pointer file with the name of the new generation.
+ * Readers resolve the pointer and open the current generation, so they never see a partially written file,
+ * and descriptors they already hold remain valid as the older generations are never rewritten.
+ * The previous generation is kept for readers that have resolved the pointer but not opened the file yet.
+ */
+public class GenerationalFile {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GenerationalFile.class);
+
+    private static final String POINTER_SUFFIX = ".current";
+
+    /**
+     * Generations are allocated and published by different components (e.g. content provider and compiler),
+     * so the lock is shared by all the instances
+     */
+    private static final Object LOCK = new Object();
+
+    private final File directory;
+    private final String baseName;
+    private final String extension;
+    private final File pointerFile;
+
+    /**
+     * Creates an instance of the file
+     *
+     * @param directory Directory to keep the generations in
+     * @param name      File name, generation files are named {@code <base name>.<generation>.<extension>}
+     */
+    public GenerationalFile(File directory, String name) {
+        this.directory = directory;
+        this.baseName = StringUtils.substringBeforeLast(name, ".");
+        this.extension = StringUtils.substringAfterLast(name, ".");
+        this.pointerFile = new File(directory, name + POINTER_SUFFIX);
+    }
+
+    /**
+     * Gets the current generation of the file
+     *
+     * @return Current generation file or null if nothing has been published yet
+     */
+    public File getCurrent() {
+        if (!pointerFile.exists()) {
+            return null;
+        }
+
+        try {
+            String name = StringUtils.trimToNull(FileUtils.readFileToString(pointerFile, StandardCharsets.UTF_8));
+            if (name == null) {
+                return null;
+            }
+            File file = new File(directory, name);
+            return file.exists() ? file : null;
+        } catch (IOException ex) {
+            LOG.warn("Cannot read {}:\r\n", pointerFile, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Allocates a new generation file. Write it and pass it to {@link #publish(File)} or {@link #discard(File)}.
+     *
+     * @return New empty generation file
+     * @throws IOException if the file cannot be created
+     */
+    public File newGeneration() throws IOException {
+        synchronized (LOCK) {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Cannot create directory " + directory);
+            }
+
+            long generation = getLastGeneration() + 1;
+            File file = new File(directory, getFileName(generation));
+            if (!file.createNewFile()) {
+                throw new IOException("Cannot create " + file);
+            }
+            return file;
+        }
+    }
+
+    /**
+     * Syncs the generation file to disk and makes it current
+     *
+     * @param generationFile Generation file allocated with {@link #newGeneration()}
+     * @throws IOException if the file cannot be published
+     */
+    public void publish(File generationFile) throws IOException {
+        sync(generationFile);
+
+        synchronized (LOCK) {
+            publishLocked(generationFile);
+        }
+    }
+
+    /**
+     * Publishes the generation file only if nothing has been published yet.
+     * Otherwise the generation file is discarded.
+     *
+     * @param generationFile Generation file allocated with {@link #newGeneration()}
+     * @return Current generation file
+     * @throws IOException if the file cannot be published
+     */
+    public File publishIfAbsent(File generationFile) throws IOException {
+        sync(generationFile);
+
+        synchronized (LOCK) {
+            File current = getCurrent();
+            if (current != null) {
+                discard(generationFile);
+                return current;
+            }
+            publishLocked(generationFile);
+            return generationFile;
+        }
+    }
+
+    private void publishLocked(File generationFile) throws IOException {
+        File previous = getCurrent();
+        File tmpFile = new File(directory, pointerFile.getName() + ".tmp");
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(tmpFile);
+            outputStream.write(generationFile.getName().getBytes(StandardCharsets.UTF_8));
+            outputStream.getFD().sync();
+        } finally {
+            IoUtils.closeQuietly(outputStream);
+        }
+        if (!tmpFile.renameTo(pointerFile)) {
+            FileUtils.deleteQuietly(tmpFile);
+            throw new IOException("Cannot replace " + pointerFile);
+        }
+
+        LOG.info("Published {}", generationFile);
+        deleteOldGenerations(getGeneration((previous == null ? generationFile : previous).getName()));
+    }
+
+    /**
+     * Deletes the unpublished generation file
+     *
+     * @param generationFile Generation file allocated with {@link #newGeneration()}
+     */
+    public void discard(File generationFile) {
+        FileUtils.deleteQuietly(generationFile);
+    }
+
+    private static void sync(File file) throws IOException {
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(file, true);
+            outputStream.getFD().sync();
+        } finally {
+            IoUtils.closeQuietly(outputStream);
+        }
+    }
+
+    /**
+     * Deletes generations older than the specified one.
+     * Open descriptors of the deleted files remain valid until they are closed.
+     */
+    private void deleteOldGenerations(long keepFrom) {
+        String[] names = directory.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            long generation = getGeneration(name);
+            if (generation >= 0 && generation < keepFrom) {
+                FileUtils.deleteQuietly(new File(directory, name));
+            }
+        }
+    }
+
+    private long getLastGeneration() {
+        long last = 0;
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                last = Math.max(last, getGeneration(name));
+            }
+        }
+        return last;
+    }
+
+    private String getFileName(long generation) {
+        return baseName + "." + generation + "." + extension;
+    }
+
+    /**
+     * @return Generation number or -1 if the file is not a generation of this file
+     */
+    private long getGeneration(String fileName) {
+        String prefix = baseName + ".";
+        String suffix = "." + extension;
+        if (!fileName.startsWith(prefix) || !fileName.endsWith(suffix) || fileName.length() <= prefix.length() + suffix.length()) {
+            return -1;
+        }
+        String generation = fileName.substring(prefix.length(), fileName.length() - suffix.length());
+        return NumberUtils.isDigits(generation) ? NumberUtils.toLong(generation, -1) : -1;
+    }
+}
@@ -28,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
@@ -35,6 +36,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 
 /**
  * Common methods for working with streams
@@ -42,6 +44,7 @@ import java.io.InputStream;
 public class IoUtils {
     private static final Logger LOG = LoggerFactory.getLogger(IoUtils.class);
     private static final int DOWNLOAD_LIMIT_SIZE = 5 * 1024 * 1024; // 5 MB
+    private static final int READ_BUFFER_SIZE = 8192;
 
     /**
      * Closes a <code>Closeable</code> unconditionally.
@@ -72,6 +75,22 @@ public class IoUtils {
         return outputStream.toByteArray();
     }
 
+    /**
+     * Reads input stream line by line
+     *
+     * @param inputStream Input stream
+     * @param encoding    Text encoding
+     * @param handler     Handler of the lines
+     * @throws IOException if the stream cannot be read or the handler fails
+     */
+    public static void readLines(InputStream inputStream, String encoding, LineHandler handler) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, encoding), READ_BUFFER_SIZE);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            handler.handleLine(line);
+        }
+    }
+
     /**
      * Gets input stream from url
      *
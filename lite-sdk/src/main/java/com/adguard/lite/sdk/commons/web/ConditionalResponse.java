@@ -0,0 +1,87 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.commons.web;
+
+/**
+ * Response of a conditional HTTP request.
+ * <p>
+ * Validators of a full response are not cached right away: the caller saves them
+ * with {@link #saveValidators()} once the content has been applied. Otherwise a failure
+ * while applying it would make the next request look up to date.
+ */
+public class ConditionalResponse {
+
+    private final String body;
+    private final boolean notModified;
+    private final HttpValidatorCache cache;
+    private final String url;
+    private final String etag;
+    private final String lastModified;
+
+    /**
+     * Creates an instance of the response
+     *
+     * @param body        Response body (taken from the cache if the content is not modified)
+     * @param notModified True if the content has not changed since the previous request
+     */
+    public ConditionalResponse(String body, boolean notModified) {
+        this(body, notModified, null, null, null, null);
+    }
+
+    /**
+     * Creates an instance of the response with the validators to cache
+     *
+     * @param body         Response body
+     * @param notModified  True if the content has not changed since the previous request
+     * @param cache        Cache to save the validators to
+     * @param url          Url
+     * @param etag         ETag header value or null
+     * @param lastModified Last-Modified header value or null
+     */
+    public ConditionalResponse(String body, boolean notModified, HttpValidatorCache cache, String url, String etag, String lastModified) {
+        this.body = body;
+        this.notModified = notModified;
+        this.cache = cache;
+        this.url = url;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return Response body
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @return True if the content has not changed since the previous request
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    /**
+     * Saves the validators of the response to the cache.
+     * Call it only after the response has been fully applied.
+     */
+    public void saveValidators() {
+        if (cache != null) {
+            cache.put(url, etag, lastModified, body);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.commons.web;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server responds with an error status
+ */
+public class HttpStatusException extends IOException {
+
+    private final int statusCode;
+
+    /**
+     * Creates an instance of the exception
+     *
+     * @param statusCode HTTP status code
+     */
+    public HttpStatusException(int statusCode) {
+        super("Response status is " + statusCode);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return HTTP status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
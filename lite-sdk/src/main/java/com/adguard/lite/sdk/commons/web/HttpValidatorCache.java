@@ -0,0 +1,243 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.commons.web;
+
+import android.content.Context;
+
+import com.adguard.lite.sdk.commons.HashUtils;
+import com.adguard.lite.sdk.commons.io.IoUtils;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Persistent cache of HTTP validators.
+ * <p>
+ * For every url it keeps the ETag and Last-Modified values of the last response,
+ * the hash of its content and the content itself. Validators are sent with the next request,
+ * and the cached content is used if the server responds with "304 Not Modified".
+ * <p>
+ * The body file is named after the content hash and the meta file is replaced last,
+ * so an interrupted {@link #put} leaves the previous entry intact.
+ */
+public class HttpValidatorCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpValidatorCache.class);
+
+    private static final String KEY_URL = "url";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "last_modified";
+    private static final String KEY_HASH = "hash";
+
+    private static final String DIRECTORY_NAME = "http";
+
+    private final File directory;
+
+    /**
+     * Creates an instance of the cache in the application cache directory
+     *
+     * @param context Application context
+     */
+    public HttpValidatorCache(Context context) {
+        this(new File(context.getCacheDir(), DIRECTORY_NAME));
+    }
+
+    /**
+     * Creates an instance of the cache
+     *
+     * @param directory Directory to keep the cache in
+     */
+    public HttpValidatorCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the cache entry
+     *
+     * @param url Url
+     * @return Cache entry or null if there is no cached content for this url
+     */
+    public synchronized Entry get(String url) {
+        String name = HashUtils.sha1(url);
+        File metaFile = new File(directory, name + ".meta");
+        if (!metaFile.exists()) {
+            return null;
+        }
+
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(metaFile);
+            Properties properties = new Properties();
+            properties.load(inputStream);
+            String hash = properties.getProperty(KEY_HASH);
+            if (!url.equals(properties.getProperty(KEY_URL)) || hash == null) {
+                return null;
+            }
+            File bodyFile = getBodyFile(name, hash);
+            if (!bodyFile.exists()) {
+                return null;
+            }
+            return new Entry(properties.getProperty(KEY_ETAG), properties.getProperty(KEY_LAST_MODIFIED), hash, bodyFile);
+        } catch (IOException ex) {
+            LOG.warn("Cannot read cached validators for {}:\r\n", url, ex);
+            return null;
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Saves the response to the cache
+     *
+     * @param url          Url
+     * @param etag         ETag header value or null
+     * @param lastModified Last-Modified header value or null
+     * @param body         Response body
+     */
+    public synchronized void put(String url, String etag, String lastModified, String body) {
+        String name = HashUtils.sha1(url);
+        String hash = HashUtils.sha1(body);
+        OutputStream outputStream = null;
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Cannot create directory " + directory);
+            }
+
+            File bodyFile = getBodyFile(name, hash);
+            File bodyTmpFile = new File(directory, name + ".body.tmp");
+            FileUtils.writeStringToFile(bodyTmpFile, body, StandardCharsets.UTF_8);
+            replace(bodyTmpFile, bodyFile);
+
+            Properties properties = new Properties();
+            properties.setProperty(KEY_URL, url);
+            properties.setProperty(KEY_HASH, hash);
+            if (etag != null) {
+                properties.setProperty(KEY_ETAG, etag);
+            }
+            if (lastModified != null) {
+                properties.setProperty(KEY_LAST_MODIFIED, lastModified);
+            }
+            File metaTmpFile = new File(directory, name + ".meta.tmp");
+            outputStream = new FileOutputStream(metaTmpFile);
+            properties.store(outputStream, null);
+            outputStream.close();
+            outputStream = null;
+            replace(metaTmpFile, new File(directory, name + ".meta"));
+
+            deleteStaleBodies(name, bodyFile);
+        } catch (IOException ex) {
+            LOG.warn("Cannot cache validators for {}:\r\n", url, ex);
+        } finally {
+            IoUtils.closeQuietly(outputStream);
+        }
+    }
+
+    /**
+     * Removes all cached entries
+     */
+    public synchronized void clear() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    private File getBodyFile(String name, String hash) {
+        return new File(directory, name + "-" + hash + ".body");
+    }
+
+    /**
+     * Renames the file over the target. Not every file system replaces
+     * an existing file on rename, so the target is deleted on the first failure.
+     */
+    private static void replace(File source, File target) throws IOException {
+        if (!source.renameTo(target) && !(target.delete() && source.renameTo(target))) {
+            FileUtils.deleteQuietly(source);
+            throw new IOException("Cannot replace " + target);
+        }
+    }
+
+    /**
+     * Removes the bodies of the url that are no longer referenced by its meta file
+     */
+    private void deleteStaleBodies(String name, File bodyFile) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String fileName = file.getName();
+            if (fileName.startsWith(name + "-") && fileName.endsWith(".body") && !file.equals(bodyFile)) {
+                FileUtils.deleteQuietly(file);
+            }
+        }
+    }
+
+    /**
+     * Cached validators of the url
+     */
+    public static class Entry {
+
+        private final String etag;
+        private final String lastModified;
+        private final String hash;
+        private final File bodyFile;
+
+        Entry(String etag, String lastModified, String hash, File bodyFile) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.bodyFile = bodyFile;
+        }
+
+        /**
+         * @return ETag header value or null
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return Last-Modified header value or null
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return SHA-1 hash of the cached content
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * @return Cached content
+         * @throws IOException if the content cannot be read
+         */
+        public String readBody() throws IOException {
+            return FileUtils.readFileToString(bodyFile, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -16,7 +16,9 @@
  */
 package com.adguard.lite.sdk.commons.web;
 
+import com.adguard.lite.sdk.commons.HashUtils;
 import com.adguard.lite.sdk.commons.io.IoUtils;
+import com.adguard.lite.sdk.commons.io.LineHandler;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.CountingInputStream;
@@ -172,6 +174,142 @@ public class UrlUtils {
         }
     }
 
+    /**
+     * Downloads content from the specified url using validators of the previous response.
+     * <p>
+     * If the cache contains an entry for this url, "If-None-Match" and "If-Modified-Since" headers are sent
+     * and the cached content is returned when the server responds with "304 Not Modified".
+     * A full response with the same content as the cached one is reported as not modified as well.
+     * Validators of a full response are cached by {@link ConditionalResponse#saveValidators()}.
+     * Returns null if there's an error.
+     *
+     * @param url           url
+     * @param readTimeout   read timeout
+     * @param socketTimeout connection timeout
+     * @param encoding      response encoding
+     * @param cache         cache of the validators
+     * @return Response or null
+     */
+    public static ConditionalResponse downloadStringConditional(URL url, int readTimeout, int socketTimeout, String encoding, HttpValidatorCache cache) {
+        HttpURLConnection connection = null;
+        InputStream inputStream = null;
+
+        try {
+            HttpValidatorCache.Entry entry = cache.get(url.toString());
+
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestProperty("User-Agent", USER_AGENT);
+            connection.setReadTimeout(readTimeout);
+            connection.setConnectTimeout(socketTimeout);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (entry != null && entry.getEtag() != null) {
+                connection.setRequestProperty("If-None-Match", entry.getEtag());
+            }
+            if (entry != null && entry.getLastModified() != null) {
+                connection.setRequestProperty("If-Modified-Since", entry.getLastModified());
+            }
+            connection.connect();
+            if (connection.getResponseCode() >= 400) {
+                throw new IOException("Response status is " + connection.getResponseCode());
+            }
+
+            if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                if (entry == null) {
+                    throw new IOException("Response status is 304, but there is no cached content");
+                }
+                LOG.debug("Content of {} is not modified", url);
+                return new ConditionalResponse(entry.readBody(), true);
+            }
+
+            if (connection.getResponseCode() >= 301) {
+                String location = connection.getHeaderField("Location");
+                // HttpURLConnection does not follow redirects from HTTP to HTTPS
+                // So we handle it manually
+                return downloadStringConditional(new URL(location), readTimeout, socketTimeout, encoding, cache);
+            }
+
+            if (connection.getResponseCode() == 204) {
+                return new ConditionalResponse(StringUtils.EMPTY, false);
+            }
+
+            inputStream = connection.getInputStream();
+            if ("gzip".equals(connection.getHeaderField("Content-Encoding"))) {
+                inputStream = new GZIPInputStream(inputStream);
+            }
+
+            String body = IOUtils.toString(inputStream, encoding);
+            boolean notModified = entry != null && HashUtils.sha1(body).equals(entry.getHash());
+            return new ConditionalResponse(body, notModified, cache, url.toString(), connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+        } catch (IOException ex) {
+            if (LOG.isDebugEnabled()) {
+                LOG.warn("Error downloading string from {}:\r\n", url, ex);
+            } else {
+                LOG.warn("Cannot download string from {}: {}", url, ex.getMessage());
+            }
+            // Ignoring exception
+            return null;
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Downloads content from the specified url line by line.
+     * Unlike {@link #downloadString(URL, Proxy, int, int, String, long)} the response is not buffered:
+     * it is decoded through a fixed size buffer and every line is passed to the handler as soon as it is read.
+     *
+     * @param url           url
+     * @param readTimeout   read timeout
+     * @param socketTimeout connection timeout
+     * @param encoding      response encoding
+     * @param handler       handler of the response lines
+     * @throws HttpStatusException if the server responds with an error status
+     * @throws IOException          if the content cannot be downloaded or the handler fails
+     */
+    public static void downloadLines(URL url, int readTimeout, int socketTimeout, String encoding, LineHandler handler) throws IOException {
+        HttpURLConnection connection = null;
+        InputStream inputStream = null;
+
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestProperty("User-Agent", USER_AGENT);
+            connection.setReadTimeout(readTimeout);
+            connection.setConnectTimeout(socketTimeout);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            connection.connect();
+            if (connection.getResponseCode() >= 400) {
+                throw new HttpStatusException(connection.getResponseCode());
+            }
+
+            if (connection.getResponseCode() >= 301) {
+                String location = connection.getHeaderField("Location");
+                // HttpURLConnection does not follow redirects from HTTP to HTTPS
+                // So we handle it manually
+                downloadLines(new URL(location), readTimeout, socketTimeout, encoding, handler);
+                return;
+            }
+
+            if (connection.getResponseCode() == 204) {
+                return;
+            }
+
+            inputStream = connection.getInputStream();
+            if ("gzip".equals(connection.getHeaderField("Content-Encoding"))) {
+                inputStream = new GZIPInputStream(inputStream, READ_BUFFER_SIZE);
+            }
+
+            IoUtils.readLines(inputStream, encoding, handler);
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
     /**
      * Sends a POST request
      *
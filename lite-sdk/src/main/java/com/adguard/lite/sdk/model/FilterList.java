@@ -34,6 +34,25 @@ public class FilterList {
     private Date lastTimeDownloaded;
     private int displayOrder;
 
+    public FilterList() {
+    }
+
+    /**
+     * Creates a copy of the filter list
+     *
+     * @param filterList Filter list to copy
+     */
+    public FilterList(FilterList filterList) {
+        this.filterId = filterList.filterId;
+        this.name = filterList.name;
+        this.description = filterList.description;
+        this.enabled = filterList.enabled;
+        this.version = filterList.version;
+        this.timeUpdated = filterList.timeUpdated;
+        this.lastTimeDownloaded = filterList.lastTimeDownloaded;
+        this.displayOrder = filterList.displayOrder;
+    }
+
     /**
      * @return Filter identifier
      */
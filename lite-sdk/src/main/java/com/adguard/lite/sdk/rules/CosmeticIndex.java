@@ -0,0 +1,388 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.rules;
+
+import com.adguard.lite.sdk.commons.io.IoUtils;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the cosmetic rules by the domains they apply to.
+ * <p>
+ * Domains are kept in a trie of their labels in reverse order (com, example, www),
+ * so the rules of a host and all its parent domains are collected in one walk, as long as the number of labels.
+ * Every node keeps the rules permitted on its domain, the rules restricted on it (~domain),
+ * and the rules cancelled on it by the exceptions. Generic exceptions cancel the rules when the index is built.
+ * Domains with the TLD wildcard (example.*) are kept under the * label of the root.
+ * <p>
+ * The index is immutable once built and can be used from any thread.
+ */
+public class CosmeticIndex {
+
+    private static final int MAGIC = 0x41474349;
+    private static final int FORMAT_VERSION = 1;
+    private static final String WILDCARD_LABEL = "*";
+    private static final int[] NO_IDS = new int[0];
+
+    private final CosmeticRule[] rules;
+    /** Generic rules not cancelled by the generic exceptions, in the rules order */
+    private final int[] genericRules;
+    private final Node root;
+
+    private CosmeticIndex(CosmeticRule[] rules, int[] genericRules, Node root) {
+        this.rules = rules;
+        this.genericRules = genericRules;
+        this.root = root;
+    }
+
+    /**
+     * @return Number of the indexed rules
+     */
+    public int getRuleCount() {
+        return rules.length;
+    }
+
+    /**
+     * Gets the rules applied on the host: the rules of the host and its parent domains,
+     * except the ones restricted on them or cancelled by exceptions, and the exceptions themselves.
+     *
+     * @param host           Host
+     * @param includeGeneric True to include the generic rules
+     * @return Rules in the order they have been added to the index
+     */
+    public List<CosmeticRule> getRules(String host, boolean includeGeneric) {
+        String[] labels = StringUtils.split(StringUtils.lowerCase(host), '.');
+        if (ArrayUtils.isEmpty(labels)) {
+            return Collections.emptyList();
+        }
+
+        List<Node> path = new ArrayList<>();
+        collectPath(root, labels, labels.length - 1, path);
+        Node wildcard = root.getChild(WILDCARD_LABEL);
+        if (wildcard != null) {
+            // The wildcard replaces one or more trailing labels
+            for (int last = labels.length - 2; last >= 0; last--) {
+                collectPath(wildcard, labels, last, path);
+            }
+        }
+
+        Set<Integer> excluded = new HashSet<>();
+        int specificCount = 0;
+        for (Node node : path) {
+            for (int id : node.restricted) {
+                excluded.add(id);
+            }
+            for (int id : node.cancelled) {
+                excluded.add(id);
+            }
+            specificCount += node.rules.length;
+        }
+
+        int[] specific = new int[specificCount];
+        int offset = 0;
+        for (Node node : path) {
+            System.arraycopy(node.rules, 0, specific, offset, node.rules.length);
+            offset += node.rules.length;
+        }
+        Arrays.sort(specific);
+
+        // Merges the sorted specific and generic rules skipping the duplicates and the excluded rules
+        int[] generic = includeGeneric ? genericRules : NO_IDS;
+        List<CosmeticRule> result = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        int last = -1;
+        while (i < specific.length || j < generic.length) {
+            int id = j >= generic.length || (i < specific.length && specific[i] < generic[j]) ? specific[i++] : generic[j++];
+            if (id != last && !excluded.contains(id)) {
+                result.add(rules[id]);
+            }
+            last = id;
+        }
+        return result;
+    }
+
+    /**
+     * Writes the index to the file
+     *
+     * @param file Index file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(rules.length);
+            for (CosmeticRule rule : rules) {
+                byte[] bytes = rule.getRuleText().getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+            writeIds(output, genericRules);
+            writeNode(output, root);
+            output.close();
+        } finally {
+            IoUtils.closeQuietly(output);
+        }
+    }
+
+    /**
+     * Reads the index written with {@link #write(File)}
+     *
+     * @param file Index file
+     * @return Index
+     * @throws IOException if the file cannot be read or it is not a valid index
+     */
+    public static CosmeticIndex read(File file) throws IOException {
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a cosmetic index: " + file);
+            }
+            CosmeticRule[] rules = new CosmeticRule[input.readInt()];
+            for (int i = 0; i < rules.length; i++) {
+                byte[] bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                rules[i] = CosmeticRule.parse(new String(bytes, StandardCharsets.UTF_8));
+                if (rules[i] == null) {
+                    throw new IOException("Invalid rule " + i + " in " + file);
+                }
+            }
+            int[] genericRules = readIds(input, rules.length);
+            Node root = readNode(input, rules.length);
+            return new CosmeticIndex(rules, genericRules, root);
+        } finally {
+            IoUtils.closeQuietly(input);
+        }
+    }
+
+    private static void collectPath(Node node, String[] labels, int last, List<Node> path) {
+        for (int i = last; i >= 0 && node != null; i--) {
+            node = node.getChild(labels[i]);
+            if (node != null) {
+                path.add(node);
+            }
+        }
+    }
+
+    private static void writeNode(DataOutputStream output, Node node) throws IOException {
+        writeIds(output, node.rules);
+        writeIds(output, node.restricted);
+        writeIds(output, node.cancelled);
+        output.writeInt(node.children == null ? 0 : node.children.size());
+        if (node.children != null) {
+            for (Map.Entry<String, Node> child : node.children.entrySet()) {
+                output.writeUTF(child.getKey());
+                writeNode(output, child.getValue());
+            }
+        }
+    }
+
+    private static Node readNode(DataInputStream input, int ruleCount) throws IOException {
+        Node node = new Node();
+        node.rules = readIds(input, ruleCount);
+        node.restricted = readIds(input, ruleCount);
+        node.cancelled = readIds(input, ruleCount);
+        int childCount = input.readInt();
+        for (int i = 0; i < childCount; i++) {
+            String label = input.readUTF();
+            node.addChild(label, readNode(input, ruleCount));
+        }
+        return node;
+    }
+
+    private static void writeIds(DataOutputStream output, int[] ids) throws IOException {
+        output.writeInt(ids.length);
+        for (int id : ids) {
+            output.writeInt(id);
+        }
+    }
+
+    private static int[] readIds(DataInputStream input, int ruleCount) throws IOException {
+        int[] ids = new int[input.readInt()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = input.readInt();
+            if (ids[i] < 0 || ids[i] >= ruleCount) {
+                throw new IOException("Invalid rule id " + ids[i]);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Trie node of a domain label
+     */
+    private static class Node {
+
+        private Map<String, Node> children;
+        private int[] rules = NO_IDS;
+        private int[] restricted = NO_IDS;
+        private int[] cancelled = NO_IDS;
+
+        Node getChild(String label) {
+            return children == null ? null : children.get(label);
+        }
+
+        void addChild(String label, Node child) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            children.put(label, child);
+        }
+
+        Node getOrCreateChild(String label) {
+            Node child = getChild(label);
+            if (child == null) {
+                child = new Node();
+                addChild(label, child);
+            }
+            return child;
+        }
+    }
+
+    /**
+     * Builds the index, usually from the compiled filters
+     */
+    public static class Builder {
+
+        private final List<CosmeticRule> rules = new ArrayList<>();
+
+        /**
+         * Adds the rule if it is a cosmetic one
+         *
+         * @param ruleText Rule text
+         * @return True if the rule has been added
+         */
+        public boolean add(String ruleText) {
+            CosmeticRule rule = CosmeticRule.parse(ruleText);
+            if (rule == null) {
+                return false;
+            }
+            rules.add(rule);
+            return true;
+        }
+
+        public CosmeticIndex build() {
+            // Keys cancelled everywhere and the rules of every key the exceptions may cancel
+            Set<String> genericExceptions = new HashSet<>();
+            Map<String, List<Integer>> rulesByKey = new HashMap<>();
+            for (int id = 0; id < rules.size(); id++) {
+                CosmeticRule rule = rules.get(id);
+                if (rule.isWhitelist()) {
+                    if (rule.isGeneric()) {
+                        genericExceptions.add(rule.getKey());
+                    }
+                } else {
+                    List<Integer> ids = rulesByKey.get(rule.getKey());
+                    if (ids == null) {
+                        ids = new ArrayList<>(1);
+                        rulesByKey.put(rule.getKey(), ids);
+                    }
+                    ids.add(id);
+                }
+            }
+
+            Map<Node, List<Integer>> permitted = new HashMap<>();
+            Map<Node, List<Integer>> restricted = new HashMap<>();
+            Map<Node, List<Integer>> cancelled = new HashMap<>();
+            List<Integer> genericRules = new ArrayList<>();
+            Node root = new Node();
+
+            for (int id = 0; id < rules.size(); id++) {
+                CosmeticRule rule = rules.get(id);
+                if (genericExceptions.contains(rule.getKey())) {
+                    // Generic exceptions are applied here and kept out of the index
+                    continue;
+                }
+                if (rule.isGeneric()) {
+                    genericRules.add(id);
+                }
+                for (String domain : rule.getPermittedDomains()) {
+                    Node node = getOrCreateNode(root, domain);
+                    add(permitted, node, id);
+                    if (rule.isWhitelist() && rulesByKey.containsKey(rule.getKey())) {
+                        for (int cancelledId : rulesByKey.get(rule.getKey())) {
+                            add(cancelled, node, cancelledId);
+                        }
+                    }
+                }
+                for (String domain : rule.getRestrictedDomains()) {
+                    add(restricted, getOrCreateNode(root, domain), id);
+                }
+            }
+
+            for (Map.Entry<Node, List<Integer>> entry : permitted.entrySet()) {
+                entry.getKey().rules = toArray(entry.getValue());
+            }
+            for (Map.Entry<Node, List<Integer>> entry : restricted.entrySet()) {
+                entry.getKey().restricted = toArray(entry.getValue());
+            }
+            for (Map.Entry<Node, List<Integer>> entry : cancelled.entrySet()) {
+                entry.getKey().cancelled = toArray(entry.getValue());
+            }
+            return new CosmeticIndex(rules.toArray(new CosmeticRule[0]), toArray(genericRules), root);
+        }
+
+        private static Node getOrCreateNode(Node root, String domain) {
+            String[] labels = StringUtils.split(domain, '.');
+            Node node = root;
+            for (int i = labels.length - 1; i >= 0; i--) {
+                node = node.getOrCreateChild(labels[i]);
+            }
+            return node;
+        }
+
+        private static void add(Map<Node, List<Integer>> ids, Node node, int id) {
+            List<Integer> nodeIds = ids.get(node);
+            if (nodeIds == null) {
+                nodeIds = new ArrayList<>(1);
+                ids.put(node, nodeIds);
+            }
+            nodeIds.add(id);
+        }
+
+        private static int[] toArray(List<Integer> ids) {
+            int[] array = new int[ids.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = ids.get(i);
+            }
+            return array;
+        }
+    }
+}
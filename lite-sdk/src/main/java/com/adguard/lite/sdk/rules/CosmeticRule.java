@@ -0,0 +1,147 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.rules;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cosmetic rule parsed for {@link CosmeticIndex}.
+ * <p>
+ * Element hiding ({@code ##}, {@code #?#}) and CSS injection ({@code #$#}, {@code #$?#}) rules
+ * and their exceptions are supported. Script and HTML filtering rules are not cosmetic in this sense.
+ */
+public class CosmeticRule {
+
+    /**
+     * Kind of the rule. Exceptions cancel the rules of the same type only.
+     */
+    public enum Type {
+        ELEMENT_HIDING,
+        CSS
+    }
+
+    private final String ruleText;
+    private final Type type;
+    private final boolean whitelist;
+    private final String content;
+    private final String[] permittedDomains;
+    private final String[] restrictedDomains;
+
+    private CosmeticRule(String ruleText, Type type, boolean whitelist, String content,
+                         String[] permittedDomains, String[] restrictedDomains) {
+        this.ruleText = ruleText;
+        this.type = type;
+        this.whitelist = whitelist;
+        this.content = content;
+        this.permittedDomains = permittedDomains;
+        this.restrictedDomains = restrictedDomains;
+    }
+
+    /**
+     * Parses the cosmetic rule
+     *
+     * @param ruleText Rule text
+     * @return Rule or null if it is not a supported cosmetic rule
+     */
+    public static CosmeticRule parse(String ruleText) {
+        String text = StringUtils.trim(ruleText);
+        RuleInfo info = RuleLexer.lex(text);
+        Type type;
+        if (info.getType() == RuleInfo.Type.ELEMENT_HIDING) {
+            type = Type.ELEMENT_HIDING;
+        } else if (info.getType() == RuleInfo.Type.CSS_INJECTION) {
+            type = Type.CSS;
+        } else {
+            return null;
+        }
+
+        String content = info.getContent().trim();
+        if (content.isEmpty()) {
+            return null;
+        }
+        List<String> permittedDomains = new ArrayList<>();
+        List<String> restrictedDomains = new ArrayList<>();
+        for (String domain : StringUtils.split(info.getDomains(), ',')) {
+            domain = domain.trim().toLowerCase();
+            if (domain.startsWith("~")) {
+                restrictedDomains.add(domain.substring(1));
+            } else if (!domain.isEmpty()) {
+                permittedDomains.add(domain);
+            }
+        }
+        return new CosmeticRule(text, type, info.isWhitelist(), content,
+                permittedDomains.toArray(new String[0]), restrictedDomains.toArray(new String[0]));
+    }
+
+    /**
+     * @return Rule text
+     */
+    public String getRuleText() {
+        return ruleText;
+    }
+
+    /**
+     * @return Rule type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return True if this is an exception rule
+     */
+    public boolean isWhitelist() {
+        return whitelist;
+    }
+
+    /**
+     * @return Selector or style the rule applies
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return True if the rule applies to every site except the restricted domains
+     */
+    public boolean isGeneric() {
+        return permittedDomains.length == 0;
+    }
+
+    @Override
+    public String toString() {
+        return ruleText;
+    }
+
+    String[] getPermittedDomains() {
+        return permittedDomains;
+    }
+
+    String[] getRestrictedDomains() {
+        return restrictedDomains;
+    }
+
+    /**
+     * @return Key the exceptions are matched by, rules with equal keys hide or style the same way
+     */
+    String getKey() {
+        return type.ordinal() + content;
+    }
+}
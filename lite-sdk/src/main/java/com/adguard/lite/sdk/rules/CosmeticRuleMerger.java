@@ -0,0 +1,179 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.rules;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges the cosmetic rules that differ in their domains only,
+ * e.g. {@code a.com##.ad} and {@code b.com##.ad} to {@code a.com,b.com##.ad}.
+ * <p>
+ * Rules are grouped by the marker, which defines the type and whether the rule is an exception, and the content.
+ * Only the rules with permitted domains are merged: a restricted domain of one rule would apply to the others,
+ * and the generic rules have no domains to merge. Merged rules are split so that no line is longer than the limit.
+ * <p>
+ * The merger makes two passes over the rules: {@link #collect(String)} every rule first,
+ * then {@link #merge(String)} every rule in the same order. The merged rules take the place of the first rule
+ * of their group. The rules {@link #collect(String)} returns false for are never changed,
+ * so the caller may write them as they are without the second pass.
+ */
+public class CosmeticRuleMerger {
+
+    private static final char DOMAIN_SEPARATOR = ',';
+
+    private final int maxLineLength;
+    private final Map<String, Group> groups = new HashMap<>();
+
+    private int mergedRuleCount;
+
+    /**
+     * Creates an instance of the merger
+     *
+     * @param maxLineLength Maximum length of a merged rule. Longer rules are not merged, but kept as they are.
+     */
+    public CosmeticRuleMerger(int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Collects the domains of the rule in the first pass
+     *
+     * @param ruleText Rule text
+     * @return True if {@link #merge(String)} may merge the rule
+     */
+    public boolean collect(String ruleText) {
+        RuleInfo info = getMergeable(ruleText);
+        if (info == null) {
+            return false;
+        }
+        String key = getKey(info);
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group();
+            groups.put(key, group);
+        }
+        group.ruleCount++;
+        for (String domain : StringUtils.split(info.getDomains(), DOMAIN_SEPARATOR)) {
+            if (StringUtils.isNotBlank(domain)) {
+                group.domains.add(domain.trim());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merges the rule in the second pass
+     *
+     * @param ruleText Rule text
+     * @return Rules to write in place of the rule: the rule itself, the merged rules of its group
+     * if it is the first rule of the group, or none if it has been merged to the rules written before
+     */
+    public List<String> merge(String ruleText) {
+        RuleInfo info = getMergeable(ruleText);
+        if (info == null) {
+            return Collections.singletonList(ruleText);
+        }
+        String key = getKey(info);
+        Group group = groups.get(key);
+        if (group == null || group.ruleCount < 2) {
+            return Collections.singletonList(ruleText);
+        }
+        if (group.written) {
+            return Collections.emptyList();
+        }
+
+        group.written = true;
+        mergedRuleCount += group.ruleCount;
+        return split(group.domains, key);
+    }
+
+    /**
+     * @return Number of the rules merged so far
+     */
+    public int getMergedRuleCount() {
+        return mergedRuleCount;
+    }
+
+    /**
+     * Joins the domains to rules of the limited length
+     *
+     * @param domains Domains of the group
+     * @param key     Marker and content of the group
+     * @return Merged rules
+     */
+    private List<String> split(Set<String> domains, String key) {
+        List<String> rules = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (String domain : domains) {
+            if (sb.length() > 0 && sb.length() + 1 + domain.length() + key.length() > maxLineLength) {
+                rules.add(sb.append(key).toString());
+                sb.setLength(0);
+            }
+            if (sb.length() > 0) {
+                sb.append(DOMAIN_SEPARATOR);
+            }
+            sb.append(domain);
+        }
+        rules.add(sb.append(key).toString());
+        return rules;
+    }
+
+    /**
+     * @return Lexed rule or null if the rule can't be merged
+     */
+    private static RuleInfo getMergeable(String ruleText) {
+        // Only the rules with a domain before the marker can be merged
+        if (ruleText.isEmpty() || ruleText.charAt(0) == '#' || ruleText.charAt(0) == '~' || ruleText.indexOf('#') < 0) {
+            return null;
+        }
+        RuleInfo info = RuleLexer.lex(ruleText);
+        RuleInfo.Type type = info.getType();
+        if (type != RuleInfo.Type.ELEMENT_HIDING && type != RuleInfo.Type.CSS_INJECTION) {
+            return null;
+        }
+        String domains = info.getDomains();
+        if (StringUtils.isBlank(domains) || domains.indexOf('~') >= 0) {
+            return null;
+        }
+        return info;
+    }
+
+    /**
+     * @return Marker and content of the rule, the same for the rules that can be merged
+     */
+    private static String getKey(RuleInfo info) {
+        return info.getRuleText().substring(info.getDomains().length());
+    }
+
+    /**
+     * Rules with the same marker and content
+     */
+    private static class Group {
+
+        private final Set<String> domains = new LinkedHashSet<>();
+        private int ruleCount;
+        private boolean written;
+    }
+}
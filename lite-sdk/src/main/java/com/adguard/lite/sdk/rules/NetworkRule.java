@@ -0,0 +1,292 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.rules;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Network (URL blocking) rule parsed for {@link NetworkRuleMatcher}.
+ * <p>
+ * Supported syntax is the basic rules ({@code ||}, {@code |}, {@code *}, {@code ^} and regular expressions),
+ * exception rules ({@code @@}) and the $domain, $document, $third-party, $match-case and $important modifiers.
+ * Content type modifiers are accepted, but not checked, as the type of the tested request is not known.
+ * Rules with other modifiers change the response rather than block the request, so they are not parsed.
+ */
+public class NetworkRule {
+
+    private static final String OPTION_DOMAIN = "domain=";
+    private static final String OPTION_THIRD_PARTY = "third-party";
+    private static final String OPTION_DOCUMENT = "document";
+    private static final String OPTION_MATCH_CASE = "match-case";
+    private static final String OPTION_IMPORTANT = "important";
+    private static final Set<String> CONTENT_TYPE_OPTIONS = new HashSet<>(Arrays.asList(
+            "script", "image", "stylesheet", "object", "object-subrequest", "xmlhttprequest", "subdocument",
+            "media", "font", "websocket", "webrtc", "ping", "other"));
+
+    /** Matches the scheme and the subdomains of the || anchor */
+    private static final String DOMAIN_ANCHOR_REGEX = "^[a-z][a-z0-9+.-]*:(?://)?(?:[^/?#]*\\.)?";
+    /** Matches the ^ separator, any character but a letter, a digit, or one of _-.%, or the end of the URL */
+    private static final String SEPARATOR_REGEX = "(?:[^a-zA-Z0-9_.%-]|$)";
+    private static final String REGEX_SPECIAL_CHARACTERS = "\\.+?()[]{}$|";
+
+    private final String ruleText;
+    private final boolean whitelist;
+    private final String pattern;
+    private final boolean regex;
+    private final boolean document;
+    private final boolean important;
+    private final boolean matchCase;
+    private final Boolean thirdParty;
+    private final String[] permittedDomains;
+    private final String[] restrictedDomains;
+
+    /** Compiled on the first match, as most of the rules are never tried */
+    private volatile Pattern compiledPattern;
+
+    private NetworkRule(String ruleText, boolean whitelist, String pattern, boolean regex, boolean document,
+                        boolean important, boolean matchCase, Boolean thirdParty,
+                        String[] permittedDomains, String[] restrictedDomains) {
+        this.ruleText = ruleText;
+        this.whitelist = whitelist;
+        this.pattern = pattern;
+        this.regex = regex;
+        this.document = document;
+        this.important = important;
+        this.matchCase = matchCase;
+        this.thirdParty = thirdParty;
+        this.permittedDomains = permittedDomains;
+        this.restrictedDomains = restrictedDomains;
+    }
+
+    /**
+     * Parses the network rule
+     *
+     * @param ruleText Rule text
+     * @return Rule or null if it is not a network rule or it has unsupported modifiers
+     */
+    public static NetworkRule parse(String ruleText) {
+        String text = StringUtils.trim(ruleText);
+        RuleInfo info = RuleLexer.lex(text);
+        if (info.getType() != RuleInfo.Type.NETWORK) {
+            return null;
+        }
+
+        boolean whitelist = info.isWhitelist();
+        String rule = info.getPattern();
+
+        boolean document = false;
+        boolean important = false;
+        boolean matchCase = false;
+        Boolean thirdParty = null;
+        List<String> permittedDomains = new ArrayList<>();
+        List<String> restrictedDomains = new ArrayList<>();
+
+        for (String option : info.getModifiers()) {
+            if (option.startsWith(OPTION_DOMAIN)) {
+                for (String domain : StringUtils.split(option.substring(OPTION_DOMAIN.length()), '|')) {
+                    if (domain.startsWith("~")) {
+                        restrictedDomains.add(domain.substring(1).toLowerCase());
+                    } else {
+                        permittedDomains.add(domain.toLowerCase());
+                    }
+                }
+            } else if (OPTION_THIRD_PARTY.equals(option)) {
+                thirdParty = Boolean.TRUE;
+            } else if (("~" + OPTION_THIRD_PARTY).equals(option)) {
+                thirdParty = Boolean.FALSE;
+            } else if (OPTION_DOCUMENT.equals(option)) {
+                document = true;
+            } else if (OPTION_MATCH_CASE.equals(option)) {
+                matchCase = true;
+            } else if (OPTION_IMPORTANT.equals(option)) {
+                important = true;
+            } else if (!CONTENT_TYPE_OPTIONS.contains(StringUtils.removeStart(option, "~"))) {
+                return null;
+            }
+        }
+
+        boolean regex = rule.length() > 1 && rule.startsWith("/") && rule.endsWith("/");
+        if (regex) {
+            try {
+                Pattern.compile(rule.substring(1, rule.length() - 1));
+            } catch (PatternSyntaxException e) {
+                return null;
+            }
+        }
+
+        return new NetworkRule(text, whitelist, rule, regex, document, important, matchCase, thirdParty,
+                permittedDomains.toArray(new String[0]), restrictedDomains.toArray(new String[0]));
+    }
+
+    /**
+     * @return Rule text
+     */
+    public String getRuleText() {
+        return ruleText;
+    }
+
+    /**
+     * @return True if this is an exception (@@) rule
+     */
+    public boolean isWhitelist() {
+        return whitelist;
+    }
+
+    /**
+     * @return True if the rule has the $document modifier
+     */
+    public boolean isDocument() {
+        return document;
+    }
+
+    /**
+     * @return True if the rule has the $important modifier
+     */
+    public boolean isImportant() {
+        return important;
+    }
+
+    @Override
+    public String toString() {
+        return ruleText;
+    }
+
+    /**
+     * @return URL pattern without the modifiers, a regular expression if {@link #isRegex()}
+     */
+    String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return True if the pattern is a regular expression
+     */
+    boolean isRegex() {
+        return regex;
+    }
+
+    /**
+     * Checks the modifiers of the rule against the request
+     *
+     * @param documentHost Host of the page the request is made from
+     * @param thirdParty   True if the request is made to another site
+     * @return True if the rule is applicable to the request
+     */
+    boolean isApplicable(String documentHost, boolean thirdParty) {
+        if (this.thirdParty != null && this.thirdParty != thirdParty) {
+            return false;
+        }
+        for (String domain : restrictedDomains) {
+            if (isSubdomainOf(documentHost, domain)) {
+                return false;
+            }
+        }
+        if (permittedDomains.length == 0) {
+            return true;
+        }
+        for (String domain : permittedDomains) {
+            if (isSubdomainOf(documentHost, domain)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks the URL pattern
+     *
+     * @param url Request URL
+     * @return True if the pattern matches the URL
+     */
+    boolean matchesUrl(String url) {
+        Pattern compiled = compiledPattern;
+        if (compiled == null) {
+            if (StringUtils.isEmpty(pattern) || "*".equals(pattern)) {
+                return true;
+            }
+            int flags = matchCase ? 0 : Pattern.CASE_INSENSITIVE;
+            compiled = Pattern.compile(regex ? pattern.substring(1, pattern.length() - 1) : toRegex(pattern), flags);
+            compiledPattern = compiled;
+        }
+        return compiled.matcher(url).find();
+    }
+
+    /**
+     * Checks if the host is the domain or its subdomain
+     *
+     * @param host   Host
+     * @param domain Domain
+     * @return True if the host belongs to the domain
+     */
+    static boolean isSubdomainOf(String host, String domain) {
+        if (host == null || !host.endsWith(domain)) {
+            return false;
+        }
+        int prefixLength = host.length() - domain.length();
+        return prefixLength == 0 || host.charAt(prefixLength - 1) == '.';
+    }
+
+    /**
+     * Converts the basic rule pattern to a regular expression
+     *
+     * @param pattern Pattern with the ||, |, * and ^ special characters
+     * @return Regular expression
+     */
+    private static String toRegex(String pattern) {
+        StringBuilder sb = new StringBuilder(pattern.length() * 2);
+        int start = 0;
+        int end = pattern.length();
+        if (pattern.startsWith("||")) {
+            sb.append(DOMAIN_ANCHOR_REGEX);
+            start = 2;
+        } else if (pattern.startsWith("|")) {
+            sb.append('^');
+            start = 1;
+        }
+        boolean endAnchor = end > start && pattern.charAt(end - 1) == '|';
+        if (endAnchor) {
+            end--;
+        }
+
+        for (int i = start; i < end; i++) {
+            char c = pattern.charAt(i);
+            if (c == '*') {
+                sb.append(".*");
+            } else if (c == '^') {
+                sb.append(SEPARATOR_REGEX);
+            } else {
+                if (REGEX_SPECIAL_CHARACTERS.indexOf(c) >= 0) {
+                    sb.append('\\');
+                }
+                sb.append(c);
+            }
+        }
+
+        if (endAnchor) {
+            sb.append('$');
+        }
+        return sb.toString();
+    }
+}
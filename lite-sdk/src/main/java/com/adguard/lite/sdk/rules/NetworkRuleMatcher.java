@@ -0,0 +1,345 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.rules;
+
+import com.adguard.lite.sdk.commons.io.IoUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks URLs against the network rules of a compiled filters file.
+ * <p>
+ * Every rule is indexed by one of the tokens its pattern is sure to contain as a whole in the matching URLs,
+ * the one shared by the fewest rules. A lookup splits the URL to tokens and tries the rules of these tokens only,
+ * along with the few rules no token can be taken from (regular expressions, wildcard-only patterns).
+ * <p>
+ * The matcher is immutable once built and can be used from any thread.
+ */
+public class NetworkRuleMatcher {
+
+    private static final int MIN_TOKEN_LENGTH = 2;
+
+    private final TokenIndex requestRules;
+    private final TokenIndex documentRules;
+    private final int ruleCount;
+
+    /**
+     * Creates the matcher
+     *
+     * @param ruleTexts Rule texts. Comments, cosmetic and unsupported rules are skipped.
+     */
+    public NetworkRuleMatcher(Iterable<String> ruleTexts) {
+        TokenIndex.Builder requestRulesBuilder = new TokenIndex.Builder();
+        TokenIndex.Builder documentRulesBuilder = new TokenIndex.Builder();
+        int count = 0;
+        for (String ruleText : ruleTexts) {
+            NetworkRule rule = NetworkRule.parse(ruleText);
+            if (rule == null) {
+                continue;
+            }
+            // Document exceptions apply to the page the request is made from, not to the request
+            if (rule.isWhitelist() && rule.isDocument()) {
+                documentRulesBuilder.add(rule);
+            } else {
+                requestRulesBuilder.add(rule);
+            }
+            count++;
+        }
+        requestRules = requestRulesBuilder.build();
+        documentRules = documentRulesBuilder.build();
+        ruleCount = count;
+    }
+
+    /**
+     * Reads the rules from the filters file
+     *
+     * @param file Filters file, one rule per line
+     * @return Matcher
+     * @throws IOException if the file cannot be read
+     */
+    public static NetworkRuleMatcher load(File file) throws IOException {
+        List<String> ruleTexts = new ArrayList<>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ruleTexts.add(line);
+            }
+        } finally {
+            IoUtils.closeQuietly(reader);
+        }
+        return new NetworkRuleMatcher(ruleTexts);
+    }
+
+    /**
+     * @return Number of the network rules the matcher checks
+     */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * Finds the rule applied to the request.
+     * <p>
+     * A document exception matching the page disables filtering on it. Otherwise, exceptions win over blocking
+     * rules and $important rules win over the others.
+     *
+     * @param url         Request URL
+     * @param documentUrl URL of the page the request is made from, null if the request is the page itself
+     * @return Applied rule, a blocking rule if the request is blocked, an exception if it is explicitly allowed,
+     * or null if no rule matches the request
+     */
+    public NetworkRule match(String url, String documentUrl) {
+        String requestHost = getHost(url);
+        String documentHost = documentUrl == null ? requestHost : getHost(documentUrl);
+        boolean thirdParty = documentUrl != null && !isSameSite(requestHost, documentHost);
+
+        NetworkRule documentRule = documentRules.findBest(documentUrl == null ? url : documentUrl, documentHost, false, true);
+        if (documentRule != null) {
+            return documentRule;
+        }
+        return requestRules.findBest(url, documentHost, thirdParty, documentUrl == null);
+    }
+
+    /**
+     * Gets the host of the URL
+     *
+     * @param url URL
+     * @return Host in lower case, empty if the URL has no host
+     */
+    static String getHost(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        int userInfoEnd = url.lastIndexOf('@', end - 1);
+        if (userInfoEnd >= start) {
+            start = userInfoEnd + 1;
+        }
+        int portStart = url.lastIndexOf(':', end - 1);
+        if (portStart >= start && url.indexOf(']', start) < portStart) {
+            end = portStart;
+        }
+        return url.substring(start, end).toLowerCase();
+    }
+
+    /**
+     * Checks if the hosts belong to the same site.
+     * The site is approximated by the last two labels of the host, or three if the second to last one
+     * is a common second-level domain such as co.uk, as the public suffix list is not available.
+     */
+    static boolean isSameSite(String host, String otherHost) {
+        return getSite(host).equals(getSite(otherHost));
+    }
+
+    private static String getSite(String host) {
+        int lastDot = host.lastIndexOf('.');
+        if (lastDot <= 0) {
+            return host;
+        }
+        int secondDot = host.lastIndexOf('.', lastDot - 1);
+        if (secondDot < 0) {
+            return host;
+        }
+        boolean countryCode = host.length() - lastDot - 1 == 2;
+        boolean shortSecondLevel = lastDot - secondDot - 1 <= 3;
+        if (countryCode && shortSecondLevel) {
+            int thirdDot = host.lastIndexOf('.', secondDot - 1);
+            return host.substring(thirdDot + 1);
+        }
+        return host.substring(secondDot + 1);
+    }
+
+    private static boolean isTokenChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '%';
+    }
+
+    /**
+     * Rules indexed by token hashes in an open addressing table, so that lookups do not allocate
+     */
+    private static class TokenIndex {
+
+        private static final NetworkRule[] NO_RULES = new NetworkRule[0];
+
+        /** Token hashes, 0 marks an empty slot */
+        private final int[] hashes;
+        private final NetworkRule[][] rules;
+        private final NetworkRule[] untokenizedRules;
+        private final int mask;
+
+        private TokenIndex(Map<Integer, List<NetworkRule>> buckets, List<NetworkRule> untokenizedRules) {
+            int capacity = Integer.highestOneBit(Math.max(buckets.size(), 1) * 2) * 2;
+            hashes = new int[capacity];
+            rules = new NetworkRule[capacity][];
+            mask = capacity - 1;
+            for (Map.Entry<Integer, List<NetworkRule>> bucket : buckets.entrySet()) {
+                int slot = bucket.getKey() & mask;
+                while (hashes[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = bucket.getKey();
+                rules[slot] = bucket.getValue().toArray(NO_RULES);
+            }
+            this.untokenizedRules = untokenizedRules.toArray(NO_RULES);
+        }
+
+        /**
+         * Finds the matching rule of the highest priority
+         */
+        NetworkRule findBest(String url, String documentHost, boolean thirdParty, boolean documentRequest) {
+            NetworkRule best = null;
+            for (NetworkRule rule : untokenizedRules) {
+                best = choose(best, rule, url, documentHost, thirdParty, documentRequest);
+            }
+
+            int length = url.length();
+            int tokenStart = -1;
+            int hash = 0;
+            for (int i = 0; i <= length; i++) {
+                char c = i < length ? Character.toLowerCase(url.charAt(i)) : 0;
+                if (i < length && isTokenChar(c)) {
+                    if (tokenStart < 0) {
+                        tokenStart = i;
+                        hash = 0;
+                    }
+                    hash = 31 * hash + c;
+                    continue;
+                }
+                if (tokenStart >= 0 && i - tokenStart >= MIN_TOKEN_LENGTH) {
+                    NetworkRule[] candidates = get(hash);
+                    for (NetworkRule rule : candidates) {
+                        best = choose(best, rule, url, documentHost, thirdParty, documentRequest);
+                    }
+                }
+                tokenStart = -1;
+            }
+            return best;
+        }
+
+        private NetworkRule[] get(int hash) {
+            int key = hash == 0 ? 1 : hash;
+            int slot = key & mask;
+            while (hashes[slot] != 0) {
+                if (hashes[slot] == key) {
+                    return rules[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return NO_RULES;
+        }
+
+        private static NetworkRule choose(NetworkRule best, NetworkRule rule, String url, String documentHost,
+                                          boolean thirdParty, boolean documentRequest) {
+            if (best != null && getPriority(rule) <= getPriority(best)) {
+                return best;
+            }
+            // $document blocking rules block pages, not the requests made from them
+            if (rule.isDocument() && !rule.isWhitelist() && !documentRequest) {
+                return best;
+            }
+            if (!rule.isApplicable(documentHost, thirdParty) || !rule.matchesUrl(url)) {
+                return best;
+            }
+            return rule;
+        }
+
+        private static int getPriority(NetworkRule rule) {
+            return (rule.isImportant() ? 2 : 0) + (rule.isWhitelist() ? 1 : 0);
+        }
+
+        static class Builder {
+
+            private final Map<Integer, List<NetworkRule>> buckets = new HashMap<>();
+            private final List<NetworkRule> untokenizedRules = new ArrayList<>();
+
+            /**
+             * Adds the rule to the bucket of its least used token
+             */
+            void add(NetworkRule rule) {
+                List<NetworkRule> bestBucket = null;
+                int bestHash = 0;
+                if (!rule.isRegex()) {
+                    String pattern = rule.getPattern().toLowerCase();
+                    int start = pattern.startsWith("||") ? 2 : pattern.startsWith("|") ? 1 : 0;
+                    int end = pattern.endsWith("|") && pattern.length() > start ? pattern.length() - 1 : pattern.length();
+                    int tokenStart = -1;
+                    int hash = 0;
+                    for (int i = start; i <= end; i++) {
+                        char c = i < end ? pattern.charAt(i) : 0;
+                        if (i < end && isTokenChar(c)) {
+                            if (tokenStart < 0) {
+                                tokenStart = i;
+                                hash = 0;
+                            }
+                            hash = 31 * hash + c;
+                            continue;
+                        }
+                        if (tokenStart >= 0 && isWholeToken(pattern, tokenStart, i, start, end)) {
+                            int key = hash == 0 ? 1 : hash;
+                            List<NetworkRule> bucket = buckets.get(key);
+                            int size = bucket == null ? 0 : bucket.size();
+                            if (bestBucket == null || size < bestBucket.size()) {
+                                bestHash = key;
+                                bestBucket = bucket == null ? new ArrayList<NetworkRule>(1) : bucket;
+                            }
+                        }
+                        tokenStart = -1;
+                    }
+                }
+
+                if (bestBucket == null) {
+                    untokenizedRules.add(rule);
+                } else {
+                    if (bestBucket.isEmpty()) {
+                        buckets.put(bestHash, bestBucket);
+                    }
+                    bestBucket.add(rule);
+                }
+            }
+
+            TokenIndex build() {
+                return new TokenIndex(buckets, untokenizedRules);
+            }
+
+            /**
+             * Checks that every URL matching the pattern has the token as a whole, not as a part of a longer token.
+             * It is so if the token is bounded by anchors or literal non-token characters, but not by wildcards
+             * or the unanchored ends of the pattern.
+             */
+            private static boolean isWholeToken(String pattern, int tokenStart, int tokenEnd, int start, int end) {
+                if (tokenEnd - tokenStart < MIN_TOKEN_LENGTH) {
+                    return false;
+                }
+                boolean startBounded = tokenStart == start ? start > 0 : pattern.charAt(tokenStart - 1) != '*';
+                boolean endBounded = tokenEnd == end ? end < pattern.length() : pattern.charAt(tokenEnd) != '*';
+                return startBounded && endBounded;
+            }
+        }
+    }
+}
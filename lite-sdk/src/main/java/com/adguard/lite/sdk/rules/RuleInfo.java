@@ -0,0 +1,156 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.rules;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of {@link RuleLexer#lex(String)}: the type of the rule, where its parts are and
+ * the reason it is not accepted as a user rule.
+ */
+public class RuleInfo {
+
+    /**
+     * Rule type
+     */
+    public enum Type {
+        /** Blank line */
+        EMPTY,
+        /** Comment or the [Adblock ...] header */
+        COMMENT,
+        /** URL blocking rule */
+        NETWORK,
+        /** ##, #@#, #?# and #@?# rules */
+        ELEMENT_HIDING,
+        /** #$#, #@$#, #$?# and #@$?# rules */
+        CSS_INJECTION,
+        /** #%# and #@%# rules */
+        SCRIPT,
+        /** $$ and $@$ rules */
+        CONTENT
+    }
+
+    /**
+     * Reason the rule is not compiled as a user rule
+     */
+    public enum Reason {
+        BLANK,
+        NON_ASCII,
+        TOO_SHORT,
+        COMMENT,
+        METADATA,
+        OBSOLETE_INJECTION
+    }
+
+    private final String ruleText;
+    private final Type type;
+    private final boolean whitelist;
+    private final Reason reason;
+    private final int markerStart;
+    private final int markerEnd;
+    private final int modifiersStart;
+
+    RuleInfo(String ruleText, Type type, boolean whitelist, Reason reason,
+             int markerStart, int markerEnd, int modifiersStart) {
+        this.ruleText = ruleText;
+        this.type = type;
+        this.whitelist = whitelist;
+        this.reason = reason;
+        this.markerStart = markerStart;
+        this.markerEnd = markerEnd;
+        this.modifiersStart = modifiersStart;
+    }
+
+    /**
+     * @return Rule text
+     */
+    public String getRuleText() {
+        return ruleText;
+    }
+
+    /**
+     * @return Rule type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return True if this is an exception rule: @@ for the network rules, #@#, #@$# and so on for the others
+     */
+    public boolean isWhitelist() {
+        return whitelist;
+    }
+
+    /**
+     * @return Reason the rule is not compiled as a user rule or null if it is valid
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * @return True if the rule is compiled as a user rule
+     */
+    public boolean isValid() {
+        return reason == null;
+    }
+
+    /**
+     * @return URL pattern of the network rule without the @@ prefix and the modifiers, or null for other rules
+     */
+    public String getPattern() {
+        if (type != Type.NETWORK) {
+            return null;
+        }
+        int start = whitelist ? 2 : 0;
+        return ruleText.substring(start, modifiersStart < 0 ? ruleText.length() : modifiersStart);
+    }
+
+    /**
+     * @return Modifiers of the network rule as they are written, e.g. "domain=example.org" or "~third-party"
+     */
+    public List<String> getModifiers() {
+        if (type != Type.NETWORK || modifiersStart < 0) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(StringUtils.split(ruleText.substring(modifiersStart + 1), ','));
+    }
+
+    /**
+     * @return Domains part of the cosmetic, script or content rule (may be empty), or null for other rules
+     */
+    public String getDomains() {
+        return markerStart < 0 ? null : ruleText.substring(0, markerStart);
+    }
+
+    /**
+     * @return Text after the marker of the cosmetic, script or content rule, or null for other rules
+     */
+    public String getContent() {
+        return markerStart < 0 ? null : ruleText.substring(markerEnd);
+    }
+
+    @Override
+    public String toString() {
+        return reason == null ? type + ": " + ruleText : type + " (" + reason + "): " + ruleText;
+    }
+}
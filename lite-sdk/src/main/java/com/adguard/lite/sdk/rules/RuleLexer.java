@@ -0,0 +1,159 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.rules;
+
+/**
+ * Classifies and validates the rule text in a single pass over its characters.
+ * <p>
+ * Rule markers are only looked for at the '#' and '$' characters, and the leftmost one wins, as the domains
+ * part of a rule can't contain them, while the CSS or the script after the marker can.
+ */
+public final class RuleLexer {
+
+    private static final int MIN_RULE_LENGTH = 4;
+    private static final String COMMENT = "!";
+    private static final String ADBLOCK_META_START = "[Adblock";
+    private static final String WHITELIST_PREFIX = "@@";
+    private static final String OBSOLETE_INJECTION_PREFIX = "###adg_start_";
+    private static final String OBSOLETE_SCRIPT_INJECTION = "script_inject";
+    private static final String OBSOLETE_STYLE_INJECTION = "style_inject";
+
+    /** '#' markers in the order they are tried, longer ones first as they start with the shorter ones */
+    private static final String[] MARKERS = {"#@$?#", "#@$#", "#@?#", "#@%#", "#@#",
+            "#$?#", "#$#", "#?#", "#%#", "##"};
+    private static final RuleInfo.Type[] MARKER_TYPES = {
+            RuleInfo.Type.CSS_INJECTION, RuleInfo.Type.CSS_INJECTION, RuleInfo.Type.ELEMENT_HIDING,
+            RuleInfo.Type.SCRIPT, RuleInfo.Type.ELEMENT_HIDING,
+            RuleInfo.Type.CSS_INJECTION, RuleInfo.Type.CSS_INJECTION, RuleInfo.Type.ELEMENT_HIDING,
+            RuleInfo.Type.SCRIPT, RuleInfo.Type.ELEMENT_HIDING};
+    private static final int WHITELIST_MARKERS = 5;
+    private static final String CONTENT_MARKER = "$$";
+    private static final String CONTENT_WHITELIST_MARKER = "$@$";
+
+    private RuleLexer() {
+    }
+
+    /**
+     * Lexes the rule text
+     *
+     * @param ruleText Rule text, trimmed
+     * @return Rule info
+     */
+    public static RuleInfo lex(String ruleText) {
+        String text = ruleText == null ? "" : ruleText;
+        int length = text.length();
+
+        int first = 0;
+        while (first < length && Character.isWhitespace(text.charAt(first))) {
+            first++;
+        }
+        if (first == length) {
+            return new RuleInfo(text, RuleInfo.Type.EMPTY, false, RuleInfo.Reason.BLANK, -1, -1, -1);
+        }
+        if (text.startsWith(COMMENT)) {
+            return new RuleInfo(text, RuleInfo.Type.COMMENT, false, RuleInfo.Reason.COMMENT, -1, -1, -1);
+        }
+        if (text.startsWith(ADBLOCK_META_START)) {
+            return new RuleInfo(text, RuleInfo.Type.COMMENT, false, RuleInfo.Reason.METADATA, -1, -1, -1);
+        }
+
+        RuleInfo.Type type = null;
+        boolean whitelist = false;
+        boolean nonAscii = false;
+        boolean obsolete = false;
+        int markerStart = -1;
+        int markerEnd = -1;
+        int lastDollar = -1;
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c > 0x7f) {
+                nonAscii = true;
+            } else if (c == '#') {
+                if (isObsoleteInjection(text, i)) {
+                    obsolete = true;
+                }
+                if (type == null) {
+                    for (int m = 0; m < MARKERS.length; m++) {
+                        if (text.startsWith(MARKERS[m], i)) {
+                            type = MARKER_TYPES[m];
+                            whitelist = m < WHITELIST_MARKERS;
+                            markerStart = i;
+                            markerEnd = i + MARKERS[m].length();
+                            break;
+                        }
+                    }
+                }
+            } else if (c == '$' && type == null) {
+                if (text.startsWith(CONTENT_MARKER, i)) {
+                    type = RuleInfo.Type.CONTENT;
+                    markerStart = i;
+                    markerEnd = i + CONTENT_MARKER.length();
+                } else if (text.startsWith(CONTENT_WHITELIST_MARKER, i)) {
+                    type = RuleInfo.Type.CONTENT;
+                    whitelist = true;
+                    markerStart = i;
+                    markerEnd = i + CONTENT_WHITELIST_MARKER.length();
+                } else {
+                    lastDollar = i;
+                }
+            }
+        }
+
+        int modifiersStart = -1;
+        if (type == null) {
+            type = RuleInfo.Type.NETWORK;
+            whitelist = text.startsWith(WHITELIST_PREFIX);
+            modifiersStart = getModifiersStart(text, lastDollar, whitelist ? WHITELIST_PREFIX.length() : 0);
+        }
+
+        RuleInfo.Reason reason = null;
+        if (nonAscii) {
+            reason = RuleInfo.Reason.NON_ASCII;
+        } else if (length <= MIN_RULE_LENGTH) {
+            reason = RuleInfo.Reason.TOO_SHORT;
+        } else if (obsolete) {
+            reason = RuleInfo.Reason.OBSOLETE_INJECTION;
+        }
+        return new RuleInfo(text, type, whitelist, reason, markerStart, markerEnd, modifiersStart);
+    }
+
+    /**
+     * Modifiers start with the last $ followed by a modifier name,
+     * so that the $ of a regular expression is not taken for it.
+     *
+     * @param text       Rule text
+     * @param lastDollar Index of the last $ in the rule or -1
+     * @param start      Index the pattern starts at
+     * @return Index of the $ or -1 if the rule has no modifiers
+     */
+    private static int getModifiersStart(String text, int lastDollar, int start) {
+        if (lastDollar < start || lastDollar == text.length() - 1) {
+            return -1;
+        }
+        char c = text.charAt(lastDollar + 1);
+        return Character.isLetter(c) || c == '~' ? lastDollar : -1;
+    }
+
+    private static boolean isObsoleteInjection(String text, int index) {
+        if (!text.startsWith(OBSOLETE_INJECTION_PREFIX, index)) {
+            return false;
+        }
+        int suffix = index + OBSOLETE_INJECTION_PREFIX.length();
+        return text.startsWith(OBSOLETE_SCRIPT_INJECTION, suffix) || text.startsWith(OBSOLETE_STYLE_INJECTION, suffix);
+    }
+}
@@ -0,0 +1,358 @@
+/**
+ * This file is part of AdGuard Content Blocker (https://github.com/AdguardTeam/ContentBlocker).
+ * Copyright © 2018 AdGuard Content Blocker. All rights reserved.
+ * <p>
+ * AdGuard Content Blocker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * <p>
+ * AdGuard Content Blocker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * AdGuard Content Blocker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.adguard.lite.sdk.rules;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Drops the network rules that do not change what is blocked.
+ * <p>
+ * Modifiers of the network rules are normalized: they are sorted, as are the $domain values,
+ * so that rules differing only in the order of their modifiers become duplicates.
+ * A rule is subsumed by a broader rule of the same kind with the same modifiers,
+ * e.g. {@code ||ads.example.org^} and {@code ||ads.example.org/banner} by {@code ||example.org^}.
+ * Broad rules are kept in a trie of reversed domain labels per modifier set.
+ * <p>
+ * The optimizer makes two passes over the rules: {@link #collect(String)} every rule first,
+ * then {@link #optimize(String)} every rule in the same order. The rules {@link #collect(String)} returns false for
+ * are never changed, so the caller may write them as they are without the second pass.
+ * Rules with modifiers it does not know, and rules targeted by a $badfilter, are left as they are.
+ * The $badfilter rules of other sources, e.g. user rules, are taken into account with {@link #addBadfilter(String)}.
+ */
+public class RuleOptimizer {
+
+    private static final String WHITELIST_PREFIX = "@@";
+    private static final String DOMAIN_ANCHOR = "||";
+    private static final String OPTION_DOMAIN = "domain=";
+    private static final String OPTION_BADFILTER = "badfilter";
+
+    /** Modifiers that have no value with commas, so they are safe to split and reorder */
+    private static final Set<String> KNOWN_OPTIONS = new HashSet<>(Arrays.asList(
+            "third-party", "first-party", "match-case", "important", "document", "popup",
+            "elemhide", "generichide", "genericblock", "urlblock", "jsinject", "content",
+            "script", "image", "stylesheet", "object", "object-subrequest", "xmlhttprequest", "subdocument",
+            "media", "font", "websocket", "webrtc", "ping", "other"));
+
+    /** Broad rules collected in the first pass, they are added to the tries once the $badfilter targets are known */
+    private List<Candidate> collectedBroadRules = new ArrayList<>();
+    /** Roots of the broad rule tries by the kind of rule and its normalized modifiers */
+    private final Map<String, Node> broadRules = new HashMap<>();
+    /** Patterns of the rules disabled by $badfilter, with the @@ prefix of the exceptions */
+    private final Set<String> badfilterTargets = new HashSet<>();
+    /**
+     * Normalized texts of the rules whose modifiers are reordered by the normalization.
+     * Identical texts are deduplicated by the store, so only such rules can become duplicates.
+     */
+    private final Set<String> reorderedRules = new HashSet<>();
+    /** Reordered rules that have been written already */
+    private final Set<String> writtenReorderedRules = new HashSet<>();
+
+    private int broadRuleCount;
+
+    /**
+     * Collects the broad rules and the $badfilter targets in the first pass
+     *
+     * @param ruleText Rule text
+     * @return True if {@link #optimize(String)} may change or drop the rule
+     */
+    public boolean collect(String ruleText) {
+        checkCollecting();
+        if (!isAnchored(ruleText) && ruleText.indexOf('$') < 0) {
+            return false;
+        }
+        Candidate candidate = Candidate.parse(ruleText);
+        if (candidate == null) {
+            return false;
+        }
+        if (candidate.badfilter) {
+            badfilterTargets.add(candidate.getPatternKey());
+            return false;
+        }
+        if (candidate.modifiers == null) {
+            return false;
+        }
+        if (candidate.broad) {
+            collectedBroadRules.add(candidate);
+        }
+        if (!candidate.modifiers.isEmpty()) {
+            String normalized = candidate.toNormalizedText();
+            if (!normalized.equals(ruleText)) {
+                reorderedRules.add(normalized);
+            }
+        }
+        return candidate.host != null || !candidate.modifiers.isEmpty();
+    }
+
+    /**
+     * Collects the $badfilter target of a rule that is not optimized, so that its target is kept.
+     * Rules without $badfilter are ignored.
+     *
+     * @param ruleText Rule text
+     */
+    public void addBadfilter(String ruleText) {
+        checkCollecting();
+        Candidate candidate = ruleText.contains(OPTION_BADFILTER) ? Candidate.parse(ruleText) : null;
+        if (candidate != null && candidate.badfilter) {
+            badfilterTargets.add(candidate.getPatternKey());
+        }
+    }
+
+    /**
+     * @param ruleText Rule text
+     * @return True if the rule is a network rule with the $badfilter modifier
+     */
+    public static boolean isBadfilter(String ruleText) {
+        if (!ruleText.contains(OPTION_BADFILTER)) {
+            return false;
+        }
+        Candidate candidate = Candidate.parse(ruleText);
+        return candidate != null && candidate.badfilter;
+    }
+
+    /**
+     * Optimizes the rule in the second pass
+     *
+     * @param ruleText Rule text
+     * @return Rule text to write, with the modifiers normalized, or null if the rule is redundant
+     */
+    public String optimize(String ruleText) {
+        if (collectedBroadRules != null) {
+            buildTries();
+        }
+        // Neither subsumed nor normalized, most of the cosmetic rules take this way
+        if (!isAnchored(ruleText) && ruleText.indexOf('$') < 0) {
+            return ruleText;
+        }
+
+        Candidate candidate = Candidate.parse(ruleText);
+        if (candidate == null || candidate.badfilter || candidate.modifiers == null
+                || !badfilterTargets.isEmpty() && badfilterTargets.contains(candidate.getPatternKey())) {
+            return ruleText;
+        }
+        if (candidate.host != null && isSubsumed(candidate)) {
+            return null;
+        }
+        if (candidate.modifiers.isEmpty()) {
+            return ruleText;
+        }
+
+        String normalized = candidate.toNormalizedText();
+        if (!reorderedRules.contains(normalized)) {
+            // Normalized already, and no other rule is normalized to it
+            return ruleText;
+        }
+        return writtenReorderedRules.add(normalized) ? normalized : null;
+    }
+
+    /**
+     * @return Number of the distinct broad rules the others are checked against, known after the first pass
+     */
+    public int getBroadRuleCount() {
+        return broadRuleCount;
+    }
+
+    private void checkCollecting() {
+        if (collectedBroadRules == null) {
+            throw new IllegalStateException("Rules cannot be collected after the optimization has started");
+        }
+    }
+
+    private static boolean isAnchored(String ruleText) {
+        return ruleText.startsWith(DOMAIN_ANCHOR) || ruleText.startsWith(WHITELIST_PREFIX + DOMAIN_ANCHOR);
+    }
+
+    private void buildTries() {
+        for (Candidate candidate : collectedBroadRules) {
+            if (badfilterTargets.contains(candidate.getPatternKey())) {
+                continue;
+            }
+            Node node = broadRules.get(candidate.getModifiersKey());
+            if (node == null) {
+                node = new Node();
+                broadRules.put(candidate.getModifiersKey(), node);
+            }
+            String[] labels = StringUtils.split(candidate.host, '.');
+            for (int i = labels.length - 1; i >= 0; i--) {
+                node = node.getOrAddChild(labels[i]);
+            }
+            if (!node.terminal) {
+                node.terminal = true;
+                broadRuleCount++;
+            }
+        }
+        collectedBroadRules = null;
+    }
+
+    private boolean isSubsumed(Candidate candidate) {
+        Node node = broadRules.get(candidate.getModifiersKey());
+        if (node == null) {
+            return false;
+        }
+        String[] labels = StringUtils.split(candidate.host, '.');
+        for (int i = labels.length - 1; i >= 0; i--) {
+            node = node.getChild(labels[i]);
+            if (node == null) {
+                return false;
+            }
+            // A broad rule is not subsumed by itself, but a narrower rule for the same host is
+            if (node.terminal && (i > 0 || !candidate.broad)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Network rule split to the parts the optimizer works with
+     */
+    private static class Candidate {
+
+        private final boolean whitelist;
+        private final String pattern;
+        /** Sorted normalized modifiers, null if some of them are unknown */
+        private final List<String> modifiers;
+        private final boolean badfilter;
+        /** Host of the ||host^ or ||host/ rules, null for other patterns */
+        private final String host;
+        /** True if the pattern is exactly ||host^ */
+        private final boolean broad;
+        private String modifiersKey;
+
+        private Candidate(boolean whitelist, String pattern, List<String> modifiers, boolean badfilter) {
+            this.whitelist = whitelist;
+            this.pattern = pattern;
+            this.modifiers = modifiers;
+            this.badfilter = badfilter;
+
+            int hostEnd = getHostEnd(pattern);
+            if (hostEnd > DOMAIN_ANCHOR.length() && pattern.charAt(hostEnd - 1) != '.') {
+                this.host = pattern.substring(DOMAIN_ANCHOR.length(), hostEnd);
+                this.broad = hostEnd == pattern.length() - 1 && pattern.charAt(hostEnd) == '^';
+            } else {
+                this.host = null;
+                this.broad = false;
+            }
+        }
+
+        static Candidate parse(String ruleText) {
+            RuleInfo info = RuleLexer.lex(ruleText);
+            if (info.getType() != RuleInfo.Type.NETWORK) {
+                return null;
+            }
+
+            boolean badfilter = false;
+            List<String> modifiers = new ArrayList<>();
+            for (String option : info.getModifiers()) {
+                String name = StringUtils.removeStart(option, "~");
+                if (OPTION_BADFILTER.equals(option)) {
+                    badfilter = true;
+                } else if (modifiers == null) {
+                    // Unknown modifier found, looking for $badfilter only
+                    continue;
+                } else if (option.startsWith(OPTION_DOMAIN)) {
+                    modifiers.add(normalizeDomainOption(option));
+                } else if (KNOWN_OPTIONS.contains(name)) {
+                    modifiers.add(option);
+                } else {
+                    modifiers = null;
+                }
+            }
+            if (modifiers != null) {
+                Collections.sort(modifiers);
+            }
+            return new Candidate(info.isWhitelist(), info.getPattern(), modifiers, badfilter);
+        }
+
+        String getPatternKey() {
+            return whitelist ? WHITELIST_PREFIX + pattern : pattern;
+        }
+
+        String getModifiersKey() {
+            if (modifiersKey == null) {
+                modifiersKey = (whitelist ? WHITELIST_PREFIX : "") + StringUtils.join(modifiers, ',');
+            }
+            return modifiersKey;
+        }
+
+        String toNormalizedText() {
+            return getPatternKey() + '$' + StringUtils.join(modifiers, ',');
+        }
+
+        /**
+         * The host of ||host must be followed by a separator that can't be a part of the host,
+         * otherwise the rule matches longer hosts too, e.g. ||example.org matches example.organic.com.
+         *
+         * @return Index of the character after the host or -1 if the pattern is not anchored to a host
+         */
+        private static int getHostEnd(String pattern) {
+            if (!pattern.startsWith(DOMAIN_ANCHOR)) {
+                return -1;
+            }
+            for (int i = DOMAIN_ANCHOR.length(); i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '^' || c == '/' || c == ':') {
+                    return i;
+                }
+                if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '.' || c == '-')) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        private static String normalizeDomainOption(String option) {
+            String[] domains = StringUtils.split(option.substring(OPTION_DOMAIN.length()), '|');
+            Set<String> sorted = new TreeSet<>(Arrays.asList(domains));
+            return OPTION_DOMAIN + StringUtils.join(sorted, '|');
+        }
+    }
+
+    /**
+     * Node of the reversed domain labels trie
+     */
+    private static class Node {
+
+        private Map<String, Node> children;
+        private boolean terminal;
+
+        Node getChild(String label) {
+            return children == null ? null : children.get(label);
+        }
+
+        Node getOrAddChild(String label) {
+            if (children == null) {
+                children = new HashMap<>(2);
+            }
+            Node child = children.get(label);
+            if (child == null) {
+                child = new Node();
+                children.put(label, child);
+            }
+            return child;
+        }
+    }
+}
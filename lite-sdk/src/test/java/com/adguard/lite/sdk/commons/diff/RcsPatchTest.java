@@ -0,0 +1,179 @@
+package com.adguard.lite.sdk.commons.diff;
+
+import com.adguard.lite.sdk.ServiceApiClient;
+import com.adguard.lite.sdk.commons.io.LineHandler;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class RcsPatchTest {
+
+    private static final List<String> FILTER_V1 = Arrays.asList(
+            "! Title: Test filter",
+            "! Version: 1.0.0.1",
+            "! Diff-Path: ../patches/1.patch",
+            "||example.org^",
+            "",
+            "example.com##.banner",
+            "||ads.example.net^");
+
+    private static final List<String> FILTER_V2 = Arrays.asList(
+            "! Title: Test filter",
+            "! Version: 1.0.0.2",
+            "! Diff-Path: ../patches/2.patch",
+            "||example.org^",
+            "",
+            "example.com##.banner",
+            "example.com##.popup",
+            "||tracker.example.net^");
+
+    private HttpServer server;
+    private final Map<String, String> responses = new HashMap<>();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String body = responses.get(exchange.getRequestURI().getPath());
+                if (body == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, bytes.length);
+                    OutputStream outputStream = exchange.getResponseBody();
+                    outputStream.write(bytes);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testApply() throws Exception {
+        RcsPatch patch = RcsPatch.parse(createPatch(checksum(FILTER_V2)), null);
+        assertEquals(FILTER_V2, apply(patch, FILTER_V1));
+    }
+
+    @Test
+    public void testNamedPatch() throws Exception {
+        List<String> lines = new ArrayList<>(Arrays.asList("diff name:other checksum:0 lines:1", "d1 1"));
+        lines.addAll(createPatch(checksum(FILTER_V2)));
+        RcsPatch patch = RcsPatch.parse(lines, "test");
+        assertEquals(FILTER_V2, apply(patch, FILTER_V1));
+    }
+
+    @Test(expected = IOException.class)
+    public void testChecksumMismatch() throws Exception {
+        RcsPatch patch = RcsPatch.parse(createPatch(checksum(FILTER_V1)), null);
+        apply(patch, FILTER_V1);
+    }
+
+    @Test(expected = IOException.class)
+    public void testPatchBeyondText() throws Exception {
+        RcsPatch patch = RcsPatch.parse(Arrays.asList("d20 1"), null);
+        apply(patch, FILTER_V1);
+    }
+
+    @Test
+    public void testDifferentialUpdate() throws Exception {
+        String filterUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/filters/{0}.txt";
+        responses.put("/filters/1.txt", StringUtils.join(FILTER_V1, "\n"));
+        responses.put("/patches/1.patch", StringUtils.join(createPatch(checksum(FILTER_V2)), "\n"));
+
+        final List<String> text = new ArrayList<>();
+        ServiceApiClient.downloadFilterText(1, filterUrl, new LineHandler() {
+            @Override
+            public void handleLine(String line) {
+                text.add(line);
+            }
+        });
+        assertEquals(FILTER_V1, text);
+
+        String patchUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/patches/1.patch";
+        RcsPatch patch = RcsPatch.parse(ServiceApiClient.downloadFilterPatch(patchUrl), null);
+        assertEquals(FILTER_V2, apply(patch, text));
+
+        // The next patch is not published yet
+        assertNull(ServiceApiClient.downloadFilterPatch(patchUrl.replace("1.patch", "2.patch")));
+    }
+
+    @Test
+    public void testCorruptedPatchFromServer() throws Exception {
+        String patchUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/patches/1.patch";
+        responses.put("/patches/1.patch", StringUtils.join(createPatch("0000000000000000000000000000000000000000"), "\n"));
+
+        RcsPatch patch = RcsPatch.parse(ServiceApiClient.downloadFilterPatch(patchUrl), null);
+        try {
+            apply(patch, FILTER_V1);
+            fail("Checksum mismatch is expected");
+        } catch (IOException ex) {
+            // Caller falls back to the full download
+        }
+    }
+
+    private static List<String> createPatch(String checksum) {
+        List<String> body = Arrays.asList(
+                "d2 2",
+                "a3 2",
+                "! Version: 1.0.0.2",
+                "! Diff-Path: ../patches/2.patch",
+                "d7 1",
+                "a7 2",
+                "example.com##.popup",
+                "||tracker.example.net^");
+        List<String> lines = new ArrayList<>();
+        lines.add("diff name:test checksum:" + checksum + " lines:" + body.size());
+        lines.addAll(body);
+        return lines;
+    }
+
+    private static List<String> apply(RcsPatch patch, List<String> original) throws IOException {
+        final List<String> result = new ArrayList<>();
+        patch.apply(new BufferedReader(new StringReader(StringUtils.join(original, "\n"))), new LineHandler() {
+            @Override
+            public void handleLine(String line) {
+                result.add(line);
+            }
+        });
+        return result;
+    }
+
+    private static String checksum(List<String> lines) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        for (String line : lines) {
+            digest.update((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return StringUtils.leftPad(new BigInteger(1, digest.digest()).toString(16), 40, '0');
+    }
+}
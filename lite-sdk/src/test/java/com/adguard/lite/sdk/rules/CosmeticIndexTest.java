@@ -0,0 +1,127 @@
+package com.adguard.lite.sdk.rules;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CosmeticIndexTest {
+
+    private static final List<String> RULES = Arrays.asList(
+            "! Comment",
+            "||ads.example.org^",
+            "##.generic-banner",
+            "~example.com##.not-on-example",
+            "example.com##.example-ad",
+            "example.com,~sub.example.com##.example-only",
+            "news.example.com##.news-ad",
+            "example.org#$#body { overflow: auto !important; }",
+            "example.com#@#.generic-banner",
+            "##.cancelled-everywhere",
+            "#@#.cancelled-everywhere",
+            "example.*##.any-tld",
+            "example.com#%#window.ads = false;");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CosmeticIndex buildIndex() {
+        CosmeticIndex.Builder builder = new CosmeticIndex.Builder();
+        for (String rule : RULES) {
+            builder.add(rule);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testRuleCount() {
+        // Comments, network and script rules are skipped
+        assertEquals(10, buildIndex().getRuleCount());
+    }
+
+    @Test
+    public void testSpecificRules() {
+        CosmeticIndex index = buildIndex();
+        assertRules(index.getRules("example.com", false),
+                "example.com##.example-ad",
+                "example.com,~sub.example.com##.example-only",
+                "example.com#@#.generic-banner",
+                "example.*##.any-tld");
+        assertRules(index.getRules("www.news.example.com", false),
+                "example.com##.example-ad",
+                "example.com,~sub.example.com##.example-only",
+                "news.example.com##.news-ad",
+                "example.com#@#.generic-banner",
+                "example.*##.any-tld");
+        assertRules(index.getRules("sub.example.com", false),
+                "example.com##.example-ad",
+                "example.com#@#.generic-banner",
+                "example.*##.any-tld");
+        assertRules(index.getRules("example.org", false),
+                "example.org#$#body { overflow: auto !important; }",
+                "example.*##.any-tld");
+        assertRules(index.getRules("notexample.com", false));
+    }
+
+    @Test
+    public void testGenericRules() {
+        CosmeticIndex index = buildIndex();
+        assertRules(index.getRules("other.net", true),
+                "##.generic-banner",
+                "~example.com##.not-on-example");
+        // Restricted and cancelled on example.com
+        assertRules(index.getRules("EXAMPLE.com", true),
+                "example.com##.example-ad",
+                "example.com,~sub.example.com##.example-only",
+                "example.com#@#.generic-banner",
+                "example.*##.any-tld");
+    }
+
+    @Test
+    public void testTldWildcard() {
+        CosmeticIndex index = buildIndex();
+        assertRules(index.getRules("www.example.co.uk", false), "example.*##.any-tld");
+        assertRules(index.getRules("example", false));
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        CosmeticIndex index = buildIndex();
+        File file = folder.newFile("cosmetic.idx");
+        index.write(file);
+        CosmeticIndex readIndex = CosmeticIndex.read(file);
+
+        assertEquals(index.getRuleCount(), readIndex.getRuleCount());
+        for (String host : Arrays.asList("example.com", "sub.example.com", "news.example.com", "example.org", "other.net")) {
+            assertEquals(toTexts(index.getRules(host, true)), toTexts(readIndex.getRules(host, true)));
+        }
+    }
+
+    @Test
+    public void testParse() {
+        CosmeticRule rule = CosmeticRule.parse("example.com,~sub.example.com#@$#.ad { display: none; }");
+        assertEquals(CosmeticRule.Type.CSS, rule.getType());
+        assertTrue(rule.isWhitelist());
+        assertEquals(".ad { display: none; }", rule.getContent());
+        assertEquals(null, CosmeticRule.parse("||example.com/#anchor"));
+    }
+
+    private static void assertRules(List<CosmeticRule> rules, String... expected) {
+        assertEquals(Arrays.asList(expected), toTexts(rules));
+    }
+
+    private static List<String> toTexts(List<CosmeticRule> rules) {
+        List<String> texts = new ArrayList<>();
+        for (CosmeticRule rule : rules) {
+            texts.add(rule.getRuleText());
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,150 @@
+package com.adguard.lite.sdk.rules;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CosmeticRuleMergerTest {
+
+    private static final String[] DOMAINS = {"a.com", "b.com", "sub.a.com", "c.org", "example.*", "d.net"};
+    private static final String[] HOSTS = {"a.com", "www.a.com", "sub.a.com", "x.sub.a.com", "b.com", "c.org",
+            "example.com", "example.co.uk", "d.net", "other.net"};
+    private static final String[] MARKERS = {"##", "#@#", "#?#", "#$#", "#@$#"};
+    private static final String[] CONTENTS = {".ad", ".banner", "body { color: red; }"};
+
+    @Test
+    public void testMerge() {
+        List<String> merged = merge(1000,
+                "! Comment",
+                "a.com##.ad",
+                "||ads.example.org^",
+                "b.com,c.org##.ad",
+                "a.com##.banner",
+                "d.net##.ad",
+                "a.com#@#.ad",
+                "b.com#@#.ad",
+                "~a.com##.ad",
+                "##.ad",
+                "a.com#%#window.ads = false;",
+                "b.com#%#window.ads = false;");
+        assertEquals(Arrays.asList(
+                "! Comment",
+                "a.com,b.com,c.org,d.net##.ad",
+                "||ads.example.org^",
+                "a.com##.banner",
+                "a.com,b.com#@#.ad",
+                "~a.com##.ad",
+                "##.ad",
+                "a.com#%#window.ads = false;",
+                "b.com#%#window.ads = false;"), merged);
+    }
+
+    @Test
+    public void testMaxLineLength() {
+        List<String> merged = merge(20,
+                "a.com##.ad",
+                "b.com##.ad",
+                "c.com##.ad",
+                "d.com##.ad",
+                "very-long-domain.com##.ad");
+        assertEquals(Arrays.asList(
+                "a.com,b.com##.ad",
+                "c.com,d.com##.ad",
+                "very-long-domain.com##.ad"), merged);
+        for (String rule : merged.subList(0, 2)) {
+            assertTrue(rule, rule.length() <= 20);
+        }
+    }
+
+    @Test
+    public void testEquivalence() {
+        assertEquivalent(Arrays.asList(
+                "a.com##.ad",
+                "sub.a.com##.ad",
+                "b.com##.ad",
+                "sub.a.com#@#.ad",
+                "example.*##.banner",
+                "c.org##.banner",
+                "a.com,~sub.a.com##.banner",
+                "#@#.banner"));
+    }
+
+    @Test
+    public void testRandomEquivalence() {
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < 200; iteration++) {
+            List<String> rules = new ArrayList<>();
+            int count = 1 + random.nextInt(30);
+            for (int i = 0; i < count; i++) {
+                StringBuilder sb = new StringBuilder();
+                int domainCount = random.nextInt(3);
+                for (int d = 0; d < domainCount; d++) {
+                    if (d > 0) {
+                        sb.append(',');
+                    }
+                    if (random.nextInt(5) == 0) {
+                        sb.append('~');
+                    }
+                    sb.append(DOMAINS[random.nextInt(DOMAINS.length)]);
+                }
+                sb.append(MARKERS[random.nextInt(MARKERS.length)]);
+                sb.append(CONTENTS[random.nextInt(CONTENTS.length)]);
+                if (!rules.contains(sb.toString())) {
+                    rules.add(sb.toString());
+                }
+            }
+            assertEquivalent(rules);
+        }
+    }
+
+    private static void assertEquivalent(List<String> rules) {
+        CosmeticIndex original = index(rules);
+        CosmeticIndex merged = index(merge(1000, rules.toArray(new String[0])));
+        for (String host : HOSTS) {
+            for (boolean includeGeneric : new boolean[]{false, true}) {
+                assertEquals(rules + " on " + host,
+                        describe(original.getRules(host, includeGeneric)),
+                        describe(merged.getRules(host, includeGeneric)));
+            }
+        }
+    }
+
+    private static CosmeticIndex index(List<String> rules) {
+        CosmeticIndex.Builder builder = new CosmeticIndex.Builder();
+        for (String rule : rules) {
+            builder.add(rule);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Merged rules replace several rules with the same content, so the applied contents are compared
+     */
+    private static Set<String> describe(List<CosmeticRule> rules) {
+        Set<String> result = new TreeSet<>();
+        for (CosmeticRule rule : rules) {
+            result.add(rule.getType() + (rule.isWhitelist() ? " exception " : " ") + rule.getContent());
+        }
+        return result;
+    }
+
+    private static List<String> merge(int maxLineLength, String... rules) {
+        CosmeticRuleMerger merger = new CosmeticRuleMerger(maxLineLength);
+        for (String rule : rules) {
+            merger.collect(rule);
+        }
+        List<String> merged = new ArrayList<>();
+        for (String rule : rules) {
+            merged.addAll(merger.merge(rule));
+        }
+        return merged;
+    }
+}
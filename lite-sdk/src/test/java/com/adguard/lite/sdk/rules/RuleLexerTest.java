@@ -0,0 +1,106 @@
+package com.adguard.lite.sdk.rules;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RuleLexerTest {
+
+    @Test
+    public void testTypes() {
+        assertType(RuleInfo.Type.EMPTY, false, "   ");
+        assertType(RuleInfo.Type.COMMENT, false, "! Title: Filter");
+        assertType(RuleInfo.Type.COMMENT, false, "[Adblock Plus 2.0]");
+        assertType(RuleInfo.Type.NETWORK, false, "||ads.example.org^");
+        assertType(RuleInfo.Type.NETWORK, true, "@@||example.org^$document");
+        assertType(RuleInfo.Type.NETWORK, false, "||example.org/#anchor");
+        assertType(RuleInfo.Type.ELEMENT_HIDING, false, "example.org##.banner");
+        assertType(RuleInfo.Type.ELEMENT_HIDING, true, "example.org#@#.banner");
+        assertType(RuleInfo.Type.ELEMENT_HIDING, false, "example.org#?#div:has(> .ad)");
+        assertType(RuleInfo.Type.ELEMENT_HIDING, true, "example.org#@?#div:has(> .ad)");
+        assertType(RuleInfo.Type.CSS_INJECTION, false, "example.org#$#body { overflow: auto; }");
+        assertType(RuleInfo.Type.CSS_INJECTION, true, "example.org#@$#body { overflow: auto; }");
+        assertType(RuleInfo.Type.CSS_INJECTION, false, "example.org#$?#div:has(> .ad) { display: none; }");
+        assertType(RuleInfo.Type.CSS_INJECTION, true, "example.org#@$?#div:has(> .ad) { display: none; }");
+        assertType(RuleInfo.Type.SCRIPT, false, "example.org#%#window.ads = false;");
+        assertType(RuleInfo.Type.SCRIPT, true, "example.org#@%#window.ads = false;");
+        assertType(RuleInfo.Type.CONTENT, false, "example.org$$script[data-src=\"ads\"]");
+        assertType(RuleInfo.Type.CONTENT, true, "example.org$@$script[data-src=\"ads\"]");
+    }
+
+    @Test
+    public void testLeftmostMarkerWins() {
+        assertType(RuleInfo.Type.ELEMENT_HIDING, false, "example.org##div[title=\"$$\"]");
+        assertType(RuleInfo.Type.CSS_INJECTION, false, "example.org#$#div[title=\"##\"] { color: red; }");
+    }
+
+    @Test
+    public void testParts() {
+        RuleInfo info = RuleLexer.lex("@@||example.org^$domain=a.com|~b.com,~third-party");
+        assertEquals("||example.org^", info.getPattern());
+        assertEquals(Arrays.asList("domain=a.com|~b.com", "~third-party"), info.getModifiers());
+        assertNull(info.getDomains());
+
+        info = RuleLexer.lex("/banner\\d+$/");
+        assertEquals("/banner\\d+$/", info.getPattern());
+        assertEquals(Collections.emptyList(), info.getModifiers());
+
+        info = RuleLexer.lex("example.com,~sub.example.com#@$#body { color: red; }");
+        assertEquals("example.com,~sub.example.com", info.getDomains());
+        assertEquals("body { color: red; }", info.getContent());
+        assertNull(info.getPattern());
+        assertEquals(Collections.emptyList(), info.getModifiers());
+    }
+
+    @Test
+    public void testReasons() {
+        assertEquals(RuleInfo.Reason.BLANK, RuleLexer.lex("").getReason());
+        assertEquals(RuleInfo.Reason.BLANK, RuleLexer.lex(null).getReason());
+        assertEquals(RuleInfo.Reason.COMMENT, RuleLexer.lex("! comment").getReason());
+        assertEquals(RuleInfo.Reason.METADATA, RuleLexer.lex("[Adblock Plus 2.0]").getReason());
+        assertEquals(RuleInfo.Reason.TOO_SHORT, RuleLexer.lex("##ad").getReason());
+        assertEquals(RuleInfo.Reason.NON_ASCII, RuleLexer.lex("пример.рф##.banner").getReason());
+        assertEquals(RuleInfo.Reason.OBSOLETE_INJECTION,
+                RuleLexer.lex("example.org###adg_start_script_inject").getReason());
+        assertEquals(RuleInfo.Reason.OBSOLETE_INJECTION,
+                RuleLexer.lex("example.org#$#x { } ###adg_start_style_inject").getReason());
+        assertTrue(RuleLexer.lex("##.adbanner").isValid());
+    }
+
+    /**
+     * The lexer accepts the same user rules as the regular expression based check it replaces
+     */
+    @Test
+    public void testValidityMatchesRegexCheck() {
+        List<String> rules = Arrays.asList("", " ", "\t", "abcd", "abcde", "! comment", " ! indented comment",
+                "[Adblock Plus 2.0]", "||example.org^", "example.org##.ad", "exämple.org##.ad",
+                "tab\there##.ad", "example.org###adg_start_script_inject",
+                "example.org###adg_start_style_inject", "example.org###adg_start_other", "@@||example.org^");
+        for (String rule : rules) {
+            assertEquals(rule, isValidByRegex(rule), RuleLexer.lex(rule).isValid());
+        }
+    }
+
+    private static boolean isValidByRegex(String userRule) {
+        return StringUtils.isNotBlank(userRule) &&
+                userRule.matches("\\p{ASCII}+") &&
+                StringUtils.length(userRule) > 4 &&
+                !StringUtils.startsWith(userRule, "!") &&
+                !StringUtils.startsWith(userRule, "[Adblock") &&
+                !StringUtils.contains(userRule, "###adg_start_script_inject") &&
+                !StringUtils.contains(userRule, "###adg_start_style_inject");
+    }
+
+    private static void assertType(RuleInfo.Type type, boolean whitelist, String ruleText) {
+        RuleInfo info = RuleLexer.lex(ruleText);
+        assertEquals(ruleText, type, info.getType());
+        assertEquals(ruleText, whitelist, info.isWhitelist());
+    }
+}
@@ -0,0 +1,157 @@
+package com.adguard.lite.sdk.rules;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RuleOptimizerTest {
+
+    @Test
+    public void testSubsumedRules() {
+        List<String> optimized = optimize(
+                "||example.org^",
+                "||ads.example.org^",
+                "||ads.example.org/banner.js",
+                "||static.ads.example.org:8080/",
+                "||example.org/path",
+                "||example.organic.com^",
+                "||ads.example.org",
+                "||ads.example.org*.js",
+                "/ads.example.org/");
+        assertEquals(Arrays.asList(
+                "||example.org^",
+                "||example.organic.com^",
+                "||ads.example.org",
+                "||ads.example.org*.js",
+                "/ads.example.org/"), optimized);
+    }
+
+    @Test
+    public void testModifiersMustMatch() {
+        List<String> optimized = optimize(
+                "||example.org^$third-party",
+                "||ads.example.org^",
+                "||ads.example.org^$third-party",
+                "@@||cdn.example.org^$third-party",
+                "||ads.example.org^$important,third-party");
+        assertEquals(Arrays.asList(
+                "||example.org^$third-party",
+                "||ads.example.org^",
+                "@@||cdn.example.org^$third-party",
+                "||ads.example.org^$important,third-party"), optimized);
+    }
+
+    @Test
+    public void testExceptionsAreSubsumedByExceptions() {
+        List<String> optimized = optimize(
+                "@@||example.org^$document",
+                "@@||www.example.org^$document",
+                "||www.example.org^$document");
+        assertEquals(Arrays.asList(
+                "@@||example.org^$document",
+                "||www.example.org^$document"), optimized);
+    }
+
+    @Test
+    public void testNormalizedModifiers() {
+        List<String> optimized = optimize(
+                "||tracker.net^$script,third-party,domain=b.com|a.com",
+                "||tracker.net^$third-party,domain=a.com|b.com,script",
+                "||tracker.net^$script");
+        assertEquals(Arrays.asList(
+                "||tracker.net^$domain=a.com|b.com,script,third-party",
+                "||tracker.net^$script"), optimized);
+    }
+
+    @Test
+    public void testUnknownModifiersAreKept() {
+        List<String> optimized = optimize(
+                "||example.org^$csp=script-src 'self', 'unsafe-eval'",
+                "||ads.example.org^$csp=script-src 'self', 'unsafe-eval'",
+                "||example.org^$redirect=noopjs,script",
+                "||example.org^$script,redirect=noopjs");
+        assertEquals(Arrays.asList(
+                "||example.org^$csp=script-src 'self', 'unsafe-eval'",
+                "||ads.example.org^$csp=script-src 'self', 'unsafe-eval'",
+                "||example.org^$redirect=noopjs,script",
+                "||example.org^$script,redirect=noopjs"), optimized);
+    }
+
+    @Test
+    public void testBadfilterTargetsAreKept() {
+        List<String> optimized = optimize(
+                "||example.org^",
+                "||ads.example.org^",
+                "||example.org^$badfilter");
+        assertEquals(Arrays.asList(
+                "||example.org^",
+                "||ads.example.org^",
+                "||example.org^$badfilter"), optimized);
+    }
+
+    @Test
+    public void testExternalBadfilterTargetsAreKept() {
+        RuleOptimizer optimizer = new RuleOptimizer();
+        optimizer.addBadfilter("||example.org^$badfilter");
+        optimizer.addBadfilter("||example.org^");
+        assertTrue(optimizer.collect("||example.org^"));
+        assertTrue(optimizer.collect("||ads.example.org^"));
+        assertEquals("||example.org^", optimizer.optimize("||example.org^"));
+        assertEquals("||ads.example.org^", optimizer.optimize("||ads.example.org^"));
+    }
+
+    @Test
+    public void testBadfilterAfterUnknownModifier() {
+        assertTrue(RuleOptimizer.isBadfilter("||example.org^$redirect=noopjs,badfilter"));
+        assertTrue(RuleOptimizer.isBadfilter("@@||example.org^$badfilter"));
+        assertFalse(RuleOptimizer.isBadfilter("||example.org^$third-party"));
+        assertFalse(RuleOptimizer.isBadfilter("example.org##.badfilter"));
+    }
+
+    @Test
+    public void testUnchangedRulesAreNotCollected() {
+        RuleOptimizer optimizer = new RuleOptimizer();
+        assertFalse(optimizer.collect("! Comment"));
+        assertFalse(optimizer.collect("/banner/ads."));
+        assertFalse(optimizer.collect("example.org##.banner"));
+        assertFalse(optimizer.collect("||example.org^$csp=script-src 'self'"));
+        assertFalse(optimizer.collect("||example.org^$badfilter"));
+        assertTrue(optimizer.collect("||example.org^"));
+        assertTrue(optimizer.collect("/banner/$script"));
+    }
+
+    @Test
+    public void testOtherRulesAreKept() {
+        List<String> optimized = optimize(
+                "! Comment",
+                "||example.org^",
+                "ads.example.org##.banner",
+                "example.org#%#window.ads = false;");
+        assertEquals(Arrays.asList(
+                "! Comment",
+                "||example.org^",
+                "ads.example.org##.banner",
+                "example.org#%#window.ads = false;"), optimized);
+    }
+
+    private static List<String> optimize(String... rules) {
+        RuleOptimizer optimizer = new RuleOptimizer();
+        for (String rule : rules) {
+            optimizer.collect(rule);
+        }
+        List<String> optimized = new ArrayList<>();
+        for (String rule : rules) {
+            String result = optimizer.optimize(rule);
+            if (result != null) {
+                optimized.add(result);
+            }
+        }
+        return optimized;
+    }
+}